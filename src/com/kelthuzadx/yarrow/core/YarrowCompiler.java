@@ -4,7 +4,17 @@ package com.kelthuzadx.yarrow.core;
 import com.kelthuzadx.yarrow.hir.CFG;
 import com.kelthuzadx.yarrow.hir.HirBuilder;
 import com.kelthuzadx.yarrow.lir.LirBuilder;
+import com.kelthuzadx.yarrow.lir.Peephole;
 import com.kelthuzadx.yarrow.lir.regalloc.RegisterAlloc;
+import com.kelthuzadx.yarrow.optimize.BarrierElimination;
+import com.kelthuzadx.yarrow.optimize.BranchSpeculation;
+import com.kelthuzadx.yarrow.optimize.CriticalEdgeSplitting;
+import com.kelthuzadx.yarrow.optimize.DeadCodeElimination;
+import com.kelthuzadx.yarrow.optimize.IfConversion;
+import com.kelthuzadx.yarrow.optimize.LoopUnroll;
+import com.kelthuzadx.yarrow.optimize.SafepointElimination;
+import com.kelthuzadx.yarrow.optimize.SuperWord;
+import com.kelthuzadx.yarrow.optimize.TypeCheckElimination;
 import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.code.CompilationRequest;
 import jdk.vm.ci.code.CompilationRequestResult;
@@ -24,24 +34,72 @@ public class YarrowCompiler implements JVMCICompiler {
     @Override
     public CompilationRequestResult compileMethod(CompilationRequest request) {
         HotSpotResolvedJavaMethod method = (HotSpotResolvedJavaMethod) request.getMethod();
-        if (method.hasCompiledCodeAtLevel(YarrowConfigAccess.access().CompLevel_full_optimization)) {
+        // Method that has compiled code may still be stuck in a long running loop of its
+        // interpreted activation, OSR requests are always served
+        int entryBci = request.getEntryBCI();
+        if (entryBci == INVOCATION_ENTRY_BCI && method.hasCompiledCodeAtLevel(YarrowConfigAccess.access().CompLevel_full_optimization)) {
             return HotSpotCompilationRequestResult.success(0);
         }
-        Logger.logf("=====Compiling {}.{}=====", method.getDeclaringClass().getUnqualifiedName(), method.getName());
+        if (entryBci == INVOCATION_ENTRY_BCI) {
+            Logger.logf("=====Compiling {}.{}=====", method.getDeclaringClass().getUnqualifiedName(), method.getName());
+        } else {
+            Logger.logf("=====Compiling {}.{} at bci {}=====", method.getDeclaringClass().getUnqualifiedName(), method.getName(), entryBci);
+        }
         Stream.of(method)
-                .map(CFG::new)
+                .map(m -> new CFG(m, entryBci))
                 .map(CFG::build)
                 .peek(CFG::log)
                 .map(HirBuilder::new)
                 .map(HirBuilder::build)
                 .peek(HirBuilder::log)
                 .map(HirBuilder::getHir)
+                .map(BranchSpeculation::new)
+                .map(BranchSpeculation::build)
+                .peek(BranchSpeculation::log)
+                .map(BranchSpeculation::getHir)
+                .map(TypeCheckElimination::new)
+                .map(TypeCheckElimination::build)
+                .peek(TypeCheckElimination::log)
+                .map(TypeCheckElimination::getHir)
+                .map(IfConversion::new)
+                .map(IfConversion::build)
+                .peek(IfConversion::log)
+                .map(IfConversion::getHir)
+                .map(SafepointElimination::new)
+                .map(SafepointElimination::build)
+                .peek(SafepointElimination::log)
+                .map(SafepointElimination::getHir)
+                .map(LoopUnroll::new)
+                .map(LoopUnroll::build)
+                .peek(LoopUnroll::log)
+                .map(LoopUnroll::getHir)
+                .map(SuperWord::new)
+                .map(SuperWord::build)
+                .peek(SuperWord::log)
+                .map(SuperWord::getHir)
+                .map(DeadCodeElimination::new)
+                .map(DeadCodeElimination::build)
+                .peek(DeadCodeElimination::log)
+                .map(DeadCodeElimination::getHir)
+                .map(BarrierElimination::new)
+                .map(BarrierElimination::build)
+                .peek(BarrierElimination::log)
+                .map(BarrierElimination::getHir)
+                .map(CriticalEdgeSplitting::new)
+                .map(CriticalEdgeSplitting::build)
+                .peek(CriticalEdgeSplitting::log)
+                .map(CriticalEdgeSplitting::getHir)
                 .map(LirBuilder::new)
                 .map(LirBuilder::build)
                 .peek(LirBuilder::log)
                 .map(LirBuilder::getLir)
                 .map(RegisterAlloc::new)
                 .map(RegisterAlloc::build)
+                .peek(RegisterAlloc::log)
+                .map(RegisterAlloc::getLir)
+                .map(Peephole::new)
+                .map(Peephole::build)
+                .peek(Peephole::log)
                 .collect(Collectors.toList());
         System.exit(0);
         return HotSpotCompilationRequestResult.success(0);
@@ -21,6 +21,129 @@ public class YarrowConfigAccess extends HotSpotVMConfigAccess {
 
     public final int arrayClassElementOffset = getFieldOffset("ObjArrayKlass::_element_klass", Integer.class, "Klass*");
 
+    public final boolean zeroTlab = getFlag("ZeroTLAB", Boolean.class);
+
+    public final int threadTlabOffset = getFieldOffset("Thread::_tlab", Integer.class, "ThreadLocalAllocBuffer");
+
+    public final int tlabTopOffset = getFieldOffset("ThreadLocalAllocBuffer::_top", Integer.class, "HeapWord*");
+
+    public final int tlabEndOffset = getFieldOffset("ThreadLocalAllocBuffer::_end", Integer.class, "HeapWord*");
+
+    // Mark word is markWord or markOop depending on JDK version
+    public final int markOffset = getFieldOffset("oopDesc::_mark", Integer.class, null);
+
+    // Mark word of an unlocked object without identity hash
+    public final long markWordPrototype = getConstant("markWord::unlocked_value", Long.class, 1L);
+
+    public final int vmPageSize = getFieldValue("CompilerToVM::Data::vm_page_size", Integer.class, "int");
+
+    public final boolean useHeavyMonitors = getFlag("UseHeavyMonitors", Boolean.class, false);
+
+    // Biased mark word needs revocation before stack locking, flag is gone since JDK 18
+    public final boolean useBiasedLocking = getFlag("UseBiasedLocking", Boolean.class, false);
+
+    // Only legacy stack locking(LM_LEGACY) can be inlined, it's the only mode before LockingMode exists
+    public final int lockingMode = getFlag("LockingMode", Integer.class, 1);
+
+    public final int klassVtableStartOffset = getFieldValue("CompilerToVM::Data::Klass_vtable_start_offset", Integer.class, "int");
+
+    public final int klassVtableLengthOffset = getFieldValue("CompilerToVM::Data::Klass_vtable_length_offset", Integer.class, "int");
+
+    public final int vtableEntrySize = getFieldValue("CompilerToVM::Data::sizeof_vtableEntry", Integer.class, "int", 8);
+
+    // itable of a klass follows its vtable, it's a list of (interface, offset) pairs terminated by
+    // null interface, each offset locates method table of that interface
+    public final int itableOffsetEntrySize = getFieldValue("CompilerToVM::Data::sizeof_itableOffsetEntry", Integer.class, "int", 16);
+
+    public final int itableInterfaceOffset = getFieldOffset("itableOffsetEntry::_interface", Integer.class, "Klass*", 0);
+
+    public final int itableOffsetOffset = getFieldOffset("itableOffsetEntry::_offset", Integer.class, "int", 8);
+
+    public final int itableMethodEntrySize = getFieldValue("CompilerToVM::Data::sizeof_itableMethodEntry", Integer.class, "int", 8);
+
+    public final int itableMethodEntryMethodOffset = getFieldOffset("itableMethodEntry::_method", Integer.class, "Method*", 0);
+
+    // Interface method stores its itable index as itable_index_max - index in _vtable_index
+    public final int methodVtableIndexOffset = getFieldOffset("Method::_vtable_index", Integer.class, "int");
+
+    public final int itableIndexMax = getConstant("Method::itable_index_max", Integer.class, -10);
+
+    // Trap request of uncommon trap is passed to deoptimization blob through current thread
+    public final int pendingDeoptimizationOffset = getFieldOffset("JavaThread::_pending_deoptimization", Integer.class, "int");
+
+    public final long deoptBlobUncommonTrap = getFieldValue("CompilerToVM::Data::SharedRuntime_deopt_blob_uncommon_trap", Long.class, "address");
+
+    // Thread-local polling page, VM arms it to stop threads at safepoint. It's a field of Thread
+    // before JDK 16 and lives in JavaThread::_poll_data since then
+    public final int threadPollingPageOffset = getFieldOffset("Thread::_polling_page", Integer.class, null, -1);
+
+    public final int threadPollDataOffset = getFieldOffset("JavaThread::_poll_data", Integer.class, null, -1);
+
+    public final int pollDataPollingPageOffset = getFieldOffset("SafepointMechanism::ThreadData::_polling_page", Integer.class, null, -1);
+
+    // Invocation and backedge counters live in MethodCounters, profiles of bytecodes live in MethodData
+    public final int methodCountersOffset = getFieldOffset("Method::_method_counters", Integer.class, "MethodCounters*");
+
+    public final int methodDataOffset = getFieldOffset("Method::_method_data", Integer.class, "MethodData*");
+
+    public final int invocationCounterOffset = getFieldOffset("MethodCounters::_invocation_counter", Integer.class, "InvocationCounter");
+
+    public final int backedgeCounterOffset = getFieldOffset("MethodCounters::_backedge_counter", Integer.class, "InvocationCounter");
+
+    // Low bits of InvocationCounter are state bits, the count starts at count_shift
+    public final int invocationCounterIncrement = getConstant("InvocationCounter::count_increment", Integer.class);
+
+    public final int invocationCounterShift = getConstant("InvocationCounter::count_shift", Integer.class);
+
+    public final int tier3InvokeNotifyFreqLog = getFlag("Tier3InvokeNotifyFreqLog", Integer.class, 10);
+
+    public final int tier3BackedgeNotifyFreqLog = getFlag("Tier3BackedgeNotifyFreqLog", Integer.class, 13);
+
+    public final int methodDataDataOffset = getFieldOffset("MethodData::_data[0]", Integer.class, "intptr_t");
+
+    public final int dataLayoutCellsOffset = getFieldOffset("DataLayout::_cells[0]", Integer.class, "intptr_t", 8);
+
+    public final int dataLayoutCellSize = getConstant("DataLayout::cell_size", Integer.class, 8);
+
+    public final int typeProfileWidth = getFlag("TypeProfileWidth", Integer.class, 2);
+
+    public final boolean useSerialGC = getFlag("UseSerialGC", Boolean.class, false);
+
+    public final boolean useParallelGC = getFlag("UseParallelGC", Boolean.class, false);
+
+    public final boolean useG1GC = getFlag("UseG1GC", Boolean.class, false);
+
+    public final boolean useEpsilonGC = getFlag("UseEpsilonGC", Boolean.class, false);
+
+    // Runtime dirties cards of objects allocated in slow path itself, compiled code may skip
+    // barriers of initializing stores
+    public final boolean reduceInitialCardMarks = getFlag("ReduceInitialCardMarks", Boolean.class, false);
+
+    // Card of address is cardTableAddress[address >> cardTableShift], type of card table varies with JDK version
+    public final long cardTableAddress = getFieldValue("CompilerToVM::Data::cardtable_start_address", Long.class, null);
+
+    public final int cardTableShift = getFieldValue("CompilerToVM::Data::cardtable_shift", Integer.class, "int");
+
+    public final byte dirtyCardValue = getConstant("CardTable::dirty_card", Byte.class, (byte) 0);
+
+    public final byte g1YoungCardValue = getConstant("G1CardTable::g1_young_gen", Byte.class, (byte) 2);
+
+    public final int g1SatbQueueActiveOffset = getConstant("G1ThreadLocalData::satb_mark_queue_active_offset", Integer.class, -1);
+
+    public final int g1SatbQueueIndexOffset = getConstant("G1ThreadLocalData::satb_mark_queue_index_offset", Integer.class, -1);
+
+    public final int g1SatbQueueBufferOffset = getConstant("G1ThreadLocalData::satb_mark_queue_buffer_offset", Integer.class, -1);
+
+    public final int g1CardQueueIndexOffset = getConstant("G1ThreadLocalData::dirty_card_queue_index_offset", Integer.class, -1);
+
+    public final int g1CardQueueBufferOffset = getConstant("G1ThreadLocalData::dirty_card_queue_buffer_offset", Integer.class, -1);
+
+    public final int logOfHRGrainBytes = getFieldValue("HeapRegion::LogOfHRGrainBytes", Integer.class, null, -1);
+
+    public final long narrowKlassBase = getFieldValue("CompilerToVM::Data::Universe_narrow_klass_base", Long.class, "address", 0L);
+
+    public final int narrowKlassShift = getFieldValue("CompilerToVM::Data::Universe_narrow_klass_shift", Integer.class, "int", 0);
+
     private YarrowConfigAccess(HotSpotVMConfigStore store) {
         super(store);
     }
@@ -32,6 +155,53 @@ public class YarrowConfigAccess extends HotSpotVMConfigAccess {
         return access;
     }
 
+    public int getTlabTopOffset() {
+        return threadTlabOffset + tlabTopOffset;
+    }
+
+    public int getTlabEndOffset() {
+        return threadTlabOffset + tlabEndOffset;
+    }
+
+    /**
+     * Offset of the first field of instance, with compressed class pointers it's the gap
+     * right after narrow klass
+     */
+    public int getInstanceHeaderSize() {
+        if (useCompressedClassPointers) {
+            return klassOffset + sizeofNarrowKlass;
+        } else {
+            return klassOffset + Long.BYTES;
+        }
+    }
+
+    public int getPollingPageOffset() {
+        if (threadPollingPageOffset != -1) {
+            return threadPollingPageOffset;
+        }
+        YarrowError.guarantee(threadPollDataOffset != -1 && pollDataPollingPageOffset != -1, "thread-local polling page is not available");
+        return threadPollDataOffset + pollDataPollingPageOffset;
+    }
+
+    /**
+     * Counter overflows notify runtime whenever its count is a multiple of 2^freqLog
+     */
+    public int getInvokeNotifyMask() {
+        return ((1 << tier3InvokeNotifyFreqLog) - 1) << invocationCounterShift;
+    }
+
+    public int getBackedgeNotifyMask() {
+        return ((1 << tier3BackedgeNotifyFreqLog) - 1) << invocationCounterShift;
+    }
+
+    public boolean canInlineLocking() {
+        return !useHeavyMonitors && !useBiasedLocking && lockingMode == 1;
+    }
+
+    public long encodeKlassPointer(long klassPointer) {
+        return (klassPointer - narrowKlassBase) >>> narrowKlassShift;
+    }
+
     public int getArrayLengthOffset() {
         if (useCompressedClassPointers) {
             return sizeofNarrowKlass + klassOffset;
@@ -35,6 +35,12 @@ public class YarrowProperties {
                     } else {
                         Logger.log(Mode.Error, "Invalid yarrow property {} for -Dyarrow.{}.{}", prop.get(), klass.getSimpleName(), field.getName());
                     }
+                } else if (field.getType().equals(int.class) || field.getType().equals(Integer.class)) {
+                    try {
+                        field.setInt(null, Integer.parseInt(prop.get()));
+                    } catch (NumberFormatException e) {
+                        Logger.log(Mode.Error, "Invalid yarrow property {} for -Dyarrow.{}.{}", prop.get(), klass.getSimpleName(), field.getName());
+                    }
                 }
             }
         } catch (Exception e) {
@@ -52,4 +58,40 @@ public class YarrowProperties {
         public static boolean TraceLIRGeneration = true;
         public static boolean TraceRegisterAllocation = true;
     }
+
+    public static class Tier {
+        // Compiled code updates invocation/backedge counters and MethodData like an interpreter
+        // does, so that a later optimizing tier still gets profiles of this method
+        public static boolean ProfileCompiledCode = false;
+    }
+
+    public static class Optimize {
+        // Branches that profile says are never taken become uncommon traps
+        public static boolean BranchSpeculation = true;
+        public static boolean TypeCheckElimination = true;
+        public static boolean IfConversion = true;
+        public static boolean SafepointElimination = true;
+        // Counted loops running at most this many iterations do not poll for safepoint at back edge
+        public static int MaxUnpolledTripCount = 1000;
+        public static boolean LoopUnroll = true;
+        // Unroll counted loops by this many iterations
+        public static int LoopUnrollFactor = 4;
+        // Maximum number of instructions in unrolled loop body
+        public static int LoopUnrollBudget = 64;
+        public static boolean SuperWord = true;
+        // Upper bound of vector size in bytes, the host may support narrower vectors only
+        public static int MaxVectorSize = 64;
+        public static boolean DeadCodeElimination = true;
+        // Stores into objects freshly allocated in the same block need no GC barriers
+        public static boolean BarrierElimination = true;
+        public static boolean InlineAllocation = true;
+        // Larger objects are allocated by runtime, zeroing them inline bloats code
+        public static int MaxInlineAllocationSize = 256;
+        // Virtual calls go through inline caches, otherwise they dispatch through vtable/itable inline
+        public static boolean InlineCache = true;
+        // Constant offsets and scaling of array index are folded into x86 addressing
+        public static boolean AddressFolding = true;
+        // Local rewrites of LIR after register allocation
+        public static boolean Peephole = true;
+    }
 }
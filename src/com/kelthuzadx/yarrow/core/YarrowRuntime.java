@@ -5,10 +5,12 @@ import jdk.vm.ci.code.CodeCacheProvider;
 import jdk.vm.ci.code.RegisterConfig;
 import jdk.vm.ci.code.TargetDescription;
 import jdk.vm.ci.hotspot.HotSpotJVMCIRuntime;
+import jdk.vm.ci.hotspot.HotSpotResolvedJavaMethod;
 import jdk.vm.ci.hotspot.HotSpotResolvedJavaType;
 import jdk.vm.ci.meta.ConstantReflectionProvider;
 import jdk.vm.ci.meta.JavaKind;
 import jdk.vm.ci.meta.MetaAccessProvider;
+import jdk.vm.ci.meta.ProfilingInfo;
 import jdk.vm.ci.runtime.JVMCI;
 import sun.misc.Unsafe;
 
@@ -65,4 +67,59 @@ public class YarrowRuntime {
         }
         return getKlassPointer(javaClass);
     }
+
+    public static long getMethodPointer(HotSpotResolvedJavaMethod method) {
+        try {
+            Method m = method.getClass().getDeclaredMethod("getMetaspaceMethod");
+            m.setAccessible(true);
+            return (long) m.invoke(method);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            e.printStackTrace();
+        }
+        return 0L;
+    }
+
+    /**
+     * Itable index of an interface method, or -1 if it has none, e.g. a public method of Object
+     * declared again by an interface
+     */
+    public static int getItableIndex(HotSpotResolvedJavaMethod method) {
+        long methodPointer = getMethodPointer(method);
+        if (methodPointer == 0L) {
+            return -1;
+        }
+        int index = access.itableIndexMax - unsafe.getInt(methodPointer + access.methodVtableIndexOffset);
+        return index >= 0 ? index : -1;
+    }
+
+    public static long getMethodCounters(HotSpotResolvedJavaMethod method) {
+        long methodPointer = getMethodPointer(method);
+        return methodPointer == 0L ? 0L : unsafe.getAddress(methodPointer + access.methodCountersOffset);
+    }
+
+    public static long getMethodData(HotSpotResolvedJavaMethod method) {
+        long methodPointer = getMethodPointer(method);
+        return methodPointer == 0L ? 0L : unsafe.getAddress(methodPointer + access.methodDataOffset);
+    }
+
+    /**
+     * Offset of profile data of given bci from the start of MethodData, or -1 if there is none.
+     * Looking up a bci in HotSpotProfilingInfo leaves position of its data there
+     */
+    public static int getProfileDataOffset(HotSpotResolvedJavaMethod method, int bci) {
+        if (getMethodData(method) == 0L) {
+            return -1;
+        }
+        ProfilingInfo profile = method.getProfilingInfo();
+        try {
+            profile.getExecutionCount(bci);
+            Field f = profile.getClass().getDeclaredField("position");
+            f.setAccessible(true);
+            int position = f.getInt(profile);
+            return position < 0 ? -1 : access.methodDataDataOffset + position;
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
 }
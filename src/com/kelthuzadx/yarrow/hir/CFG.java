@@ -5,9 +5,11 @@ import com.kelthuzadx.yarrow.bytecode.BytecodeStream;
 import com.kelthuzadx.yarrow.core.YarrowError;
 import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
 import com.kelthuzadx.yarrow.optimize.Phase;
+import com.kelthuzadx.yarrow.util.CompilerErrors;
 import com.kelthuzadx.yarrow.util.Logger;
 import com.kelthuzadx.yarrow.util.Mode;
 import jdk.vm.ci.hotspot.HotSpotResolvedJavaMethod;
+import jdk.vm.ci.runtime.JVMCICompiler;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -22,6 +24,8 @@ import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.*;
  */
 public class CFG implements Phase {
     public final HotSpotResolvedJavaMethod method;
+    // Bytecode index of OSR entry, or INVOCATION_ENTRY_BCI for normal compilation
+    private final int osrBci;
     private final byte[] code;
     private final ExHandler[] exHandler;
     private final BlockStartInstr[] bciToBlockMapping;
@@ -33,7 +37,12 @@ public class CFG implements Phase {
 
 
     public CFG(HotSpotResolvedJavaMethod method) {
+        this(method, JVMCICompiler.INVOCATION_ENTRY_BCI);
+    }
+
+    public CFG(HotSpotResolvedJavaMethod method, int osrBci) {
         this.method = method;
+        this.osrBci = osrBci;
         this.nextBlockId = 1; // reserve 0 for entry block
         int codeSize = method.getCodeSize();
         this.code = method.getCode();
@@ -63,18 +72,34 @@ public class CFG implements Phase {
         return entryBlock;
     }
 
+    public boolean isOsr() {
+        return osrBci != JVMCICompiler.INVOCATION_ENTRY_BCI;
+    }
+
+    public int getOsrBci() {
+        return osrBci;
+    }
+
     public BlockStartInstr[] getBlocks() {
         return blocks;
     }
 
     private void createEntryBlock() {
         BlockStartInstr entry = new BlockStartInstr(0, -1);
-        entry.setFlag(BlockFlag.NormalEntry);
+        entry.setFlag(isOsr() ? BlockFlag.OsrEntry : BlockFlag.NormalEntry);
         this.entryBlock = entry;
     }
 
     private void fixupEntryBlock() {
-        this.entryBlock.addSuccessor(blockContain(0));
+        if (isOsr()) {
+            // OSR happens at backward branch target, it always starts a block
+            if (blockContain(osrBci) == null || blockContain(osrBci).getStartBci() != osrBci) {
+                CompilerErrors.bailOut();
+            }
+            this.entryBlock.addSuccessor(blockContain(osrBci));
+        } else {
+            this.entryBlock.addSuccessor(blockContain(0));
+        }
     }
 
     private void mapBciToBlocks() {
@@ -1,5 +1,66 @@
 package com.kelthuzadx.yarrow.hir;
 
+import com.kelthuzadx.yarrow.core.YarrowError;
+
 public enum Cond {
-    EQ, NE, LT, GE, GT, LE, Always
+    EQ, NE, LT, GE, GT, LE,
+    // Unsigned comparison, used by backend only
+    ULT, UGE, UGT, ULE,
+    Always;
+
+    /**
+     * @return condition that holds iff this condition does not hold
+     */
+    public Cond negate() {
+        switch (this) {
+            case EQ:
+                return NE;
+            case NE:
+                return EQ;
+            case LT:
+                return GE;
+            case GE:
+                return LT;
+            case GT:
+                return LE;
+            case LE:
+                return GT;
+            case ULT:
+                return UGE;
+            case UGE:
+                return ULT;
+            case UGT:
+                return ULE;
+            case ULE:
+                return UGT;
+            default:
+                throw YarrowError.shouldNotReachHere();
+        }
+    }
+
+    /**
+     * @return condition that holds after swapping left and right operands
+     */
+    public Cond mirror() {
+        switch (this) {
+            case LT:
+                return GT;
+            case GE:
+                return LE;
+            case GT:
+                return LT;
+            case LE:
+                return GE;
+            case ULT:
+                return UGT;
+            case UGE:
+                return ULE;
+            case UGT:
+                return ULT;
+            case ULE:
+                return UGE;
+            default:
+                return this;
+        }
+    }
 }
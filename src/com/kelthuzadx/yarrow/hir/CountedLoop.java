@@ -0,0 +1,199 @@
+package com.kelthuzadx.yarrow.hir;
+
+import com.kelthuzadx.yarrow.bytecode.Bytecode;
+import com.kelthuzadx.yarrow.hir.instr.*;
+import jdk.vm.ci.meta.JavaKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counted loop is a loop whose header does nothing but compare an int induction variable
+ * against a loop invariant limit, and whose body is a single block that steps induction
+ * variable by a constant stride, i.e.
+ * <pre>
+ *     for (int i = init; i < limit; i += stride) { body }
+ * </pre>
+ *
+ * @author kelthuzadx
+ */
+public class CountedLoop {
+    private final BlockStartInstr preheader;
+    private final BlockStartInstr header;
+    private final BlockStartInstr body;
+    private final BlockStartInstr exit;
+    private final PhiInstr inductionVar;
+    private final HirInstr limit;
+    private final Cond cond;
+    private final int stride;
+    // Loop invariant instructions computed in header, e.g. array length of loop limit
+    private final List<HirInstr> headerInstrs;
+    private final List<HirInstr> bodyInstrs;
+
+    private CountedLoop(BlockStartInstr preheader, BlockStartInstr header, BlockStartInstr body, BlockStartInstr exit,
+                        PhiInstr inductionVar, HirInstr limit, Cond cond, int stride,
+                        List<HirInstr> headerInstrs, List<HirInstr> bodyInstrs) {
+        this.preheader = preheader;
+        this.header = header;
+        this.body = body;
+        this.exit = exit;
+        this.inductionVar = inductionVar;
+        this.limit = limit;
+        this.cond = cond;
+        this.stride = stride;
+        this.headerInstrs = headerInstrs;
+        this.bodyInstrs = bodyInstrs;
+    }
+
+    /**
+     * Try to recognize a counted loop starting at given block
+     *
+     * @param header loop header
+     * @return counted loop or null if it's not a counted loop
+     */
+    public static CountedLoop match(BlockStartInstr header) {
+        if (!header.isLoopHeader() || header.getPredecessor().size() != 2 ||
+                !(header.getBlockEnd() instanceof IfInstr) || header.getVmState().getStackSize() != 0) {
+            return null;
+        }
+        IfInstr test = (IfInstr) header.getBlockEnd();
+
+        // One successor is the single-block loop body which jumps back to header
+        BlockStartInstr body = null;
+        BlockStartInstr exit = null;
+        boolean bodyOnTrue = false;
+        for (int i = 0; i < 2; i++) {
+            BlockStartInstr succ = test.getSuccessor().get(i);
+            if (succ.getBlockEnd() instanceof GotoInstr && succ.getPredecessor().size() == 1 &&
+                    succ.getBlockEnd().getSuccessor().get(0) == header) {
+                body = succ;
+                exit = test.getSuccessor().get(1 - i);
+                bodyOnTrue = i == 0;
+            }
+        }
+        if (body == null || exit == header || exit == body) {
+            return null;
+        }
+        int backedge = header.getPredecessor().indexOf(body);
+        if (backedge == -1) {
+            return null;
+        }
+        BlockStartInstr preheader = header.getPredecessor().get(1 - backedge);
+        if (!(preheader.getBlockEnd() instanceof GotoInstr)) {
+            return null;
+        }
+
+        List<HirInstr> headerInstrs = collectInstrs(header);
+        List<HirInstr> bodyInstrs = collectInstrs(body);
+        for (HirInstr instr : headerInstrs) {
+            if (!(instr instanceof ConstantInstr || instr instanceof ArrayLenInstr) ||
+                    (instr instanceof ArrayLenInstr && isVariant(header, ((ArrayLenInstr) instr).getArray(), backedge))) {
+                return null;
+            }
+        }
+
+        // Induction variable is header's phi, it's compared with loop invariant
+        PhiInstr iv;
+        HirInstr limit;
+        Cond cond = bodyOnTrue ? test.getCond() : test.getCond().negate();
+        if (isHeaderPhi(header, test.getLeft())) {
+            iv = (PhiInstr) test.getLeft();
+            limit = test.getRight();
+        } else if (isHeaderPhi(header, test.getRight())) {
+            iv = (PhiInstr) test.getRight();
+            limit = test.getLeft();
+            cond = cond.mirror();
+        } else {
+            return null;
+        }
+        if (!iv.isType(JavaKind.Int) || isVariant(header, limit, backedge) || bodyInstrs.contains(limit)) {
+            return null;
+        }
+
+        // Induction variable is stepped by a constant stride in loop body
+        HirInstr step = iv.operand(backedge);
+        if (!(step instanceof ArithmeticInstr) || !bodyInstrs.contains(step)) {
+            return null;
+        }
+        ArithmeticInstr arith = (ArithmeticInstr) step;
+        int stride;
+        if (arith.getOpcode() == Bytecode.IADD && arith.getLeft() == iv && arith.getRight() instanceof ConstantInstr) {
+            stride = ((ConstantInstr) arith.getRight()).getConstant().asInt();
+        } else if (arith.getOpcode() == Bytecode.IADD && arith.getRight() == iv && arith.getLeft() instanceof ConstantInstr) {
+            stride = ((ConstantInstr) arith.getLeft()).getConstant().asInt();
+        } else if (arith.getOpcode() == Bytecode.ISUB && arith.getLeft() == iv && arith.getRight() instanceof ConstantInstr &&
+                ((ConstantInstr) arith.getRight()).getConstant().asInt() != Integer.MIN_VALUE) {
+            stride = -((ConstantInstr) arith.getRight()).getConstant().asInt();
+        } else {
+            return null;
+        }
+        // The loop must move towards its limit, otherwise it's not a counted loop at all
+        if (!(stride > 0 && (cond == Cond.LT || cond == Cond.LE)) && !(stride < 0 && (cond == Cond.GT || cond == Cond.GE))) {
+            return null;
+        }
+        if (body.getBlockEnd().getVmState().getStackSize() != 0) {
+            return null;
+        }
+        return new CountedLoop(preheader, header, body, exit, iv, limit, cond, stride, headerInstrs, bodyInstrs);
+    }
+
+    private static List<HirInstr> collectInstrs(BlockStartInstr block) {
+        List<HirInstr> instrs = new ArrayList<>();
+        for (HirInstr instr = block.getNext(); instr != null && instr != block.getBlockEnd(); instr = instr.getNext()) {
+            instrs.add(instr);
+        }
+        return instrs;
+    }
+
+    private static boolean isHeaderPhi(BlockStartInstr header, HirInstr value) {
+        return value instanceof PhiInstr && ((PhiInstr) value).getBlock() == header;
+    }
+
+    private static boolean isVariant(BlockStartInstr header, HirInstr value, int backedge) {
+        // A phi whose value never changes along back edge is loop invariant as well
+        return isHeaderPhi(header, value) && ((PhiInstr) value).operand(backedge) != value;
+    }
+
+    public BlockStartInstr getPreheader() {
+        return preheader;
+    }
+
+    public BlockStartInstr getHeader() {
+        return header;
+    }
+
+    public BlockStartInstr getBody() {
+        return body;
+    }
+
+    public BlockStartInstr getExit() {
+        return exit;
+    }
+
+    public PhiInstr getInductionVar() {
+        return inductionVar;
+    }
+
+    public HirInstr getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return condition under which loop continues, with induction variable on the left
+     */
+    public Cond getCond() {
+        return cond;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public List<HirInstr> getHeaderInstrs() {
+        return headerInstrs;
+    }
+
+    public List<HirInstr> getBodyInstrs() {
+        return bodyInstrs;
+    }
+}
@@ -7,7 +7,9 @@ import com.kelthuzadx.yarrow.util.Logger;
 import com.kelthuzadx.yarrow.util.Mode;
 import jdk.vm.ci.hotspot.HotSpotResolvedJavaMethod;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -16,12 +18,14 @@ public class Hir {
     private final BlockStartInstr entry;
     private boolean writeFinal;
     private boolean writeVolatile;
+    private int nextBlockId;
 
     public Hir(HotSpotResolvedJavaMethod method, BlockStartInstr entry) {
         this.writeFinal = false;
         this.writeVolatile = false;
         this.entry = entry;
         this.method = method;
+        this.nextBlockId = -1;
     }
 
     private static void iterateBytecodes(BlockStartInstr block, Consumer<HirInstr> closure) {
@@ -89,6 +93,55 @@ public class Hir {
         return entry;
     }
 
+    public HotSpotResolvedJavaMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * All blocks in the order they are linked by instruction chain
+     *
+     * @return blocks starting from method entry
+     */
+    public List<BlockStartInstr> getBlocks() {
+        List<BlockStartInstr> blocks = new ArrayList<>();
+        for (HirInstr instr = entry; instr != null; instr = instr.getNext()) {
+            if (instr instanceof BlockStartInstr) {
+                blocks.add((BlockStartInstr) instr);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Create a new block for optimizations that reshape control flow graph, its id never
+     * conflicts with existing blocks
+     *
+     * @param bci bytecode index the block corresponds to
+     * @return new empty block
+     */
+    public BlockStartInstr newBlock(int bci) {
+        if (nextBlockId == -1) {
+            nextBlockId = getBlocks().stream().mapToInt(BlockStartInstr::getBlockId).max().orElse(0) + 1;
+        }
+        return new BlockStartInstr(nextBlockId++, bci);
+    }
+
+    /**
+     * Remove block from instruction chain, caller is responsible for detaching it from
+     * control flow graph
+     *
+     * @param block block to be removed, it must not be method entry
+     */
+    public void unlinkBlock(BlockStartInstr block) {
+        for (HirInstr instr = entry; instr != null; instr = instr.getNext()) {
+            if (instr.getNext() == block) {
+                instr.setNext(block.getBlockEnd().getNext());
+                block.getBlockEnd().setNext(null);
+                return;
+            }
+        }
+    }
+
     public void printHIR(boolean toFile) {
         if (!toFile) {
             printHIR(new HashSet<>(), entry);
@@ -44,6 +44,8 @@ public class HirBuilder implements Phase {
     private VmState state;
     // Local value numbering for every basic block
     private LVN lvn;
+    // OSR buffer of OSR compilation
+    private OsrEntryInstr osrEntry;
 
 
     public HirBuilder(CFG cfg) {
@@ -71,7 +73,7 @@ public class HirBuilder implements Phase {
     @Override
     public HirBuilder build() {
         BlockStartInstr methodEntry = cfg.getEntryBlock();
-        methodEntry.mergeVmState(createEntryVmState());
+        methodEntry.mergeVmState(cfg.isOsr() ? createOsrEntryVmState() : createEntryVmState());
 
         hir = new Hir(method, methodEntry);
 
@@ -105,14 +107,15 @@ public class HirBuilder implements Phase {
         int paramIndex = 0;
 
         if (method.hasReceiver()) {
-            ParamInstr receiverInstr = new ParamInstr(JavaKind.Object, method, false, paramIndex);
+            ParamInstr receiverInstr = new ParamInstr(JavaKind.Object, method, true, paramIndex, method.getDeclaringClass());
             state.set(paramIndex, receiverInstr);
             paramIndex++;
         }
 
         Signature sig = method.getSignature();
         for (int i = 0; i < sig.getParameterCount(false/*Receiver already processed*/); i++) {
-            ParamInstr pi = new ParamInstr(sig.getParameterKind(i), method, false, paramIndex);
+            ParamInstr pi = new ParamInstr(sig.getParameterKind(i), method, false, paramIndex,
+                    sig.getParameterType(i, method.getDeclaringClass()));
             state.set(paramIndex, pi);
             paramIndex++;
         }
@@ -120,13 +123,45 @@ public class HirBuilder implements Phase {
 
     }
 
+    /**
+     * Interpreter frame is migrated to OSR buffer when OSR happens, locals and monitors of
+     * OSR entry are loaded from there. Their types are those seen by the loop header when
+     * method is entered normally, so parse method once more from its normal entry to find them.
+     */
+    private VmState createOsrEntryVmState() {
+        CFG normalCfg = new CFG(method).build();
+        new HirBuilder(normalCfg).build();
+        VmState headerState = normalCfg.blockContain(cfg.getOsrBci()).getVmState();
+        if (headerState == null || headerState.getStackSize() != 0) {
+            CompilerErrors.bailOut("OSR entry is unreachable or has a non-empty operand stack");
+        }
+
+        osrEntry = new OsrEntryInstr(method.getMaxLocals(), headerState.getLockSize());
+        VmState state = new VmState(method.getMaxStackSize(), method.getMaxLocals());
+        for (int i = 0; i < headerState.getLocalSize(); i++) {
+            HirInstr value = headerState.get(i);
+            if (value != null) {
+                state.set(i, osrEntry.loadLocal(value.type(), i));
+            }
+        }
+        for (int i = 0; i < headerState.getLockSize(); i++) {
+            state.lock(osrEntry.loadMonitorObject(i));
+        }
+        return state;
+    }
+
     private void fulfillBlock(BlockStartInstr block) {
-        state = block.getVmState();
+        // Keep the state at block entry intact, it tells which PhiInstrs the block has
+        state = block.getVmState().copy();
         lvn = new LVN();
+        if (block.getFlag() == BlockFlag.OsrEntry) {
+            appendToBlock(osrEntry);
+        }
 
         BytecodeStream bs = new BytecodeStream(method.getCode(), block.getStartBci(), block.getEndBci());
         while (bs.hasNext()) {
             int curBci = bs.next();
+            state.setBci(curBci);
             int opcode = bs.currentBytecode();
             if (TraceHIRGeneration) {
                 Logger.logf("====={}=====>", bs.getCurrentBytecodeString());
@@ -669,7 +704,8 @@ public class HirBuilder implements Phase {
         if (!(lastInstr instanceof BlockEndInstr)) {
             BlockEndInstr endInstr;
             if (bs.peekNextBci() == -1) {
-                endInstr = new GotoInstr(null, cfg.blockContain(0));
+                // Method entry goes to bci 0, or to loop header if it's an OSR entry
+                endInstr = new GotoInstr(null, cfg.getEntryBlock().getSuccessor().get(0));
             } else {
                 endInstr = new GotoInstr(null, cfg.blockContain(bs.peekNextBci()));
             }
@@ -678,7 +714,7 @@ public class HirBuilder implements Phase {
         block.setBlockEnd((BlockEndInstr) lastInstr);
 
         for (BlockStartInstr succ : ((BlockEndInstr) lastInstr).getSuccessor()) {
-            succ.mergeVmState(block.getVmState());
+            succ.mergeVmState(state);
             workList.add(succ);
         }
 
@@ -706,12 +742,19 @@ public class HirBuilder implements Phase {
             Logger.logf("{}", lastInstr);
         }
 
-        if (lastInstr instanceof StateInstr) {
+        // Interpreter re-executes these after deoptimization, so they keep the state before
+        // their operands are popped
+        if (lastInstr instanceof StateInstr && !reexecutes(lastInstr)) {
             ((StateInstr) lastInstr).setVmState(state.copy());
         }
         return curInstr;
     }
 
+    private static boolean reexecutes(HirInstr instr) {
+        return instr instanceof CheckCastInstr || instr instanceof NewInstr || instr instanceof NewTypeArrayInstr ||
+                instr instanceof NewObjectArrayInstr || instr instanceof NewMultiArrayInstr;
+    }
+
     private void loadConst(JavaConstant constant) {
         ConstantInstr instr = new ConstantInstr(constant);
         state.push(constant.getJavaKind(), appendToBlock(instr));
@@ -908,12 +951,28 @@ public class HirBuilder implements Phase {
 
     private void branchIf(VmState stateBefore, HirInstr left, HirInstr right, Cond cond, int trueBci, int falseBci) {
         IfInstr instr = new IfInstr(stateBefore, cfg.blockContain(trueBci), cfg.blockContain(falseBci), left, right, cond);
-        appendToBlock(instr);
+        // Branch on constants may be idealized to a goto, mark whatever ends up in block
+        markBackwardBranch((BlockEndInstr) appendToBlock(instr), stateBefore);
     }
 
     private void goTo(int destBci) {
         GotoInstr instr = new GotoInstr(null, cfg.blockContain(destBci));
         appendToBlock(instr);
+        markBackwardBranch(instr, state.copy());
+    }
+
+    /**
+     * Branch that goes back to an earlier bci closes a loop, it polls for safepoint with the
+     * state before the branch, i.e. operands of the branch are still on the stack
+     */
+    private static void markBackwardBranch(BlockEndInstr instr, VmState stateBefore) {
+        for (BlockStartInstr succ : instr.getSuccessor()) {
+            if (succ.getStartBci() <= stateBefore.getBci()) {
+                instr.setBackwardBranchState(stateBefore);
+                instr.setSafepoint(true);
+                return;
+            }
+        }
     }
 
     private void tableSwitch(BytecodeStream.TableSwitch sw, int curBci) {
@@ -930,6 +989,7 @@ public class HirBuilder implements Phase {
         HirInstr index = state.pop(JavaKind.Int);
         TableSwitchInstr instr = new TableSwitchInstr(stateBefore, Arrays.asList(succ), index, sw.getLowKey());
         appendToBlock(instr);
+        markBackwardBranch(instr, stateBefore);
     }
 
     private void lookupSwitch(BytecodeStream.LookupSwitch sw, int curBci) {
@@ -948,6 +1008,7 @@ public class HirBuilder implements Phase {
         HirInstr index = state.pop(JavaKind.Int);
         LookupSwitchInstr instr = new LookupSwitchInstr(stateBefore, Arrays.asList(succ), index, key);
         appendToBlock(instr);
+        markBackwardBranch(instr, stateBefore);
     }
 
     private void returnOp(JavaKind type, boolean justReturn) {
@@ -1086,6 +1147,11 @@ public class HirBuilder implements Phase {
         if (hasReceiver) {
             receiver = state.pop(JavaKind.Object);
         }
+        Intrinsic intrinsic = Intrinsic.lookup(target);
+        if (intrinsic != null && !hasReceiver && intrinsify(intrinsic, stateBefore, arguments, target)) {
+            return;
+        }
+
         JavaKind returnType = TypeUtil.decayType(sig.getReturnKind());
         HirInstr instr = new CallInstr(returnType, stateBefore, receiver, arguments, target, sig, opcode);
         instr = appendToBlock(instr);
@@ -1095,6 +1161,49 @@ public class HirBuilder implements Phase {
         }
     }
 
+    private boolean intrinsify(Intrinsic intrinsic, VmState stateBefore, HirInstr[] arguments, JavaMethod target) {
+        if (intrinsic == Intrinsic.SystemArraycopy) {
+            // Only copies between arrays of the same primitive type are inlined, anything
+            // else needs the type checks and store checks of the real System.arraycopy
+            JavaKind srcType = arrayElementType(arguments[0]);
+            JavaKind destType = arrayElementType(arguments[2]);
+            if (srcType == null || srcType != destType || !srcType.isPrimitive()) {
+                return false;
+            }
+            ArrayCopyInstr instr = new ArrayCopyInstr(stateBefore, arguments[0], arguments[1], arguments[2],
+                    arguments[3], arguments[4], srcType, target);
+            appendToBlock(instr);
+            return true;
+        }
+
+        IntrinsicInstr instr = new IntrinsicInstr(intrinsic, arguments);
+        state.push(intrinsic.getReturnType(), appendToBlock(instr));
+        return true;
+    }
+
+    /**
+     * Find statically known element type of an array value
+     *
+     * @param array array value
+     * @return element type or null if it's unknown
+     */
+    private static JavaKind arrayElementType(HirInstr array) {
+        JavaType arrayType = null;
+        if (array instanceof NewTypeArrayInstr) {
+            return ((NewTypeArrayInstr) array).getElemementType();
+        } else if (array instanceof ParamInstr) {
+            arrayType = ((ParamInstr) array).getDeclaredType();
+        } else if (array instanceof AccessFieldInstr) {
+            arrayType = ((AccessFieldInstr) array).getField().getType();
+        } else if (array instanceof CheckCastInstr) {
+            arrayType = ((CheckCastInstr) array).getKlass();
+        }
+        if (arrayType != null && arrayType.getComponentType() != null) {
+            return arrayType.getComponentType().getJavaKind();
+        }
+        return null;
+    }
+
     private void newInstance(int index) {
         VmState stateBefore = state.copy();
         JavaType klass = method.getConstantPool().lookupType(index, -1);
@@ -1152,13 +1261,13 @@ public class HirBuilder implements Phase {
         HirInstr lockObj = state.pop(JavaKind.Object);
         VmState stateBefore = state.copy(); // save state before locking(but after pop element) in case of deopt after a nullptr exception
         HirInstr lock = state.lock(lockObj);
-        MonitorEnterInstr instr = new MonitorEnterInstr(lock, stateBefore);
+        MonitorEnterInstr instr = new MonitorEnterInstr(lock, stateBefore.getLockSize(), stateBefore);
         appendToBlock(instr);
     }
 
     private void monitorExit() {
         HirInstr lock = state.unlock();
-        MonitorExitInstr instr = new MonitorExitInstr(lock);
+        MonitorExitInstr instr = new MonitorExitInstr(lock, state.getLockSize());
         appendToBlock(instr);
     }
 
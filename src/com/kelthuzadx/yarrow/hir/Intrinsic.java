@@ -0,0 +1,66 @@
+package com.kelthuzadx.yarrow.hir;
+
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.JavaMethod;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Methods that HirBuilder replaces with dedicated HIR instructions instead of
+ * generic CallInstr. A method is recognized by its holder, name and descriptor.
+ *
+ * @author kelthuzadx
+ */
+public enum Intrinsic {
+    MathAbsInt("Ljava/lang/Math;", "abs", "(I)I", JavaKind.Int),
+    MathAbsLong("Ljava/lang/Math;", "abs", "(J)J", JavaKind.Long),
+    MathAbsFloat("Ljava/lang/Math;", "abs", "(F)F", JavaKind.Float),
+    MathAbsDouble("Ljava/lang/Math;", "abs", "(D)D", JavaKind.Double),
+    MathMinInt("Ljava/lang/Math;", "min", "(II)I", JavaKind.Int),
+    MathMinLong("Ljava/lang/Math;", "min", "(JJ)J", JavaKind.Long),
+    MathMaxInt("Ljava/lang/Math;", "max", "(II)I", JavaKind.Int),
+    MathMaxLong("Ljava/lang/Math;", "max", "(JJ)J", JavaKind.Long),
+    MathSqrt("Ljava/lang/Math;", "sqrt", "(D)D", JavaKind.Double),
+    SystemArraycopy("Ljava/lang/System;", "arraycopy", "(Ljava/lang/Object;ILjava/lang/Object;II)V", JavaKind.Void);
+
+    private static final Map<String, Intrinsic> registry = new HashMap<>();
+
+    static {
+        for (Intrinsic intrinsic : values()) {
+            registry.put(intrinsic.holder + intrinsic.name + intrinsic.descriptor, intrinsic);
+        }
+    }
+
+    private final String holder;
+    private final String name;
+    private final String descriptor;
+    private final JavaKind returnType;
+
+    Intrinsic(String holder, String name, String descriptor, JavaKind returnType) {
+        this.holder = holder;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.returnType = returnType;
+    }
+
+    /**
+     * Find intrinsic for given method
+     *
+     * @param method invoked method
+     * @return intrinsic or null if method is not intrinsified
+     */
+    public static Intrinsic lookup(JavaMethod method) {
+        String key = method.getDeclaringClass().getName() + method.getName() + method.getSignature().toMethodDescriptor();
+        return registry.get(key);
+    }
+
+    public JavaKind getReturnType() {
+        return returnType;
+    }
+
+    @Override
+    public String toString() {
+        return holder.substring(holder.lastIndexOf('/') + 1, holder.length() - 1) + "." + name;
+    }
+}
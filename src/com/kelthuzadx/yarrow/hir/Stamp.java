@@ -0,0 +1,97 @@
+package com.kelthuzadx.yarrow.hir;
+
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaType;
+import jdk.vm.ci.meta.ResolvedJavaType;
+
+/**
+ * Stamp describes what is statically known about an object value: the type it's declared
+ * as, whether its runtime type is exactly that type, and whether it's never null.
+ *
+ * @author kelthuzadx
+ */
+public class Stamp {
+    private final ResolvedJavaType type;
+    private final boolean exact;
+    private final boolean nonNull;
+
+    public Stamp(ResolvedJavaType type, boolean exact, boolean nonNull) {
+        this.type = type;
+        this.exact = exact;
+        this.nonNull = nonNull;
+    }
+
+    /**
+     * Create stamp from a declared type that might not be resolved yet. Verifier treats interface
+     * types as Object, so a declared interface or array of interfaces proves nothing
+     *
+     * @return stamp or null if nothing is known
+     */
+    public static Stamp declared(JavaType type, boolean nonNull) {
+        if (!(type instanceof ResolvedJavaType)) {
+            return null;
+        }
+        var resolved = (ResolvedJavaType) type;
+        if (resolved.getElementalType().isInterface()) {
+            return null;
+        }
+        // Nobody can subclass a final class, so declared type is the exact type
+        return new Stamp(resolved, resolved.isLeaf() && !resolved.isInterface(), nonNull);
+    }
+
+    public ResolvedJavaType getType() {
+        return type;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+
+    public boolean isNonNull() {
+        return nonNull;
+    }
+
+    /**
+     * @return true if every non-null value of this stamp is an instance of given type
+     */
+    public boolean isSubtypeOf(ResolvedJavaType other) {
+        return other.isAssignableFrom(type);
+    }
+
+    /**
+     * @return true if no value of this stamp could be an instance of given type
+     */
+    public boolean isDisjointFrom(ResolvedJavaType other) {
+        return exact && !other.isAssignableFrom(type);
+    }
+
+    /**
+     * Refine stamp with the knowledge that value is also an instance of given type, i.e. the
+     * intersection of both
+     */
+    public Stamp join(ResolvedJavaType other, boolean nonNull) {
+        if (isSubtypeOf(other)) {
+            return new Stamp(type, exact, this.nonNull || nonNull);
+        }
+        return new Stamp(other, other.isLeaf() && !other.isInterface(), this.nonNull || nonNull);
+    }
+
+    /**
+     * Merge stamps of values flowing into one phi, i.e. the union of both
+     */
+    public Stamp meet(Stamp other) {
+        if (type.equals(other.type)) {
+            return new Stamp(type, exact && other.exact, nonNull && other.nonNull);
+        }
+        ResolvedJavaType common = type.findLeastCommonAncestor(other.type);
+        if (common == null) {
+            return null;
+        }
+        return new Stamp(common, false, nonNull && other.nonNull);
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("{}{}{}", type.getUnqualifiedName(), exact ? " exact" : "", nonNull ? " non-null" : "");
+    }
+}
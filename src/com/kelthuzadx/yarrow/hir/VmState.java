@@ -19,6 +19,8 @@ public class VmState {
     private final Stack<HirInstr> stack;
     private final HirInstr[] local;
     private final List<HirInstr> lock;
+    // Bytecode this state belongs to, interpreter resumes there after deoptimization
+    private int bci;
 
     public VmState(int maxStackSize, int localSize) {
         stack = new Stack<>();
@@ -26,6 +28,15 @@ public class VmState {
         local = new HirInstr[localSize];
         lock = new ArrayList<>();
         this.maxStackSize = maxStackSize;
+        this.bci = -1;
+    }
+
+    public int getBci() {
+        return bci;
+    }
+
+    public void setBci(int bci) {
+        this.bci = bci;
     }
 
     public void push(JavaKind type, HirInstr instr) {
@@ -134,6 +145,7 @@ public class VmState {
         newState.stack.addAll(this.stack);
         System.arraycopy(this.local, 0, newState.local, 0, newState.local.length);
         newState.lock.addAll(this.lock);
+        newState.bci = this.bci;
         return newState;
     }
 
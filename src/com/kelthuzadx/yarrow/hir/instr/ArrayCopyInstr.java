@@ -0,0 +1,65 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.hir.VmState;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.JavaMethod;
+
+/**
+ * Intrinsified System.arraycopy between two arrays whose element type is statically known
+ * to be the same primitive type. The original method is kept for the slow path.
+ */
+public class ArrayCopyInstr extends StateInstr {
+    private final HirInstr src;
+    private final HirInstr srcPos;
+    private final HirInstr dest;
+    private final HirInstr destPos;
+    private final HirInstr length;
+    private final JavaKind elementType;
+    private final JavaMethod method;
+
+    public ArrayCopyInstr(VmState stateBefore, HirInstr src, HirInstr srcPos, HirInstr dest, HirInstr destPos, HirInstr length, JavaKind elementType, JavaMethod method) {
+        super(JavaKind.Illegal, stateBefore);
+        this.src = src;
+        this.srcPos = srcPos;
+        this.dest = dest;
+        this.destPos = destPos;
+        this.length = length;
+        this.elementType = elementType;
+        this.method = method;
+    }
+
+    public HirInstr getSrc() {
+        return src;
+    }
+
+    public HirInstr getSrcPos() {
+        return srcPos;
+    }
+
+    public HirInstr getDest() {
+        return dest;
+    }
+
+    public HirInstr getDestPos() {
+        return destPos;
+    }
+
+    public HirInstr getLength() {
+        return length;
+    }
+
+    public JavaKind getElementType() {
+        return elementType;
+    }
+
+    public JavaMethod getMethod() {
+        return method;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: arraycopy i{}[i{}] -> i{}[i{}], i{} [{}]", super.id, src.id, srcPos.id,
+                dest.id, destPos.id, length.id, elementType.getJavaName());
+    }
+}
@@ -8,6 +8,11 @@ import java.util.List;
 public class BlockEndInstr extends StateInstr {
     private final List<BlockStartInstr> successor;
     private BlockStartInstr start;
+    // State before the branch if it goes back to an earlier bci, i.e. it closes a loop,
+    // interpreter resumes from this state when it's deoptimized at back edge
+    private VmState backwardBranchState;
+    // Backward branch polls for safepoint so that a long running loop can be stopped
+    private boolean safepoint;
 
     public BlockEndInstr(JavaKind type, VmState stateBefore, List<BlockStartInstr> successor) {
         super(type, stateBefore);
@@ -22,4 +27,24 @@ public class BlockEndInstr extends StateInstr {
     public void setBlockStart(BlockStartInstr start) {
         this.start = start;
     }
+
+    public boolean isBackwardBranch() {
+        return backwardBranchState != null;
+    }
+
+    public VmState getBackwardBranchState() {
+        return backwardBranchState;
+    }
+
+    public void setBackwardBranchState(VmState backwardBranchState) {
+        this.backwardBranchState = backwardBranchState;
+    }
+
+    public boolean isSafepoint() {
+        return safepoint;
+    }
+
+    public void setSafepoint(boolean safepoint) {
+        this.safepoint = safepoint;
+    }
 }
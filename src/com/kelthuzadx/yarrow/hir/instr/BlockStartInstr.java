@@ -16,11 +16,6 @@ public class BlockStartInstr extends StateInstr {
     // For constructing control flow graph
     private final int blockId;
     private final List<BlockStartInstr> predecessor;
-    // Register Allocation
-    private final Set<Integer> liveGen;
-    private final Set<Integer> liveKill;
-    private final Set<Integer> livenIn;
-    private final Set<Integer> liveOut;
     // For LIR
     private final List<LirInstr> lirInstrList;
     private int startBci;
@@ -42,10 +37,6 @@ public class BlockStartInstr extends StateInstr {
         this.predecessor = new ArrayList<>();
         this.loopHeader = false;
         this.blockEnd = null;
-        this.liveGen = new HashSet<>();
-        this.liveKill = new HashSet<>();
-        this.livenIn = new HashSet<>();
-        this.liveOut = new HashSet<>();
         this.lirInstrList = new ArrayList<>();
     }
 
@@ -57,22 +48,6 @@ public class BlockStartInstr extends StateInstr {
         this.lirInstrList.add(instr);
     }
 
-    public Set<Integer> liveGen() {
-        return liveGen;
-    }
-
-    public Set<Integer> liveKill() {
-        return liveKill;
-    }
-
-    public Set<Integer> livenIn() {
-        return livenIn;
-    }
-
-    public Set<Integer> liveOut() {
-        return liveOut;
-    }
-
     public int getEndBci() {
         return endBci;
     }
@@ -150,6 +125,26 @@ public class BlockStartInstr extends StateInstr {
         blockEnd.setBlockStart(this);
     }
 
+    /**
+     * Replace end of a block that is already connected, e.g. when a branch is folded into goto.
+     * Old successors forget this block unless the new end still reaches them, which keeps
+     * its position in their predecessor list
+     */
+    public void replaceBlockEnd(BlockEndInstr newEnd) {
+        for (BlockStartInstr succ : blockEnd.getSuccessor()) {
+            if (!newEnd.getSuccessor().contains(succ)) {
+                succ.getPredecessor().removeIf(pred -> pred == this);
+            }
+        }
+        for (BlockStartInstr succ : newEnd.getSuccessor()) {
+            if (!succ.getPredecessor().contains(this)) {
+                succ.getPredecessor().add(this);
+            }
+        }
+        this.blockEnd = newEnd;
+        newEnd.setBlockStart(this);
+    }
+
     /**
      * If a block has more than one predecessor, PhiInstrc might be needed at
      * the beginning of this block. If I find different values of the same variable,
@@ -13,10 +13,11 @@ public class CallInstr extends StateInstr {
     private final JavaMethod method;
     private final Signature signature;
     private final int opcode;
-    private HirInstr receiver;
+    private final HirInstr receiver;
 
     public CallInstr(JavaKind type, VmState stateBefore, HirInstr receiver, HirInstr[] args, JavaMethod method, Signature signature, int opcode) {
         super(type, stateBefore);
+        this.receiver = receiver;
         this.args = args;
         this.method = method;
         this.signature = signature;
@@ -8,6 +8,8 @@ import jdk.vm.ci.meta.JavaType;
 public class CheckCastInstr extends StateInstr {
     private final JavaType klass;
     private final HirInstr object;
+    // Object is statically known to be an instance of klass, no check is needed
+    private boolean redundant;
 
     public CheckCastInstr(VmState stateBefore, JavaType klass, HirInstr object) {
         super(JavaKind.Object, stateBefore);
@@ -23,6 +25,14 @@ public class CheckCastInstr extends StateInstr {
         return klass;
     }
 
+    public boolean isRedundant() {
+        return redundant;
+    }
+
+    public void setRedundant() {
+        this.redundant = true;
+    }
+
     @Override
     public String toString() {
         return Logger.format("i{}: checkcast i{} -> {}", super.id, object.id, klass.getUnqualifiedName());
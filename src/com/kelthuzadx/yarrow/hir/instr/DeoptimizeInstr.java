@@ -0,0 +1,39 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.hir.VmState;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.DeoptimizationAction;
+import jdk.vm.ci.meta.DeoptimizationReason;
+import jdk.vm.ci.meta.JavaKind;
+
+import java.util.ArrayList;
+
+/**
+ * Uncommon trap, it ends a block that compiled code speculates never to reach. Execution
+ * transfers to interpreter at the bytecode of its VmState, which re-executes that bytecode.
+ *
+ * @author kelthuzadx
+ */
+public class DeoptimizeInstr extends BlockEndInstr {
+    private final DeoptimizationReason reason;
+    private final DeoptimizationAction action;
+
+    public DeoptimizeInstr(VmState stateBefore, DeoptimizationReason reason, DeoptimizationAction action) {
+        super(JavaKind.Illegal, stateBefore, new ArrayList<>());
+        this.reason = reason;
+        this.action = action;
+    }
+
+    public DeoptimizationReason getReason() {
+        return reason;
+    }
+
+    public DeoptimizationAction getAction() {
+        return action;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: deoptimize {} {}", super.id, reason, action);
+    }
+}
@@ -1,6 +1,7 @@
 package com.kelthuzadx.yarrow.hir.instr;
 
 import com.kelthuzadx.yarrow.core.YarrowError;
+import com.kelthuzadx.yarrow.hir.Stamp;
 import com.kelthuzadx.yarrow.lir.LirGenerator;
 import com.kelthuzadx.yarrow.lir.operand.ConstValue;
 import com.kelthuzadx.yarrow.lir.operand.XRegister;
@@ -20,6 +21,8 @@ public abstract class HirInstr implements Visitable {
     protected int id;
     protected HirInstr next;
     protected JavaKind type;
+    // Type information of object value, null if nothing is known
+    protected Stamp stamp;
 
     // Low level IR
     protected AllocatableValue operand;
@@ -42,6 +45,14 @@ public abstract class HirInstr implements Visitable {
         return this.type;
     }
 
+    public Stamp getStamp() {
+        return stamp;
+    }
+
+    public void setStamp(Stamp stamp) {
+        this.stamp = stamp;
+    }
+
     public HirInstr getNext() {
         return next;
     }
@@ -93,12 +104,14 @@ public abstract class HirInstr implements Visitable {
     }
 
     /**
-     * Load operand into specific register
+     * Load operand into specific register. Operand of this instruction is not changed, the
+     * physical register holds a copy that is valid for the consuming operation only, since
+     * liveness does not track physical registers across blocks
      *
      * @param visitor  visitor if operand is null, visitor this instruction by visitor
      * @param gen      generate move instruction if needed
      * @param register specific register
-     * @return operand
+     * @return register
      */
     public AllocatableValue loadOperandToReg(HirInstrVisitor visitor, LirGenerator gen, XRegister register) {
         if (operand == null) {
@@ -108,11 +121,8 @@ public abstract class HirInstr implements Visitable {
 
         if (operand != register) {
             gen.emitMov(register, operand);
-            operand = register;
         }
-        YarrowError.guarantee(operand instanceof XRegister, "Operand should retain in virtual register");
-
-        return operand;
+        return register;
     }
 
     public void storeOperand(AllocatableValue operand) {
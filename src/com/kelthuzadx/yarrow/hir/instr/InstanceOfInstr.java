@@ -9,6 +9,8 @@ import jdk.vm.ci.meta.JavaKind;
 public class InstanceOfInstr extends StateInstr {
     private final HotSpotResolvedJavaType klass;
     private final HirInstr object;
+    // Statically known result, null if it must be checked at runtime
+    private JavaConstant result;
 
     public InstanceOfInstr(VmState stateBefore, HotSpotResolvedJavaType klass, HirInstr object) {
         super(JavaKind.Int, stateBefore);
@@ -24,6 +26,14 @@ public class InstanceOfInstr extends StateInstr {
         return klass;
     }
 
+    public JavaConstant getResult() {
+        return result;
+    }
+
+    public void setResult(JavaConstant result) {
+        this.result = result;
+    }
+
     @Override
     public HirInstr ideal() {
         if (object instanceof ConstantInstr && ((ConstantInstr) object).getConstant().isNull()) {
@@ -0,0 +1,85 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.hir.Intrinsic;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaConstant;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Side-effect free intrinsic such as Math.abs/min/max/sqrt. The backend lowers it to a single
+ * machine instruction rather than a call.
+ */
+public class IntrinsicInstr extends HirInstr {
+    private final Intrinsic intrinsic;
+    private final HirInstr[] args;
+
+    public IntrinsicInstr(Intrinsic intrinsic, HirInstr[] args) {
+        super(intrinsic.getReturnType());
+        this.intrinsic = intrinsic;
+        this.args = args;
+    }
+
+    public Intrinsic getIntrinsic() {
+        return intrinsic;
+    }
+
+    public HirInstr[] getArguments() {
+        return args;
+    }
+
+    @Override
+    public HirInstr ideal() {
+        for (HirInstr arg : args) {
+            if (!(arg instanceof ConstantInstr)) {
+                return this;
+            }
+        }
+        JavaConstant x = ((ConstantInstr) args[0]).getConstant();
+        JavaConstant y = args.length > 1 ? ((ConstantInstr) args[1]).getConstant() : null;
+        switch (intrinsic) {
+            case MathAbsInt:
+                return new ConstantInstr(JavaConstant.forInt(Math.abs(x.asInt())));
+            case MathAbsLong:
+                return new ConstantInstr(JavaConstant.forLong(Math.abs(x.asLong())));
+            case MathAbsFloat:
+                return new ConstantInstr(JavaConstant.forFloat(Math.abs(x.asFloat())));
+            case MathAbsDouble:
+                return new ConstantInstr(JavaConstant.forDouble(Math.abs(x.asDouble())));
+            case MathMinInt:
+                return new ConstantInstr(JavaConstant.forInt(Math.min(x.asInt(), y.asInt())));
+            case MathMinLong:
+                return new ConstantInstr(JavaConstant.forLong(Math.min(x.asLong(), y.asLong())));
+            case MathMaxInt:
+                return new ConstantInstr(JavaConstant.forInt(Math.max(x.asInt(), y.asInt())));
+            case MathMaxLong:
+                return new ConstantInstr(JavaConstant.forLong(Math.max(x.asLong(), y.asLong())));
+            case MathSqrt:
+                // sqrt is correctly rounded, folding it gives the same result as sqrtsd
+                return new ConstantInstr(JavaConstant.forDouble(Math.sqrt(x.asDouble())));
+            default:
+                return this;
+        }
+    }
+
+    @Override
+    public String toString() {
+        String argString = Arrays.stream(args).map(a -> "i" + a.id).collect(Collectors.joining(","));
+        return Logger.format("i{}: {}({})", super.id, intrinsic.toString(), argString);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntrinsicInstr)) return false;
+        var that = (IntrinsicInstr) o;
+        return intrinsic == that.intrinsic && Arrays.equals(args, that.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(intrinsic, Arrays.hashCode(args));
+    }
+}
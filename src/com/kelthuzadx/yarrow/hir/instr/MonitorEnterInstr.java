@@ -6,10 +6,21 @@ import jdk.vm.ci.meta.JavaKind;
 
 public class MonitorEnterInstr extends StateInstr {
     private final HirInstr lock;
+    // Position in VmState's lock stack
+    private final int monitorIndex;
 
-    public MonitorEnterInstr(HirInstr lock, VmState stateBefore) {
+    public MonitorEnterInstr(HirInstr lock, int monitorIndex, VmState stateBefore) {
         super(JavaKind.Illegal, stateBefore);
         this.lock = lock;
+        this.monitorIndex = monitorIndex;
+    }
+
+    public HirInstr getLock() {
+        return lock;
+    }
+
+    public int getMonitorIndex() {
+        return monitorIndex;
     }
 
     @Override
@@ -5,10 +5,21 @@ import jdk.vm.ci.meta.JavaKind;
 
 public class MonitorExitInstr extends StateInstr {
     private final HirInstr lock;
+    // Position in VmState's lock stack
+    private final int monitorIndex;
 
-    public MonitorExitInstr(HirInstr lock) {
+    public MonitorExitInstr(HirInstr lock, int monitorIndex) {
         super(JavaKind.Illegal, null);
         this.lock = lock;
+        this.monitorIndex = monitorIndex;
+    }
+
+    public HirInstr getLock() {
+        return lock;
+    }
+
+    public int getMonitorIndex() {
+        return monitorIndex;
     }
 
     @Override
@@ -0,0 +1,67 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry of OSR compilation, its value is the OSR buffer that interpreter migrates its frame to.
+ * Buffer layout is decided by SharedRuntime::OSR_migration_begin:
+ * <pre>
+ *     [local max_locals-1] ... [local 0] [lock n-1, object n-1] ... [lock 0, object 0]
+ * </pre>
+ * Each entry takes a machine word, long and double take the word of their higher slot.
+ *
+ * @author kelthuzadx
+ */
+public class OsrEntryInstr extends HirInstr {
+    private final int maxLocals;
+    private final int monitorCount;
+    // Values loaded from OSR buffer, they are not linked to instruction chain
+    private final List<OsrLocalInstr> locals;
+    private final List<OsrLocalInstr> monitors;
+
+    public OsrEntryInstr(int maxLocals, int monitorCount) {
+        super(JavaKind.Long);
+        this.maxLocals = maxLocals;
+        this.monitorCount = monitorCount;
+        this.locals = new ArrayList<>();
+        this.monitors = new ArrayList<>();
+    }
+
+    public OsrLocalInstr loadLocal(JavaKind type, int index) {
+        int offset = (maxLocals - index - type.getSlotCount()) * Long.BYTES;
+        var local = new OsrLocalInstr(type, this, offset);
+        locals.add(local);
+        return local;
+    }
+
+    public OsrLocalInstr loadMonitorObject(int index) {
+        var object = new OsrLocalInstr(JavaKind.Object, this, getMonitorLockOffset(index) + Long.BYTES);
+        monitors.add(object);
+        return object;
+    }
+
+    public int getMonitorLockOffset(int index) {
+        return (maxLocals + (monitorCount - 1 - index) * 2) * Long.BYTES;
+    }
+
+    public int getMonitorCount() {
+        return monitorCount;
+    }
+
+    public List<OsrLocalInstr> getLocals() {
+        return locals;
+    }
+
+    public List<OsrLocalInstr> getMonitors() {
+        return monitors;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: osr_entry", super.id);
+    }
+}
@@ -0,0 +1,33 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * Local variable or monitor object loaded from OSR buffer
+ *
+ * @author kelthuzadx
+ */
+public class OsrLocalInstr extends HirInstr {
+    private final OsrEntryInstr buffer;
+    private final int offset;
+
+    public OsrLocalInstr(JavaKind type, OsrEntryInstr buffer, int offset) {
+        super(type);
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    public OsrEntryInstr getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: osr_buf[{}]", super.id, offset);
+    }
+}
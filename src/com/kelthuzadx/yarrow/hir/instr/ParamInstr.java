@@ -3,17 +3,28 @@ package com.kelthuzadx.yarrow.hir.instr;
 import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.meta.JavaKind;
 import jdk.vm.ci.meta.JavaMethod;
+import jdk.vm.ci.meta.JavaType;
 
 public class ParamInstr extends HirInstr {
     private final boolean isReceiver;
     private final int index;
     private final JavaMethod method;
+    private final JavaType declaredType;
 
-    public ParamInstr(JavaKind type, JavaMethod method, boolean isReceiver, int index) {
+    public ParamInstr(JavaKind type, JavaMethod method, boolean isReceiver, int index, JavaType declaredType) {
         super(type);
         this.method = method;
         this.isReceiver = isReceiver;
         this.index = index;
+        this.declaredType = declaredType;
+    }
+
+    public boolean isReceiver() {
+        return isReceiver;
+    }
+
+    public JavaType getDeclaredType() {
+        return declaredType;
     }
 
     @Override
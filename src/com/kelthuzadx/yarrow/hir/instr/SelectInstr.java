@@ -0,0 +1,67 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.hir.Cond;
+import com.kelthuzadx.yarrow.util.Logger;
+
+import java.util.Objects;
+
+/**
+ * Branch free selection of two values, i.e. left cond right ? trueValue : falseValue. It
+ * comes from if-conversion of small diamonds and lowers to cmov/setcc.
+ */
+public class SelectInstr extends HirInstr {
+    private final HirInstr left;
+    private final HirInstr right;
+    private final Cond cond;
+    private final HirInstr trueValue;
+    private final HirInstr falseValue;
+
+    public SelectInstr(HirInstr left, HirInstr right, Cond cond, HirInstr trueValue, HirInstr falseValue) {
+        super(trueValue.type);
+        this.left = left;
+        this.right = right;
+        this.cond = cond;
+        this.trueValue = trueValue;
+        this.falseValue = falseValue;
+    }
+
+    public HirInstr getLeft() {
+        return left;
+    }
+
+    public HirInstr getRight() {
+        return right;
+    }
+
+    public Cond getCond() {
+        return cond;
+    }
+
+    public HirInstr getTrueValue() {
+        return trueValue;
+    }
+
+    public HirInstr getFalseValue() {
+        return falseValue;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: i{} {} i{} ? i{} : i{}", super.id, left.id, cond.name().toLowerCase(), right.id,
+                trueValue.id, falseValue.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SelectInstr)) return false;
+        var that = (SelectInstr) o;
+        return cond == that.cond && left.equals(that.left) && right.equals(that.right) &&
+                trueValue.equals(that.trueValue) && falseValue.equals(that.falseValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(left, right, cond, trueValue, falseValue);
+    }
+}
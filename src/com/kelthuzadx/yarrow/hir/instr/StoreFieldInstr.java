@@ -5,12 +5,23 @@ import jdk.vm.ci.meta.JavaField;
 
 public class StoreFieldInstr extends AccessFieldInstr {
     private final HirInstr storeValue;
+    // Target object is allocated in this compilation unit and no safepoint happens since, GC
+    // barriers of the store can be elided
+    private boolean initializingStore;
 
     public StoreFieldInstr(HirInstr object, int offset, JavaField field, HirInstr storeValue) {
         super(object, offset, field);
         this.storeValue = storeValue;
     }
 
+    public boolean isInitializingStore() {
+        return initializingStore;
+    }
+
+    public void setInitializingStore(boolean initializingStore) {
+        this.initializingStore = initializingStore;
+    }
+
     public HirInstr getStoreValue() {
         return storeValue;
     }
@@ -8,6 +8,9 @@ public class StoreIndexInstr extends AccessArrayInstr {
     private final HirInstr length;
     private final JavaKind elementType;
     private final HirInstr storeValue;
+    // Target object is allocated in this compilation unit and no safepoint happens since, GC
+    // barriers of the store can be elided
+    private boolean initializingStore;
 
     public StoreIndexInstr(HirInstr array, HirInstr index, HirInstr length, JavaKind elementType, HirInstr storeValue) {
         super(elementType, array);
@@ -17,6 +20,14 @@ public class StoreIndexInstr extends AccessArrayInstr {
         this.storeValue = storeValue;
     }
 
+    public boolean isInitializingStore() {
+        return initializingStore;
+    }
+
+    public void setInitializingStore(boolean initializingStore) {
+        this.initializingStore = initializingStore;
+    }
+
     public HirInstr getStoreValue() {
         return storeValue;
     }
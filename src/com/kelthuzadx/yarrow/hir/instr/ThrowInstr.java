@@ -14,6 +14,10 @@ public class ThrowInstr extends BlockEndInstr {
         this.exception = exception;
     }
 
+    public HirInstr getException() {
+        return exception;
+    }
+
     @Override
     public String toString() {
         return Logger.format("i{}: throw i{}", super.id, exception.id);
@@ -0,0 +1,38 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.bytecode.Bytecode;
+import com.kelthuzadx.yarrow.util.Logger;
+
+/**
+ * Lane-wise arithmetic or logic operation, opcode is the one of scalar instruction
+ */
+public class VectorArithmeticInstr extends VectorInstr {
+    private final int opcode;
+    private final HirInstr left;
+    private final HirInstr right;
+
+    public VectorArithmeticInstr(int opcode, HirInstr left, HirInstr right, int lanes) {
+        super(left.type, lanes);
+        this.opcode = opcode;
+        this.left = left;
+        this.right = right;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public HirInstr getLeft() {
+        return left;
+    }
+
+    public HirInstr getRight() {
+        return right;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: v{} i{},i{} [{}x{}]", super.id, Bytecode.forName(opcode), left.id, right.id,
+                type.getJavaName(), lanes);
+    }
+}
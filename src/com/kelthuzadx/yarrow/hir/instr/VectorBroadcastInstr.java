@@ -0,0 +1,24 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.util.Logger;
+
+/**
+ * Replicate a loop invariant scalar into every lane
+ */
+public class VectorBroadcastInstr extends VectorInstr {
+    private final HirInstr value;
+
+    public VectorBroadcastInstr(HirInstr value, int lanes) {
+        super(value.type, lanes);
+        this.value = value;
+    }
+
+    public HirInstr getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: vbroadcast i{} [{}x{}]", super.id, value.id, type.getJavaName(), lanes);
+    }
+}
@@ -0,0 +1,30 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.util.Logger;
+
+/**
+ * Extract a single lane of a vector as scalar
+ */
+public class VectorExtractInstr extends VectorInstr {
+    private final VectorInstr vector;
+    private final int lane;
+
+    public VectorExtractInstr(VectorInstr vector, int lane) {
+        super(vector.type, vector.getLanes());
+        this.vector = vector;
+        this.lane = lane;
+    }
+
+    public VectorInstr getVector() {
+        return vector;
+    }
+
+    public int getLane() {
+        return lane;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: vextract i{}[{}] [{}x{}]", super.id, vector.id, lane, type.getJavaName(), lanes);
+    }
+}
@@ -0,0 +1,20 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * Instruction that operates on a vector of lanes elements. Its type is the element type,
+ * the backend picks a SIMD register that is wide enough to hold all lanes.
+ */
+public abstract class VectorInstr extends HirInstr {
+    protected final int lanes;
+
+    VectorInstr(JavaKind elementType, int lanes) {
+        super(elementType);
+        this.lanes = lanes;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+}
@@ -0,0 +1,31 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * Load lanes adjacent array elements starting at index
+ */
+public class VectorLoadInstr extends VectorInstr {
+    private final HirInstr array;
+    private final HirInstr index;
+
+    public VectorLoadInstr(HirInstr array, HirInstr index, JavaKind elementType, int lanes) {
+        super(elementType, lanes);
+        this.array = array;
+        this.index = index;
+    }
+
+    public HirInstr getArray() {
+        return array;
+    }
+
+    public HirInstr getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: vload i{}[i{}] [{}x{}]", super.id, array.id, index.id, type.getJavaName(), lanes);
+    }
+}
@@ -0,0 +1,32 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.bytecode.Bytecode;
+import com.kelthuzadx.yarrow.util.Logger;
+
+/**
+ * Combine all lanes of a vector into a scalar by an associative operation
+ */
+public class VectorReduceInstr extends VectorInstr {
+    private final int opcode;
+    private final VectorInstr vector;
+
+    public VectorReduceInstr(int opcode, VectorInstr vector) {
+        super(vector.type, vector.getLanes());
+        this.opcode = opcode;
+        this.vector = vector;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public VectorInstr getVector() {
+        return vector;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: vreduce_{} i{} [{}x{}]", super.id, Bytecode.forName(opcode), vector.id,
+                type.getJavaName(), lanes);
+    }
+}
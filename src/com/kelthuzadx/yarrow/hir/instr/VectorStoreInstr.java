@@ -0,0 +1,38 @@
+package com.kelthuzadx.yarrow.hir.instr;
+
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * Store all lanes of a vector into adjacent array elements starting at index
+ */
+public class VectorStoreInstr extends VectorInstr {
+    private final HirInstr array;
+    private final HirInstr index;
+    private final HirInstr storeValue;
+
+    public VectorStoreInstr(HirInstr array, HirInstr index, JavaKind elementType, int lanes, HirInstr storeValue) {
+        super(elementType, lanes);
+        this.array = array;
+        this.index = index;
+        this.storeValue = storeValue;
+    }
+
+    public HirInstr getArray() {
+        return array;
+    }
+
+    public HirInstr getIndex() {
+        return index;
+    }
+
+    public HirInstr getStoreValue() {
+        return storeValue;
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: vstore i{}[i{}] = i{} [{}x{}]", super.id, array.id, index.id, storeValue.id,
+                type.getJavaName(), lanes);
+    }
+}
@@ -0,0 +1,72 @@
+package com.kelthuzadx.yarrow.lir;
+
+import com.kelthuzadx.yarrow.hir.VmState;
+import com.kelthuzadx.yarrow.hir.instr.ConstantInstr;
+import com.kelthuzadx.yarrow.hir.instr.HirInstr;
+import jdk.vm.ci.code.BytecodeFrame;
+import jdk.vm.ci.code.DebugInfo;
+import jdk.vm.ci.code.StackLockValue;
+import jdk.vm.ci.hotspot.HotSpotResolvedJavaMethod;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.JavaValue;
+import jdk.vm.ci.meta.Value;
+
+/**
+ * Describe interpreter frame of a VmState in terms of LIR operands, so that runtime can rebuild
+ * the frame when compiled frame is deoptimized. Values are laid out as JVMCI expects: locals,
+ * then operand stack, then locks. The second slot of long and double is illegal.
+ *
+ * @author kelthuzadx
+ */
+public class DebugInfoBuilder {
+    private final HotSpotResolvedJavaMethod method;
+    private final FrameMap frameMap;
+
+    public DebugInfoBuilder(HotSpotResolvedJavaMethod method, FrameMap frameMap) {
+        this.method = method;
+        this.frameMap = frameMap;
+    }
+
+    /**
+     * @param state      state of the bytecode, it still holds the operands of a re-executed
+     *                   bytecode, while a call has consumed its arguments
+     * @param duringCall interpreter continues after the bytecode instead of re-executing it
+     */
+    public DebugInfo build(VmState state, boolean duringCall) {
+        int numLocals = state.getLocalSize();
+        int numStack = state.getStackSize();
+        int numLocks = state.getLockSize();
+        JavaValue[] values = new JavaValue[numLocals + numStack + numLocks];
+        JavaKind[] slotKinds = new JavaKind[numLocals + numStack];
+        for (int i = 0; i < numLocals; i++) {
+            values[i] = toJavaValue(state.get(i));
+            slotKinds[i] = values[i] == Value.ILLEGAL ? JavaKind.Illegal : state.get(i).type();
+        }
+        for (int i = 0; i < numStack; i++) {
+            HirInstr value = state.getStack().get(i);
+            values[numLocals + i] = toJavaValue(value);
+            slotKinds[numLocals + i] = values[numLocals + i] == Value.ILLEGAL ? JavaKind.Illegal : value.type();
+        }
+        frameMap.reserveMonitors(numLocks);
+        for (int i = 0; i < numLocks; i++) {
+            values[numLocals + numStack + i] = new StackLockValue(toJavaValue(state.getLock().get(i)),
+                    frameMap.getMonitorLockSlot(i), false);
+        }
+        var frame = new BytecodeFrame(null, method, state.getBci(), false, duringCall, values, slotKinds,
+                numLocals, numStack, numLocks);
+        return new DebugInfo(frame);
+    }
+
+    private JavaValue toJavaValue(HirInstr value) {
+        if (value == null) {
+            return Value.ILLEGAL;
+        }
+        if (value instanceof ConstantInstr) {
+            return ((ConstantInstr) value).getConstant();
+        }
+        // Value without operand is dead in compiled code, e.g. a phi removed by dead code elimination
+        AllocatableValue operand = value.loadOperandRaw();
+        return operand == null ? Value.ILLEGAL : operand;
+    }
+}
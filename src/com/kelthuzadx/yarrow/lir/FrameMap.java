@@ -0,0 +1,70 @@
+package com.kelthuzadx.yarrow.lir;
+
+import com.kelthuzadx.yarrow.lir.operand.LirValueKindFactory;
+import jdk.vm.ci.code.StackSlot;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ValueKind;
+
+/**
+ * Stack slots of compiled frame that are reserved before register allocation. Every monitor
+ * of VmState's lock stack has a fixed pair of slots at the bottom of frame: BasicLock that
+ * holds displaced mark word, followed by the locked object. Lock i of a VmState always lives
+ * in monitor slot i, so that deoptimization can rebuild interpreter's monitors from them.
+ * Register allocator places spill slots above reserved slots once lowering is done.
+ *
+ * @author kelthuzadx
+ */
+public class FrameMap {
+    private static final int MONITOR_SIZE = 2 * Long.BYTES;
+
+    private final LirValueKindFactory valueFactory;
+    private int monitorCount;
+    private int spillSize;
+
+    public FrameMap() {
+        this.valueFactory = new LirValueKindFactory();
+        this.monitorCount = 0;
+        this.spillSize = 0;
+    }
+
+    public void reserveMonitors(int count) {
+        monitorCount = Math.max(monitorCount, count);
+    }
+
+    public int getMonitorCount() {
+        return monitorCount;
+    }
+
+    public StackSlot getMonitorLockSlot(int index) {
+        return StackSlot.get(valueFactory.getValueKind(JavaKind.Long), index * MONITOR_SIZE, false);
+    }
+
+    public StackSlot getMonitorObjectSlot(int index) {
+        return StackSlot.get(valueFactory.getValueKind(JavaKind.Object), index * MONITOR_SIZE + Long.BYTES, false);
+    }
+
+    /**
+     * @return bytes occupied by reserved slots, spill slots are allocated above them
+     */
+    public int getReservedSize() {
+        return monitorCount * MONITOR_SIZE;
+    }
+
+    /**
+     * Allocate a slot that is large enough to hold a value of given kind, slots are 8 bytes aligned
+     */
+    public StackSlot allocateSpillSlot(ValueKind<?> kind) {
+        int size = kind.getPlatformKind().getSizeInBytes();
+        size = (size + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+        var slot = StackSlot.get(kind, getReservedSize() + spillSize, false);
+        spillSize += size;
+        return slot;
+    }
+
+    /**
+     * @return bytes occupied by all stack slots
+     */
+    public int getFrameSize() {
+        return getReservedSize() + spillSize;
+    }
+}
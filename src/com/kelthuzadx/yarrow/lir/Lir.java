@@ -5,60 +5,110 @@ import com.kelthuzadx.yarrow.lir.instr.LirInstr;
 import com.kelthuzadx.yarrow.util.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
+/**
+ * Blocks of low level IR in the order they are generated. After operations are numbered,
+ * an operation and its block can be found by id without scanning.
+ *
+ * @author kelthuzadx
+ */
 public class Lir {
-    private final HashMap<Integer, BlockStartInstr> blocks;
+    private final ArrayList<BlockStartInstr> blocks;
+    private final HashMap<Integer, BlockStartInstr> blockMap;
+    private final FrameMap frameMap;
+    // Indexed by id / 2 of numbered operations, operations with odd id are not recorded
+    private LirInstr[] instrTable;
+    private BlockStartInstr[] blockTable;
+    private int[] indexTable;
 
     public Lir() {
-        this.blocks = new HashMap<>();
+        this.blocks = new ArrayList<>();
+        this.blockMap = new HashMap<>();
+        this.frameMap = new FrameMap();
+        this.instrTable = new LirInstr[0];
+        this.blockTable = new BlockStartInstr[0];
+        this.indexTable = new int[0];
     }
 
-    public BlockStartInstr fromBlock(int lirId) {
-        for (BlockStartInstr block : new ArrayList<>(blocks.values())) {
+    public FrameMap getFrameMap() {
+        return frameMap;
+    }
+
+    /**
+     * Record position of each operation, it must be called whenever operations are renumbered
+     * or inserted
+     */
+    public void rebuildIndex() {
+        int maxId = -1;
+        for (BlockStartInstr block : blocks) {
             for (LirInstr instr : block.getLirInstrList()) {
-                if (lirId == instr.getId()) {
-                    return block;
+                maxId = Math.max(maxId, instr.getId());
+            }
+        }
+        int size = maxId / 2 + 1;
+        instrTable = new LirInstr[size];
+        blockTable = new BlockStartInstr[size];
+        indexTable = new int[size];
+        for (BlockStartInstr block : blocks) {
+            var instrList = block.getLirInstrList();
+            for (int i = 0; i < instrList.size(); i++) {
+                int id = instrList.get(i).getId();
+                if (id >= 0 && id % 2 == 0) {
+                    instrTable[id / 2] = instrList.get(i);
+                    blockTable[id / 2] = block;
+                    indexTable[id / 2] = i;
                 }
             }
         }
-        return null;
+    }
+
+    private boolean isIndexed(int lirId) {
+        return lirId >= 0 && lirId % 2 == 0 && lirId / 2 < instrTable.length && instrTable[lirId / 2] != null;
+    }
+
+    public BlockStartInstr fromBlock(int lirId) {
+        return isIndexed(lirId) ? blockTable[lirId / 2] : null;
     }
 
     public LirInstr fromInstr(int lirId) {
-        for (BlockStartInstr block : new ArrayList<>(blocks.values())) {
-            for (LirInstr instr : block.getLirInstrList()) {
-                if (lirId == instr.getId()) {
-                    return instr;
-                }
-            }
-        }
-        return null;
+        return isIndexed(lirId) ? instrTable[lirId / 2] : null;
     }
 
-    public ArrayList<BlockStartInstr> getBlocks() {
-        return new ArrayList<>(blocks.values());
+    /**
+     * @return index of operation in instruction list of its block, or -1 if it's not indexed
+     */
+    public int indexOf(int lirId) {
+        return isIndexed(lirId) ? indexTable[lirId / 2] : -1;
+    }
+
+    public List<BlockStartInstr> getBlocks() {
+        return Collections.unmodifiableList(blocks);
     }
 
     public BlockStartInstr getBlock(int id) {
-        return blocks.get(id);
+        return blockMap.get(id);
     }
 
     public void appendLirInstr(int blockStartId, LirInstr instr) {
-        blocks.get(blockStartId).appendLirInstrList(instr);
+        blockMap.get(blockStartId).appendLirInstrList(instr);
     }
 
     public void appendBlock(BlockStartInstr instr) {
-        blocks.put(instr.id(), instr);
+        if (blockMap.put(instr.id(), instr) == null) {
+            blocks.add(instr);
+        }
     }
 
     public void printLir() {
         Logger.logf("=====Phase: Low level IR=====>");
-        blocks.forEach((id, block) -> {
+        for (BlockStartInstr block : blocks) {
             Logger.logf("B" + block.getBlockId() + ":");
             for (LirInstr instr : block.getLirInstrList()) {
                 Logger.logf("\t{}", instr.toString());
             }
-        });
+        }
     }
 }
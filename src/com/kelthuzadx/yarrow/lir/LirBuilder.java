@@ -3,37 +3,52 @@ package com.kelthuzadx.yarrow.lir;
 import com.kelthuzadx.yarrow.bytecode.Bytecode;
 import com.kelthuzadx.yarrow.core.YarrowConfigAccess;
 import com.kelthuzadx.yarrow.core.YarrowError;
+import com.kelthuzadx.yarrow.core.YarrowProperties;
 import com.kelthuzadx.yarrow.core.YarrowRuntime;
 import com.kelthuzadx.yarrow.hir.BlockFlag;
 import com.kelthuzadx.yarrow.hir.Cond;
 import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.Intrinsic;
+import com.kelthuzadx.yarrow.hir.Stamp;
+import com.kelthuzadx.yarrow.hir.VmState;
 import com.kelthuzadx.yarrow.hir.instr.*;
+import com.kelthuzadx.yarrow.lir.gc.BarrierSet;
 import com.kelthuzadx.yarrow.lir.operand.Address;
 import com.kelthuzadx.yarrow.lir.operand.ConstValue;
 import com.kelthuzadx.yarrow.lir.operand.LirValueKindFactory;
 import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.instr.JavaArrayCopyInstr;
+import com.kelthuzadx.yarrow.lir.instr.LabelInstr;
+import com.kelthuzadx.yarrow.lir.stub.ArrayCopyStub;
 import com.kelthuzadx.yarrow.lir.stub.ClassCastExStub;
+import com.kelthuzadx.yarrow.lir.stub.MonitorEnterStub;
+import com.kelthuzadx.yarrow.lir.stub.MonitorExitStub;
 import com.kelthuzadx.yarrow.lir.stub.NewArrayStub;
 import com.kelthuzadx.yarrow.lir.stub.NewInstanceStub;
+import com.kelthuzadx.yarrow.lir.stub.RuntimeStub;
 import com.kelthuzadx.yarrow.lir.stub.VmStub;
+import com.kelthuzadx.yarrow.optimize.DeadCodeElimination;
 import com.kelthuzadx.yarrow.optimize.HirInstrVisitor;
 import com.kelthuzadx.yarrow.optimize.Phase;
 import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.amd64.AMD64;
 import jdk.vm.ci.code.CallingConvention;
+import jdk.vm.ci.code.DebugInfo;
 import jdk.vm.ci.code.MemoryBarriers;
 import jdk.vm.ci.code.RegisterValue;
 import jdk.vm.ci.code.StackSlot;
 import jdk.vm.ci.hotspot.HotSpotCallingConventionType;
+import jdk.vm.ci.hotspot.HotSpotResolvedJavaMethod;
 import jdk.vm.ci.hotspot.HotSpotResolvedJavaType;
 import jdk.vm.ci.hotspot.HotSpotResolvedObjectType;
 import jdk.vm.ci.meta.*;
 
-import java.util.ArrayDeque;
-import java.util.HashSet;
+import java.util.*;
+import java.util.function.Predicate;
 
 import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
 import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.TraceLIRGeneration;
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Optimize.MaxInlineAllocationSize;
 
 
 /**
@@ -42,27 +57,70 @@ import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.TraceLIRGenerati
  * @author kelthuzadx
  */
 public class LirBuilder extends HirInstrVisitor implements Phase {
+    // Longer arrays are allocated by runtime, this also keeps size computation from overflowing
+    private static final int MAX_INLINE_ARRAY_LENGTH = 0x00FFFFFF;
+
     private final LirValueKindFactory valueFactory;
     private final Hir hir;
     private final Lir lir;
     private final LirGenerator gen;
-
+    private final DebugInfoBuilder debugInfoBuilder;
+    private final Profiler profiler;
+    private final BarrierSet barrierSet;
+    // Index arithmetic that is computed by addressing of its only array access
+    private final Set<HirInstr> foldedIndices;
 
     public LirBuilder(Hir hir) {
         this.valueFactory = new LirValueKindFactory();
         this.hir = hir;
         this.lir = new Lir();
         this.gen = new LirGenerator(lir);
+        this.debugInfoBuilder = new DebugInfoBuilder(hir.getMethod(), lir.getFrameMap());
+        this.profiler = new Profiler(hir.getMethod(), gen);
+        this.barrierSet = BarrierSet.create(gen);
+        this.foldedIndices = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Debug info of a bytecode that is re-executed by interpreter after deoptimization
+     */
+    private DebugInfo stateFor(StateInstr instr) {
+        return debugInfoBuilder.build(instr.getVmState(), false);
     }
 
     public Lir getLir() {
         return lir;
     }
 
+    private AllocatableValue loadPollingPage() {
+        var pollingPage = new XRegister(JavaKind.Long);
+        int offset = YarrowConfigAccess.access().getPollingPageOffset();
+        gen.emitMov(pollingPage, new Address(new XRegister(AMD64.r15), offset, JavaKind.Long));
+        return pollingPage;
+    }
+
+    /**
+     * Backward branch touches polling page of current thread, VM arms the page to make the
+     * access trap when it wants threads to stop at safepoint
+     */
+    private DebugInfo backwardBranchStateFor(BlockEndInstr instr) {
+        return debugInfoBuilder.build(instr.getBackwardBranchState(), false);
+    }
+
+    private void emitSafepointPoll(BlockEndInstr instr) {
+        if (!instr.isSafepoint()) {
+            return;
+        }
+        gen.emitSafepointPoll(loadPollingPage());
+        gen.setDebugInfo(backwardBranchStateFor(instr));
+    }
+
     private void transformBlock(BlockStartInstr block) {
         HirInstr last = block;
         while (last != null && last != block.getBlockEnd()) {
-            last.visit(this);
+            if (!foldedIndices.contains(last)) {
+                last.visit(this);
+            }
             last = last.getNext();
         }
         if (last != null && last == block.getBlockEnd()) {
@@ -75,6 +133,9 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         if (TraceLIRGeneration) {
             Logger.logf("===== Generate Lir from Hir=====");
         }
+        if (YarrowProperties.Optimize.AddressFolding) {
+            findFoldedIndices();
+        }
         HashSet<Integer> visit = new HashSet<>();
         ArrayDeque<BlockStartInstr> workList = new ArrayDeque<>();
         workList.add(hir.getEntryBlock());
@@ -122,6 +183,10 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
 
     @Override
     public void visitInstanceOfInstr(InstanceOfInstr instr) {
+        if (instr.getResult() != null) {
+            instr.storeOperand(new ConstValue(instr.getResult()));
+            return;
+        }
         AllocatableValue object = instr.getObject().loadOperandToReg(this, gen);
         AllocatableValue result = new XRegister(instr.type());
         instr.storeOperand(result);
@@ -164,7 +229,83 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
 
     @Override
     public void visitParamInstr(ParamInstr instr) {
-        instr.storeOperand(new XRegister(instr.type()));
+        // Parameters are defined at method entry
+        YarrowError.shouldNotReachHere();
+    }
+
+    /**
+     * Parameters arrive in locations of Java calling convention, each of them is moved into
+     * a virtual register at entry, the move hints allocator to keep it where it arrives
+     */
+    private void emitParameters(VmState entryState) {
+        List<ParamInstr> params = new ArrayList<>();
+        for (HirInstr local : entryState.getLocal()) {
+            if (local instanceof ParamInstr) {
+                params.add((ParamInstr) local);
+            }
+        }
+        JavaType[] paramTypes = new JavaType[params.size()];
+        for (int i = 0; i < params.size(); i++) {
+            paramTypes[i] = params.get(i).getDeclaredType();
+        }
+        CallingConvention cc = YarrowRuntime.regConfig.getCallingConvention(HotSpotCallingConventionType.JavaCallee,
+                hir.getMethod().getSignature().getReturnType(null), paramTypes, valueFactory);
+        AllocatableValue[] args = cc.getArguments();
+        for (int i = 0; i < params.size(); i++) {
+            var param = new XRegister(params.get(i).type());
+            params.get(i).storeOperand(param);
+            if (args[i] instanceof RegisterValue) {
+                gen.emitMov(param, new XRegister(((RegisterValue) args[i]).getRegister()));
+            } else if (args[i] instanceof StackSlot) {
+                gen.emitMov(param, args[i]);
+            } else {
+                YarrowError.shouldNotReachHere();
+            }
+        }
+    }
+
+    @Override
+    public void visitOsrEntryInstr(OsrEntryInstr instr) {
+        // Interpreter passes OSR buffer as the first Java argument
+        var bufferRegister = YarrowRuntime.regConfig.getCallingConventionRegisters(
+                HotSpotCallingConventionType.JavaCall, JavaKind.Long).get(0);
+        var buffer = new XRegister(JavaKind.Long);
+        instr.storeOperand(buffer);
+        gen.emitMov(buffer, new XRegister(bufferRegister));
+
+        // Everything must be loaded before buffer is freed
+        for (OsrLocalInstr local : instr.getLocals()) {
+            emitOsrLoad(local, buffer);
+        }
+        var frameMap = lir.getFrameMap();
+        frameMap.reserveMonitors(instr.getMonitorCount());
+        for (int i = 0; i < instr.getMonitorCount(); i++) {
+            // OSR_migration_begin has inflated held locks, their BasicLocks are free to move
+            var displaced = new XRegister(JavaKind.Long);
+            gen.emitMov(displaced, new Address(buffer, instr.getMonitorLockOffset(i), JavaKind.Long));
+            gen.emitMov(frameMap.getMonitorLockSlot(i), displaced);
+            OsrLocalInstr object = instr.getMonitors().get(i);
+            emitOsrLoad(object, buffer);
+            gen.emitMov(frameMap.getMonitorObjectSlot(i), object.loadOperandRaw());
+        }
+
+        XRegister arg = new XRegister(YarrowRuntime.regConfig.getCallingConventionRegisters(
+                HotSpotCallingConventionType.NativeCall, JavaKind.Long).get(0));
+        gen.emitMov(arg, buffer);
+        Address stubAddr = new Address(new ConstValue(JavaConstant.forLong(VmStub.StubOsrMigrationEnd.getStubAddress())), AllocatableValue.ILLEGAL, 1, 0, JavaKind.Int);
+        gen.emitCallRt(AllocatableValue.ILLEGAL, stubAddr, new AllocatableValue[]{arg});
+    }
+
+    private void emitOsrLoad(OsrLocalInstr local, AllocatableValue buffer) {
+        var result = new XRegister(local.type());
+        local.storeOperand(result);
+        gen.emitMov(result, new Address(buffer, local.getOffset(), local.type()));
+    }
+
+    @Override
+    public void visitOsrLocalInstr(OsrLocalInstr instr) {
+        // Loaded by OSR entry before anything else
+        YarrowError.shouldNotReachHere();
     }
 
     @Override
@@ -230,6 +371,7 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         AllocatableValue ret = new XRegister(YarrowRuntime.regConfig.getReturnRegister(instr.type()));
         Address stubAddr = new Address(new ConstValue(JavaConstant.forLong(VmStub.StubNewArray.getStubAddress())), AllocatableValue.ILLEGAL, 1, 0, JavaKind.Int);
         gen.emitCallRt(ret, stubAddr, args);
+        gen.setDebugInfo(stateFor(instr));
         AllocatableValue result = new XRegister(instr.type());
         gen.emitMov(result, ret);
         instr.storeOperand(result);
@@ -238,15 +380,14 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
     @Override
     public void visitStoreIndexInstr(StoreIndexInstr instr) {
         var array = instr.getArray().loadOperandToReg(this, gen);
-        var index = instr.getIndex().loadOperandToReg(this, gen);
+        var address = arrayAddress(array, instr.getIndex(), instr.getElementType());
         var storeValue = instr.getStoreValue().loadOperandToReg(this, gen);
-        Address address;
-        if (index instanceof ConstValue) {
-            address = new Address(array, index, instr.getElementType());
-        } else {
-            address = new Address(array, index, Address.scaleFor(instr.getElementType()), YarrowConfigAccess.access().arrayClassElementOffset, instr.getElementType());
-        }
-        gen.emitMov(address, storeValue);
+        barrierSet.emitStore(address, storeValue, instr.getElementType(),
+                instr.isInitializingStore(), isNullConstant(instr.getStoreValue()));
+    }
+
+    private static boolean isNullConstant(HirInstr value) {
+        return value instanceof ConstantInstr && ((ConstantInstr) value).getConstant().isNull();
     }
 
     @Override
@@ -254,9 +395,9 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         var base = instr.getObject().loadOperandToReg(this, gen);
         var storeValue = instr.getStoreValue().loadOperandToReg(this, gen);
         instr.storeOperand(AllocatableValue.ILLEGAL);
-        var offset = new ConstValue(JavaConstant.forInt(instr.getOffset()));
-        var address = new Address(base, offset, instr.getField().getJavaKind());
-        gen.emitMov(address, storeValue);
+        var address = new Address(base, instr.getOffset(), instr.getField().getJavaKind());
+        barrierSet.emitStore(address, storeValue, instr.getField().getJavaKind(), instr.isInitializingStore(),
+                isNullConstant(instr.getStoreValue()));
     }
 
     @Override
@@ -270,6 +411,13 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         if (instr.getFlag() == BlockFlag.NormalEntry) {
             gen.emitNormalEntry();
             YarrowError.guarantee(instr.getBlockEnd().getSuccessor().size() == 1, "Expect one successor");
+            emitParameters(instr.getVmState());
+            if (profiler.isEnabled()) {
+                // Invocation event is reported before the first bytecode executes
+                VmState entryState = instr.getVmState().copy();
+                entryState.setBci(0);
+                profiler.emitInvocationCounter(debugInfoBuilder.build(entryState, false));
+            }
         } else if (instr.getFlag() == BlockFlag.OsrEntry) {
             gen.emitOsrEntry();
             YarrowError.guarantee(instr.getBlockEnd().getSuccessor().size() == 1, "Expect one successor");
@@ -281,10 +429,15 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         var base = instr.getObject().loadOperandToReg(this, gen);
         var result = new XRegister(instr.getField().getJavaKind());
         instr.storeOperand(result);
-        var offset = new ConstValue(JavaConstant.forInt(instr.getOffset()));
-        var address = new Address(base, offset, instr.getField().getJavaKind());
+        var address = new Address(base, instr.getOffset(), instr.getField().getJavaKind());
         gen.emitMov(result, address);
-        // FIXME: ADD GC BARRIER IF NEEDED
+        if (isReferentField(instr.getField())) {
+            barrierSet.emitReferentLoadBarrier(result);
+        }
+    }
+
+    private static boolean isReferentField(JavaField field) {
+        return field.getName().equals("referent") && field.getDeclaringClass().getName().equals("Ljava/lang/ref/Reference;");
     }
 
     @Override
@@ -330,21 +483,29 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
     @Override
     public void visitTableSwitchInstr(TableSwitchInstr instr) {
         instr.storeOperand(AllocatableValue.ILLEGAL);
+        emitSafepointPoll(instr);
         var index = instr.getIndex().loadOperandToReg(this, gen);
         new PhiResolver(gen).resolve(instr.getSuccessor(), instr.getVmState());
-        for (int i = 0; i < instr.getLength(); i++) {
-            gen.emitCmp(index, i + instr.getLowKey(), Cond.EQ);
-            gen.emitBranch(Cond.EQ, JavaKind.Int, instr.getSuccessor().get(i));
+        int[] keys = new int[instr.getLength()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i + instr.getLowKey();
         }
-        gen.emitJmp(instr.getSuccessor().get(instr.getSuccessor().size() - 1));
+        var succ = instr.getSuccessor();
+        new SwitchLowering(gen, index, keys, succ.subList(0, keys.length), succ.get(succ.size() - 1)).lower();
     }
 
     @Override
     public void visitCheckCastInstr(CheckCastInstr instr) {
+        if (instr.isRedundant()) {
+            // Cast result is simply the object itself
+            instr.storeOperand(instr.getObject().loadOperand(this));
+            return;
+        }
         AllocatableValue object = instr.getObject().loadOperandToReg(this, gen);
         AllocatableValue result = new XRegister(instr.type());
         instr.storeOperand(result);
         var stub = new ClassCastExStub(object);
+        stub.setDebugInfo(stateFor(instr));
         gen.emitCheckCast(result, object, (HotSpotResolvedJavaType) instr.getKlass(), stub);
     }
 
@@ -361,20 +522,24 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
     @Override
     public void visitLoadIndexInstr(LoadIndexInstr instr) {
         var array = instr.getArray().loadOperandToReg(this, gen);
-        var index = instr.getIndex().loadOperandToReg(this, gen);
+        var address = arrayAddress(array, instr.getIndex(), instr.getElementType());
         var result = new XRegister(instr.getElementType());
         instr.storeOperand(result);
-        Address address;
-        if (index instanceof ConstValue) {
-            address = new Address(array, index, instr.getElementType());
-        } else {
-            address = new Address(array, index, Address.scaleFor(instr.getElementType()), YarrowConfigAccess.access().arrayClassElementOffset, instr.getElementType());
-        }
         gen.emitMov(result, address);
     }
 
     @Override
     public void visitArithmeticInstr(ArithmeticInstr instr) {
+        switch (instr.getOpcode()) {
+            case Bytecode.IDIV:
+            case Bytecode.LDIV:
+            case Bytecode.IREM:
+            case Bytecode.LREM:
+                emitIntegerDivide(instr);
+                return;
+            default:
+                break;
+        }
         AllocatableValue left = instr.getLeft().loadOperandToReg(this, gen);
         AllocatableValue right = instr.getRight().loadOperandToReg(this, gen);
         AllocatableValue result = new XRegister(instr.type());
@@ -402,14 +567,10 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
             case Bytecode.DMUL:
                 gen.emitMul(result, left, right);
                 break;
-            case Bytecode.IDIV:
-            case Bytecode.LDIV:
             case Bytecode.FDIV:
             case Bytecode.DDIV:
                 gen.emitDiv(result, left, right);
                 break;
-            case Bytecode.IREM:
-            case Bytecode.LREM:
             case Bytecode.FREM:
             case Bytecode.DREM:
                 gen.emitRem(result, left, right);
@@ -419,6 +580,29 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         }
     }
 
+    /**
+     * idiv takes dividend in rax and leaves quotient in rax and remainder in rdx, divisor is
+     * kept in rcx so that it conflicts with neither of them
+     */
+    private void emitIntegerDivide(ArithmeticInstr instr) {
+        // Both operands are generated before any of them is moved into a fixed register
+        instr.getLeft().loadOperand(this);
+        instr.getRight().loadOperand(this);
+        AllocatableValue dividend = instr.getLeft().loadOperandToReg(this, gen, new XRegister(AMD64.rax));
+        AllocatableValue divisor = instr.getRight().loadOperandToReg(this, gen, new XRegister(AMD64.rcx));
+        AllocatableValue result = new XRegister(instr.type());
+        instr.storeOperand(result);
+        if (instr.getOpcode() == Bytecode.IDIV || instr.getOpcode() == Bytecode.LDIV) {
+            XRegister quotient = new XRegister(AMD64.rax);
+            gen.emitDiv(quotient, dividend, divisor);
+            gen.emitMov(result, quotient);
+        } else {
+            XRegister remainder = new XRegister(AMD64.rdx);
+            gen.emitRem(remainder, dividend, divisor);
+            gen.emitMov(result, remainder);
+        }
+    }
+
 
     @Override
     public void visitArrayLenInstr(ArrayLenInstr instr) {
@@ -431,31 +615,86 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
 
     @Override
     public void visitMonitorExitInstr(MonitorExitInstr instr) {
-
+        var frameMap = lir.getFrameMap();
+        var lockSlot = frameMap.getMonitorLockSlot(instr.getMonitorIndex());
+        AllocatableValue object = instr.getLock().loadOperandToReg(this, gen);
+        XRegister lockAddress = new XRegister(JavaKind.Long);
+        gen.emitLea(lockAddress, lockSlot);
+        var stub = new MonitorExitStub(object, lockAddress);
+        if (!YarrowConfigAccess.access().canInlineLocking()) {
+            gen.emitJmp(stub);
+            gen.emitLabel(stub.getContinuation());
+            return;
+        }
+        // Zero displaced header means recursive lock, there is nothing to restore
+        XRegister displaced = new XRegister(JavaKind.Long);
+        gen.emitMov(displaced, lockSlot);
+        gen.emitCmp(displaced, 0, Cond.EQ);
+        gen.emitBranch(Cond.EQ, stub.getContinuation());
+        // Put displaced header back if mark word still points to our BasicLock, otherwise
+        // the lock has been inflated
+        XRegister expected = new XRegister(AMD64.rax);
+        gen.emitMov(expected, lockAddress);
+        gen.emitCas(new Address(object, YarrowConfigAccess.access().markOffset, JavaKind.Long), expected, displaced);
+        gen.emitBranch(Cond.NE, stub);
+        gen.emitLabel(stub.getContinuation());
     }
 
     @Override
     public void visitMonitorEnterInstr(MonitorEnterInstr instr) {
-
+        var access = YarrowConfigAccess.access();
+        var frameMap = lir.getFrameMap();
+        frameMap.reserveMonitors(instr.getMonitorIndex() + 1);
+        var lockSlot = frameMap.getMonitorLockSlot(instr.getMonitorIndex());
+        AllocatableValue object = instr.getLock().loadOperandToReg(this, gen);
+        gen.emitMov(frameMap.getMonitorObjectSlot(instr.getMonitorIndex()), object);
+        XRegister lockAddress = new XRegister(JavaKind.Long);
+        gen.emitLea(lockAddress, lockSlot);
+        var stub = new MonitorEnterStub(object, lockAddress);
+        // Runtime returns with the lock held, interpreter continues after monitorenter
+        stub.setDebugInfo(debugInfoBuilder.build(instr.getVmState(), true));
+        if (!access.canInlineLocking()) {
+            gen.emitJmp(stub);
+            gen.emitLabel(stub.getContinuation());
+            return;
+        }
+        // Save unlocked mark word as displaced header, then try to install pointer to BasicLock
+        var markAddress = new Address(object, access.markOffset, JavaKind.Long);
+        XRegister mark = new XRegister(AMD64.rax);
+        gen.emitMov(mark, markAddress);
+        gen.emitOr(mark, mark, new ConstValue(JavaConstant.forLong(access.markWordPrototype)));
+        gen.emitMov(lockSlot, mark);
+        gen.emitCas(markAddress, mark, lockAddress);
+        gen.emitBranch(Cond.EQ, stub.getContinuation());
+        // If current mark word points into our own stack, this thread already holds the lock.
+        // Recursive lock is recorded by a zero displaced header, zero flag of AND tells it
+        gen.emitSub(mark, mark, new XRegister(AMD64.rsp));
+        gen.emitAnd(mark, mark, new ConstValue(JavaConstant.forLong(Long.BYTES - 1 - access.vmPageSize)));
+        gen.emitMov(lockSlot, mark);
+        gen.emitBranch(Cond.NE, stub);
+        gen.emitLabel(stub.getContinuation());
     }
 
     @Override
     public void visitLookupSwitchInstr(LookupSwitchInstr instr) {
         instr.storeOperand(AllocatableValue.ILLEGAL);
+        emitSafepointPoll(instr);
         var index = instr.getIndex().loadOperandToReg(this, gen);
         new PhiResolver(gen).resolve(instr.getSuccessor(), instr.getVmState());
-        for (int i = 0; i < instr.getLength(); i++) {
-            gen.emitCmp(index, instr.getKey()[i], Cond.EQ);
-            gen.emitBranch(Cond.EQ, JavaKind.Int, instr.getSuccessor().get(i));
-        }
-        gen.emitJmp(instr.getSuccessor().get(instr.getSuccessor().size() - 1));
+        var succ = instr.getSuccessor();
+        new SwitchLowering(gen, index, Arrays.copyOf(instr.getKey(), instr.getLength()),
+                succ.subList(0, instr.getLength()), succ.get(succ.size() - 1)).lower();
     }
 
     @Override
     public void visitIfInstr(IfInstr instr) {
+        emitSafepointPoll(instr);
         var left = instr.getLeft().loadOperandToReg(this, gen);
         var right = instr.getRight().loadOperandToReg(this, gen);
         instr.storeOperand(AllocatableValue.ILLEGAL);
+        if (profiler.isEnabled()) {
+            profiler.emitIfProfile(instr, left, right, instr.isBackwardBranch() ? backwardBranchStateFor(instr) : null);
+        }
         gen.emitCmp(left, right, instr.getCond());
         new PhiResolver(gen).resolve(instr.getSuccessor(), instr.getVmState());
 
@@ -471,7 +710,16 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         XRegister metadataReg = new XRegister(AMD64.rdx);
         gen.emitMov(metadataReg, new ConstValue(JavaConstant.forLong(klassPointer)));
         var stub = new NewInstanceStub((HotSpotResolvedObjectType) instr.getKlass(), metadataReg, retReg);
-        gen.emitJmp(stub);
+        stub.setDebugInfo(stateFor(instr));
+        if (canAllocateInline(instr.getKlass())) {
+            // Runtime stub becomes slow path, it's taken only if TLAB is exhausted
+            int size = ((HotSpotResolvedObjectType) instr.getKlass()).instanceSize();
+            emitTlabAllocate(retReg, new ConstValue(JavaConstant.forLong(size)), stub);
+            emitInitializeHeader(retReg, metadataReg, klassPointer);
+            emitZeroFields(retReg, YarrowConfigAccess.access().getInstanceHeaderSize(), size);
+        } else {
+            gen.emitJmp(stub);
+        }
         gen.emitLabel(stub.getContinuation());
         XRegister result = new XRegister(instr.type());
         gen.emitMov(result, retReg);
@@ -504,21 +752,8 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
 
     @Override
     public void visitNewObjectArrayInstr(NewObjectArrayInstr instr) {
-        XRegister length = (XRegister) instr.arrayLength().loadOperandToReg(this, gen,
-                new XRegister(AMD64.rbx));
-        XRegister retReg = new XRegister(YarrowRuntime.regConfig.getReturnRegister(instr.type()));
-        XRegister temp1 = new XRegister(AMD64.rcx);
-        XRegister temp2 = new XRegister(AMD64.rsi);
-        XRegister temp3 = new XRegister(AMD64.rdi);
-        XRegister temp4 = retReg;
-        XRegister klassReg = new XRegister(AMD64.rdx);
-        var klassPointer = YarrowRuntime.getKlassPointer((HotSpotResolvedJavaType) instr.getKlass());
-        gen.emitMov(klassReg, new ConstValue(JavaConstant.forLong(klassPointer)));
-        var stub = new NewArrayStub(length, klassReg, retReg);
-        gen.emitAllocateArray(stub, klassReg, retReg, length, temp1, temp2, temp3, temp4, JavaKind.Object);
-        AllocatableValue result = new XRegister(instr.type());
-        gen.emitMov(result, retReg);
-        instr.storeOperand(result);
+        var arrayKlass = ((HotSpotResolvedObjectType) instr.getKlass()).getArrayClass();
+        emitNewArray(instr, instr.arrayLength(), (HotSpotResolvedJavaType) arrayKlass, JavaKind.Object);
     }
 
     @Override
@@ -526,8 +761,12 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         Signature sig = instr.getSignature();
         JavaKind[] paramKinds = sig.toParameterKinds(instr.hasReceiver());
         JavaType[] paramTypes = new JavaType[paramKinds.length];
-        for (int i = 0; i < paramKinds.length; i++) {
-            paramTypes[i] = sig.getParameterType(i, null);
+        int receiverCount = instr.hasReceiver() ? 1 : 0;
+        if (instr.hasReceiver()) {
+            paramTypes[0] = instr.getMethod().getDeclaringClass();
+        }
+        for (int i = receiverCount; i < paramKinds.length; i++) {
+            paramTypes[i] = sig.getParameterType(i - receiverCount, null);
         }
         HirInstr[] param = new HirInstr[instr.getArguments().length + (instr.hasReceiver() ? 1 : 0)];
         int i = 0;
@@ -540,6 +779,9 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
             }
         }
 
+        if (profiler.isEnabled()) {
+            emitCallProfile(instr);
+        }
         CallingConvention cc = YarrowRuntime.regConfig.getCallingConvention(
                 HotSpotCallingConventionType.JavaCall, sig.getReturnType(null), paramTypes, valueFactory);
         AllocatableValue receiver = AllocatableValue.ILLEGAL;
@@ -559,25 +801,25 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
             }
         }
         if (instr.hasReceiver()) {
-            YarrowError.unimplemented();
+            // Receiver is always passed as the first argument
+            receiver = args[0];
         }
+        // Interpreter continues after the call with its result, arguments are gone by then
+        DebugInfo info = debugInfoBuilder.build(instr.getVmState(), true);
         switch (instr.getOpcode()) {
 
             case Bytecode.INVOKESTATIC:
                 gen.emitJavaCall(Mnemonic.CALL_STATIC, resultRegister, instr.getMethod(), AllocatableValue.ILLEGAL, args);
+                gen.setDebugInfo(info);
                 break;
             case Bytecode.INVOKEINTERFACE:
             case Bytecode.INVOKESPECIAL:
-            case Bytecode.INVOKEVIRTUAL: {
-                if (instr.getOpcode() == Bytecode.INVOKESPECIAL) {
-                    gen.emitJavaCall(Mnemonic.CALL_OPTVIRTUAL, resultRegister, instr.getMethod(), receiver, args);
-                } else {
-                    gen.emitJavaCall(Mnemonic.CALL_ICVIRTUAL, resultRegister, instr.getMethod(), receiver, args);
-                }
+            case Bytecode.INVOKEVIRTUAL:
+                emitVirtualCall(instr, resultRegister, receiver, args, info);
                 break;
-            }
             case Bytecode.INVOKEDYNAMIC:
                 gen.emitJavaCall(Mnemonic.CALL_DYNAMIC, resultRegister, instr.getMethod(), receiver, args);
+                gen.setDebugInfo(info);
                 break;
             default:
                 YarrowError.unimplemented();
@@ -593,6 +835,10 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
     @Override
     public void visitGotoInstr(GotoInstr instr) {
         instr.storeOperand(AllocatableValue.ILLEGAL);
+        emitSafepointPoll(instr);
+        if (profiler.isEnabled() && instr.isBackwardBranch()) {
+            profiler.emitBackedgeCounter(instr, backwardBranchStateFor(instr));
+        }
         new PhiResolver(gen).resolve(instr.getSuccessor(), instr.getVmState());
         gen.emitJmp(instr.getSuccessor().get(0));
     }
@@ -600,14 +846,14 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
     @Override
     public void visitReturnInstr(ReturnInstr instr) {
         if (instr.isType(JavaKind.Void)) {
-            gen.emitReturn(AllocatableValue.ILLEGAL);
+            gen.emitReturn(AllocatableValue.ILLEGAL, loadPollingPage());
             instr.storeOperand(AllocatableValue.ILLEGAL); // ReturnInstr has no operand result
             return;
         }
 
         XRegister retReg = new XRegister(YarrowRuntime.regConfig.getReturnRegister(instr.type()));
         AllocatableValue left = instr.getReturnValue().loadOperandToReg(this, gen, retReg);
-        gen.emitReturn(left);
+        gen.emitReturn(left, loadPollingPage());
         instr.storeOperand(AllocatableValue.ILLEGAL); // ReturnInstr has no operand result
     }
 
@@ -621,23 +867,822 @@ public class LirBuilder extends HirInstrVisitor implements Phase {
         YarrowError.unimplemented("unsupported");
     }
 
+    @Override
+    public void visitDeoptimizeInstr(DeoptimizeInstr instr) {
+        var access = YarrowConfigAccess.access();
+        // Deoptimization blob reads the trap request from current thread
+        JavaConstant trapRequest = YarrowRuntime.metaAccess.encodeDeoptActionAndReason(instr.getAction(), instr.getReason(), 0);
+        gen.emitMov(new Address(new XRegister(AMD64.r15), access.pendingDeoptimizationOffset, JavaKind.Int), new ConstValue(trapRequest));
+        Address blobAddr = new Address(new ConstValue(JavaConstant.forLong(access.deoptBlobUncommonTrap)), AllocatableValue.ILLEGAL, 1, 0, JavaKind.Int);
+        gen.emitCallRt(AllocatableValue.ILLEGAL, blobAddr, new AllocatableValue[0]);
+        gen.setDebugInfo(stateFor(instr));
+        instr.storeOperand(AllocatableValue.ILLEGAL);
+    }
+
     @Override
     public void visitNewTypeArrayInstr(NewTypeArrayInstr instr) {
-        XRegister length = (XRegister) instr.arrayLength().loadOperandToReg(this, gen,
-                new XRegister(AMD64.rbx));
+        var arrayKlass = YarrowRuntime.metaAccess.lookupJavaType(instr.getElemementType().toJavaClass()).getArrayClass();
+        emitNewArray(instr, instr.arrayLength(), (HotSpotResolvedJavaType) arrayKlass, instr.getElemementType());
+    }
+
+    @Override
+    public void visitIntrinsicInstr(IntrinsicInstr instr) {
+        HirInstr[] args = instr.getArguments();
+        AllocatableValue left = args[0].loadOperandToReg(this, gen);
+        AllocatableValue result = new XRegister(instr.type());
+        instr.storeOperand(result);
+        switch (instr.getIntrinsic()) {
+            case MathAbsInt:
+            case MathAbsLong:
+            case MathAbsFloat:
+            case MathAbsDouble:
+                gen.emitAbs(result, left);
+                break;
+            case MathSqrt:
+                gen.emitSqrt(result, left);
+                break;
+            case MathMinInt:
+            case MathMinLong:
+            case MathMaxInt:
+            case MathMaxLong: {
+                // mov result, left; cmp result, right; cmovg/cmovl result, right
+                AllocatableValue right = args[1].loadOperandToReg(this, gen);
+                Cond cond = (instr.getIntrinsic() == Intrinsic.MathMinInt ||
+                        instr.getIntrinsic() == Intrinsic.MathMinLong) ? Cond.GT : Cond.LT;
+                gen.emitMov(result, left);
+                gen.emitCmp(result, right, cond);
+                gen.emitCmove(cond, result, right, result);
+                break;
+            }
+            default:
+                YarrowError.shouldNotReachHere();
+        }
+    }
+
+    @Override
+    public void visitArrayCopyInstr(ArrayCopyInstr instr) {
+        AllocatableValue src = instr.getSrc().loadOperandToReg(this, gen);
+        AllocatableValue srcPos = instr.getSrcPos().loadOperandToReg(this, gen);
+        AllocatableValue dest = instr.getDest().loadOperandToReg(this, gen);
+        AllocatableValue destPos = instr.getDestPos().loadOperandToReg(this, gen);
+        AllocatableValue length = instr.getLength().loadOperandToReg(this, gen);
+        instr.storeOperand(AllocatableValue.ILLEGAL);
+
+        int flags = JavaArrayCopyInstr.ALL_FLAGS;
+        if (instr.getSrc() instanceof NewTypeArrayInstr) {
+            flags &= ~JavaArrayCopyInstr.SRC_NULL_CHECK;
+        }
+        if (instr.getDest() instanceof NewTypeArrayInstr) {
+            flags &= ~JavaArrayCopyInstr.DEST_NULL_CHECK;
+        }
+        if (isNonNegativeConst(instr.getSrcPos())) {
+            flags &= ~JavaArrayCopyInstr.SRC_POS_POSITIVE_CHECK;
+        }
+        if (isNonNegativeConst(instr.getDestPos())) {
+            flags &= ~JavaArrayCopyInstr.DEST_POS_POSITIVE_CHECK;
+        }
+        if (isNonNegativeConst(instr.getLength())) {
+            flags &= ~JavaArrayCopyInstr.LENGTH_POSITIVE_CHECK;
+        }
+        if (isInRange(instr.getSrc(), instr.getSrcPos(), instr.getLength())) {
+            flags &= ~JavaArrayCopyInstr.SRC_RANGE_CHECK;
+        }
+        if (isInRange(instr.getDest(), instr.getDestPos(), instr.getLength())) {
+            flags &= ~JavaArrayCopyInstr.DEST_RANGE_CHECK;
+        }
+        // A fresh allocation never aliases another array, so copying forward is always fine
+        if (instr.getSrc() != instr.getDest() &&
+                (instr.getSrc() instanceof NewTypeArrayInstr || instr.getDest() instanceof NewTypeArrayInstr)) {
+            flags &= ~JavaArrayCopyInstr.OVERLAPPING;
+        }
+
+        // rep movs takes source address in rsi, destination address in rdi and count in rcx
+        XRegister temp1 = new XRegister(AMD64.rsi);
+        XRegister temp2 = new XRegister(AMD64.rdi);
+        XRegister temp3 = new XRegister(AMD64.rcx);
+        var stub = new ArrayCopyStub(instr.getMethod(), new AllocatableValue[]{src, srcPos, dest, destPos, length});
+        // Slow path calls System.arraycopy, interpreter continues after the call
+        stub.setDebugInfo(debugInfoBuilder.build(instr.getVmState(), true));
+        gen.emitArrayCopy(stub, src, srcPos, dest, destPos, length, temp1, temp2, temp3, instr.getElementType(), flags);
+        gen.emitLabel(stub.getContinuation());
+    }
+
+    @Override
+    public void visitSelectInstr(SelectInstr instr) {
+        var left = instr.getLeft().loadOperandToReg(this, gen);
+        var right = instr.getRight().loadOperandToReg(this, gen);
+        var result = new XRegister(instr.type());
+        instr.storeOperand(result);
+        if (isIntConst(instr.getTrueValue(), 1) && isIntConst(instr.getFalseValue(), 0)) {
+            // cmp left, right; setcc result
+            gen.emitCmp(left, right, instr.getCond());
+            gen.emitSetcc(instr.getCond(), result);
+        } else if (isIntConst(instr.getTrueValue(), 0) && isIntConst(instr.getFalseValue(), 1)) {
+            gen.emitCmp(left, right, instr.getCond().negate());
+            gen.emitSetcc(instr.getCond().negate(), result);
+        } else {
+            // mov result, falseValue; cmp left, right; cmovcc result, trueValue
+            var trueValue = instr.getTrueValue().loadOperandToReg(this, gen);
+            var falseValue = instr.getFalseValue().loadOperandToReg(this, gen);
+            gen.emitMov(result, falseValue);
+            gen.emitCmp(left, right, instr.getCond());
+            gen.emitCmove(instr.getCond(), result, trueValue, result);
+        }
+    }
+
+    private static boolean isIntConst(HirInstr instr, int value) {
+        return instr instanceof ConstantInstr && instr.isType(JavaKind.Int) &&
+                ((ConstantInstr) instr).getConstant().asInt() == value;
+    }
+
+    @Override
+    public void visitVectorInstr(VectorInstr instr) {
+        YarrowError.shouldNotReachHere();
+    }
+
+    @Override
+    public void visitVectorLoadInstr(VectorLoadInstr instr) {
+        var array = instr.getArray().loadOperandToReg(this, gen);
+        var address = arrayAddress(array, instr.getIndex(), instr.type());
+        var result = new XRegister(instr.type(), valueFactory.getVectorValueKind(instr.type(), instr.getLanes()));
+        instr.storeOperand(result);
+        gen.emitVectorMov(result, address);
+    }
+
+    @Override
+    public void visitVectorStoreInstr(VectorStoreInstr instr) {
+        var array = instr.getArray().loadOperandToReg(this, gen);
+        var address = arrayAddress(array, instr.getIndex(), instr.type());
+        var storeValue = instr.getStoreValue().loadOperand(this);
+        instr.storeOperand(AllocatableValue.ILLEGAL);
+        gen.emitVectorMov(address, storeValue);
+    }
+
+    @Override
+    public void visitVectorArithmeticInstr(VectorArithmeticInstr instr) {
+        var left = instr.getLeft().loadOperand(this);
+        var right = instr.getRight().loadOperand(this);
+        var result = new XRegister(instr.type(), valueFactory.getVectorValueKind(instr.type(), instr.getLanes()));
+        instr.storeOperand(result);
+        Mnemonic mnemonic;
+        switch (instr.getOpcode()) {
+            case Bytecode.IADD:
+            case Bytecode.LADD:
+            case Bytecode.FADD:
+            case Bytecode.DADD:
+                mnemonic = Mnemonic.VADD;
+                break;
+            case Bytecode.ISUB:
+            case Bytecode.LSUB:
+            case Bytecode.FSUB:
+            case Bytecode.DSUB:
+                mnemonic = Mnemonic.VSUB;
+                break;
+            case Bytecode.IMUL:
+            case Bytecode.LMUL:
+            case Bytecode.FMUL:
+            case Bytecode.DMUL:
+                mnemonic = Mnemonic.VMUL;
+                break;
+            case Bytecode.FDIV:
+            case Bytecode.DDIV:
+                mnemonic = Mnemonic.VDIV;
+                break;
+            case Bytecode.IAND:
+            case Bytecode.LAND:
+                mnemonic = Mnemonic.VAND;
+                break;
+            case Bytecode.IOR:
+            case Bytecode.LOR:
+                mnemonic = Mnemonic.VOR;
+                break;
+            case Bytecode.IXOR:
+            case Bytecode.LXOR:
+                mnemonic = Mnemonic.VXOR;
+                break;
+            default:
+                throw YarrowError.shouldNotReachHere();
+        }
+        // AVX form is non-destructive, there is no need to copy left operand into result first
+        gen.emitVectorOp(mnemonic, result, left, right);
+    }
+
+    @Override
+    public void visitVectorBroadcastInstr(VectorBroadcastInstr instr) {
+        var value = instr.getValue().loadOperandToReg(this, gen);
+        var result = new XRegister(instr.type(), valueFactory.getVectorValueKind(instr.type(), instr.getLanes()));
+        instr.storeOperand(result);
+        gen.emitVectorBroadcast(result, value);
+    }
+
+    @Override
+    public void visitVectorReduceInstr(VectorReduceInstr instr) {
+        var vector = instr.getVector().loadOperand(this);
+        var result = new XRegister(instr.type());
+        instr.storeOperand(result);
+        Mnemonic mnemonic;
+        switch (instr.getOpcode()) {
+            case Bytecode.IADD:
+            case Bytecode.LADD:
+                mnemonic = Mnemonic.VREDUCE_ADD;
+                break;
+            case Bytecode.IAND:
+            case Bytecode.LAND:
+                mnemonic = Mnemonic.VREDUCE_AND;
+                break;
+            case Bytecode.IOR:
+            case Bytecode.LOR:
+                mnemonic = Mnemonic.VREDUCE_OR;
+                break;
+            case Bytecode.IXOR:
+            case Bytecode.LXOR:
+                mnemonic = Mnemonic.VREDUCE_XOR;
+                break;
+            default:
+                throw YarrowError.shouldNotReachHere();
+        }
+        gen.emitVectorReduce(mnemonic, result, vector);
+    }
+
+    @Override
+    public void visitVectorExtractInstr(VectorExtractInstr instr) {
+        var vector = instr.getVector().loadOperand(this);
+        var result = new XRegister(instr.type());
+        instr.storeOperand(result);
+        gen.emitVectorExtract(result, vector, instr.getLane());
+    }
+
+    /**
+     * Only initialized classes whose instances have a fixed size can be allocated inline, others,
+     * e.g. classes with finalizers, must go through runtime
+     */
+    private static boolean canAllocateInline(JavaType klass) {
+        if (!YarrowProperties.Optimize.InlineAllocation || !(klass instanceof HotSpotResolvedObjectType)) {
+            return false;
+        }
+        var type = (HotSpotResolvedObjectType) klass;
+        return type.isInitialized() && type.instanceSize() > 0 && type.instanceSize() <= MaxInlineAllocationSize;
+    }
+
+    /**
+     * Bump the top of thread local allocation buffer, jump to stub if there is no room left.
+     * Result points to uninitialized memory
+     */
+    private void emitTlabAllocate(XRegister result, AllocatableValue size, RuntimeStub stub) {
+        var access = YarrowConfigAccess.access();
+        XRegister thread = new XRegister(AMD64.r15);
+        var top = new Address(thread, access.getTlabTopOffset(), JavaKind.Long);
+        var end = new Address(thread, access.getTlabEndOffset(), JavaKind.Long);
+        gen.emitMov(result, top);
+        XRegister newTop = new XRegister(JavaKind.Long);
+        gen.emitMov(newTop, result);
+        gen.emitAdd(newTop, newTop, size);
+        gen.emitCmp(newTop, end, Cond.UGT);
+        gen.emitBranch(Cond.UGT, stub);
+        gen.emitMov(top, newTop);
+    }
+
+    /**
+     * Dispatch a call with receiver, in order of preference:
+     * <ul>
+     *     <li>direct call if target is statically bound or receiver type is exact</li>
+     *     <li>inline cache call, the call site binds itself to one receiver klass at runtime, i.e.
+     *     callee's unverified entry compares receiver klass against the cached one, and it's
+     *     repatched to a vtable/itable stub once it goes megamorphic</li>
+     *     <li>inline vtable or itable dispatch when inline caches are disabled</li>
+     * </ul>
+     * Unresolved targets always go through inline cache, its miss handler resolves them.
+     */
+    private void emitVirtualCall(CallInstr instr, AllocatableValue result, AllocatableValue receiver, AllocatableValue[] args, DebugInfo info) {
+        if (!(instr.getMethod() instanceof HotSpotResolvedJavaMethod)) {
+            gen.emitJavaCall(Mnemonic.CALL_ICVIRTUAL, result, instr.getMethod(), receiver, args);
+            gen.setDebugInfo(info);
+            return;
+        }
+        var method = (HotSpotResolvedJavaMethod) instr.getMethod();
+        ResolvedJavaMethod direct = resolveDirectTarget(instr, method);
+        if (direct != null) {
+            gen.emitJavaCall(Mnemonic.CALL_OPTVIRTUAL, result, direct, receiver, args);
+            gen.setDebugInfo(info);
+            return;
+        }
+        if (!YarrowProperties.Optimize.InlineCache) {
+            var holder = method.getDeclaringClass();
+            if (instr.getOpcode() == Bytecode.INVOKEVIRTUAL && !holder.isInterface() && method.isInVirtualMethodTable(holder)) {
+                emitVtableCall(result, method, receiver, args, info);
+                return;
+            }
+            int itableIndex = holder.isInterface() ? YarrowRuntime.getItableIndex(method) : -1;
+            if (instr.getOpcode() == Bytecode.INVOKEINTERFACE && itableIndex >= 0) {
+                emitItableCall(result, method, itableIndex, receiver, args, info);
+                return;
+            }
+        }
+        gen.emitJavaCall(Mnemonic.CALL_ICVIRTUAL, result, method, receiver, args);
+        gen.setDebugInfo(info);
+    }
+
+    private ResolvedJavaMethod resolveDirectTarget(CallInstr instr, HotSpotResolvedJavaMethod method) {
+        if (instr.getOpcode() == Bytecode.INVOKESPECIAL || method.canBeStaticallyBound()) {
+            return method;
+        }
+        // Receiver of exact type always dispatches to the same method
+        Stamp stamp = instr.getReceiver().getStamp();
+        if (stamp != null && stamp.isExact()) {
+            ResolvedJavaMethod concrete = stamp.getType().resolveConcreteMethod(method, hir.getMethod().getDeclaringClass());
+            if (concrete != null && !concrete.isAbstract()) {
+                return concrete;
+            }
+        }
+        return null;
+    }
+
+    private void emitCallProfile(CallInstr instr) {
+        int bci = instr.getVmState().getBci();
+        if (instr.getOpcode() != Bytecode.INVOKEVIRTUAL && instr.getOpcode() != Bytecode.INVOKEINTERFACE) {
+            profiler.emitCallProfile(bci, null);
+            return;
+        }
+        // Null receiver throws at the call, its type is not recorded
+        AllocatableValue receiver = instr.getReceiver().loadOperandToReg(this, gen);
+        var skip = new LabelInstr();
+        gen.emitCmp(receiver, new ConstValue(JavaConstant.NULL_POINTER), Cond.EQ);
+        gen.emitBranch(Cond.EQ, skip);
+        profiler.emitCallProfile(bci, emitLoadKlass(receiver));
+        gen.emitLabel(skip);
+    }
+
+    private XRegister emitLoadKlass(AllocatableValue object) {
+        var access = YarrowConfigAccess.access();
+        XRegister klass = new XRegister(JavaKind.Long);
+        if (access.useCompressedClassPointers) {
+            gen.emitMov(klass, new Address(object, access.klassOffset, JavaKind.Int));
+            if (access.narrowKlassShift != 0) {
+                gen.emitShl(klass, klass, new ConstValue(JavaConstant.forInt(access.narrowKlassShift)));
+            }
+            if (access.narrowKlassBase != 0) {
+                gen.emitAdd(klass, klass, new ConstValue(JavaConstant.forLong(access.narrowKlassBase)));
+            }
+        } else {
+            gen.emitMov(klass, new Address(object, access.klassOffset, JavaKind.Long));
+        }
+        return klass;
+    }
+
+    /**
+     * Load Method* from receiver klass's vtable into rbx and call its compiled entry, the
+     * same as what HotSpot vtable stub does
+     */
+    private void emitVtableCall(AllocatableValue result, HotSpotResolvedJavaMethod method, AllocatableValue receiver, AllocatableValue[] args, DebugInfo info) {
+        XRegister klass = emitLoadKlass(receiver);
+        XRegister methodPointer = new XRegister(AMD64.rbx);
+        gen.emitMov(methodPointer, new Address(klass, method.vtableEntryOffset(method.getDeclaringClass()), JavaKind.Long));
+        gen.emitIndirectJavaCall(result, method, receiver, args, methodPointer);
+        gen.setDebugInfo(info);
+    }
+
+    /**
+     * Scan itable of receiver klass for the interface, then load Method* from method table
+     * of that interface:
+     * <pre>
+     *     scan = klass + vtable_start + vtable_length * vtable_entry_size
+     *     loop:
+     *         current = scan->interface; scan++
+     *         if current == interface goto found
+     *         if current != null goto loop
+     *     miss:
+     *         inline cache call, runtime throws IncompatibleClassChangeError or AbstractMethodError
+     *         goto done
+     *     found:
+     *         rbx = (klass + (scan-1)->offset)[itable_index].method
+     *         if rbx == null goto miss
+     *         call rbx->from_compiled_entry
+     *     done:
+     * </pre>
+     */
+    private void emitItableCall(AllocatableValue result, HotSpotResolvedJavaMethod method, int itableIndex, AllocatableValue receiver, AllocatableValue[] args, DebugInfo info) {
+        var access = YarrowConfigAccess.access();
+        XRegister klass = emitLoadKlass(receiver);
+        XRegister scan = new XRegister(JavaKind.Long);
+        gen.emitMov(scan, new Address(klass, access.klassVtableLengthOffset, JavaKind.Int));
+        gen.emitMul(scan, scan, new ConstValue(JavaConstant.forLong(access.vtableEntrySize)));
+        gen.emitAdd(scan, scan, klass);
+        gen.emitAdd(scan, scan, new ConstValue(JavaConstant.forLong(access.klassVtableStartOffset)));
+        XRegister interfaceKlass = new XRegister(JavaKind.Long);
+        gen.emitMov(interfaceKlass, new ConstValue(JavaConstant.forLong(YarrowRuntime.getKlassPointer((HotSpotResolvedJavaType) method.getDeclaringClass()))));
+
+        var loop = new LabelInstr();
+        var miss = new LabelInstr();
+        var found = new LabelInstr();
+        var done = new LabelInstr();
+        gen.emitLabel(loop);
+        XRegister current = new XRegister(JavaKind.Long);
+        gen.emitMov(current, new Address(scan, access.itableInterfaceOffset, JavaKind.Long));
+        gen.emitAdd(scan, scan, new ConstValue(JavaConstant.forLong(access.itableOffsetEntrySize)));
+        gen.emitCmp(current, interfaceKlass, Cond.EQ);
+        gen.emitBranch(Cond.EQ, found);
+        gen.emitCmp(current, 0, Cond.NE);
+        gen.emitBranch(Cond.NE, loop);
+
+        gen.emitLabel(miss);
+        gen.emitJavaCall(Mnemonic.CALL_ICVIRTUAL, result, method, receiver, args);
+        gen.setDebugInfo(info);
+        gen.emitBranch(Cond.Always, done);
+
+        gen.emitLabel(found);
+        XRegister methodTable = new XRegister(JavaKind.Long);
+        gen.emitMov(methodTable, new Address(scan, access.itableOffsetOffset - access.itableOffsetEntrySize, JavaKind.Int));
+        gen.emitAdd(methodTable, methodTable, klass);
+        XRegister methodPointer = new XRegister(AMD64.rbx);
+        int methodOffset = itableIndex * access.itableMethodEntrySize + access.itableMethodEntryMethodOffset;
+        gen.emitMov(methodPointer, new Address(methodTable, methodOffset, JavaKind.Long));
+        gen.emitCmp(methodPointer, 0, Cond.EQ);
+        gen.emitBranch(Cond.EQ, miss);
+        gen.emitIndirectJavaCall(result, method, receiver, args, methodPointer);
+        gen.setDebugInfo(info);
+        gen.emitLabel(done);
+    }
+
+    private void emitInitializeHeader(XRegister object, XRegister klassReg, long klassPointer) {
+        var access = YarrowConfigAccess.access();
+        gen.emitMov(new Address(object, access.markOffset, JavaKind.Long),
+                new ConstValue(JavaConstant.forLong(access.markWordPrototype)));
+        if (access.useCompressedClassPointers) {
+            int narrowKlass = (int) access.encodeKlassPointer(klassPointer);
+            gen.emitMov(new Address(object, access.klassOffset, JavaKind.Int), new ConstValue(JavaConstant.forInt(narrowKlass)));
+        } else {
+            gen.emitMov(new Address(object, access.klassOffset, JavaKind.Long), klassReg);
+        }
+    }
+
+    private void emitZeroFields(XRegister object, int from, int to) {
+        emitZeroFields(object, from, to, new BitSet());
+    }
+
+    /**
+     * Zero memory in [from, to) of new object, objects are 8 bytes aligned so only the head
+     * might be a 4 bytes gap
+     *
+     * @param initialized bytes that are going to be initialized anyway
+     */
+    private void emitZeroFields(XRegister object, int from, int to, BitSet initialized) {
+        if (YarrowConfigAccess.access().zeroTlab) {
+            // TLAB is zeroed when it's handed out
+            return;
+        }
+        int offset = from;
+        if (offset % Long.BYTES != 0 && offset < to) {
+            if (initialized.get(offset, offset + Integer.BYTES).cardinality() != Integer.BYTES) {
+                gen.emitMov(new Address(object, offset, JavaKind.Int), new ConstValue(JavaConstant.INT_0));
+            }
+            offset += Integer.BYTES;
+        }
+        for (; offset < to; offset += Long.BYTES) {
+            if (initialized.get(offset, offset + Long.BYTES).cardinality() != Long.BYTES) {
+                gen.emitMov(new Address(object, offset, JavaKind.Long), new ConstValue(JavaConstant.LONG_0));
+            }
+        }
+    }
+
+    /**
+     * Allocate array from TLAB, arrays of constant small length are zeroed by unrolled stores,
+     * others are zeroed by rep stos. Runtime stub is the slow path for exhausted TLAB and for
+     * negative or huge length
+     */
+    private void emitNewArray(StateInstr instr, HirInstr lengthValue, HotSpotResolvedJavaType arrayKlass, JavaKind elementType) {
+        var access = YarrowConfigAccess.access();
+        // Runtime stub takes a copy of length in rbx, inline allocation works on length itself
+        AllocatableValue length = lengthValue.loadOperandToReg(this, gen);
+        XRegister stubLength = (XRegister) lengthValue.loadOperandToReg(this, gen, new XRegister(AMD64.rbx));
         XRegister retReg = new XRegister(YarrowRuntime.regConfig.getReturnRegister(instr.type()));
-        XRegister temp1 = new XRegister(AMD64.rcx);
-        XRegister temp2 = new XRegister(AMD64.rsi);
-        XRegister temp3 = new XRegister(AMD64.rdi);
-        XRegister temp4 = retReg;
         XRegister klassReg = new XRegister(AMD64.rdx);
-        var klassPointer = YarrowRuntime.getKlassPointer(instr.getElemementType().toJavaClass());
+        var klassPointer = YarrowRuntime.getKlassPointer(arrayKlass);
         gen.emitMov(klassReg, new ConstValue(JavaConstant.forLong(klassPointer)));
-        var stub = new NewArrayStub(length, klassReg, retReg);
-        gen.emitAllocateArray(stub, klassReg, retReg, length, temp1, temp2, temp3, temp4, instr.getElemementType());
+        var stub = new NewArrayStub(stubLength, klassReg, retReg);
+        stub.setDebugInfo(stateFor(instr));
+        if (!YarrowProperties.Optimize.InlineAllocation) {
+            gen.emitJmp(stub);
+        } else {
+            int base = YarrowRuntime.metaAccess.getArrayBaseOffset(elementType);
+            int scale = YarrowRuntime.metaAccess.getArrayIndexScale(elementType);
+            int alignedBase = (base + Long.BYTES - 1) & ~(Long.BYTES - 1);
+            XRegister object = new XRegister(JavaKind.Object);
+            if (lengthValue instanceof ConstantInstr && lengthValue.isType(JavaKind.Int) &&
+                    ((ConstantInstr) lengthValue).getConstant().asInt() >= 0 &&
+                    (long) ((ConstantInstr) lengthValue).getConstant().asInt() * scale + alignedBase <= MaxInlineAllocationSize) {
+                int len = ((ConstantInstr) lengthValue).getConstant().asInt();
+                int size = (base + len * scale + Long.BYTES - 1) & ~(Long.BYTES - 1);
+                emitTlabAllocate(object, new ConstValue(JavaConstant.forLong(size)), stub);
+                emitInitializeArrayHeader(object, klassReg, klassPointer, length);
+                emitZeroFields(object, access.getArrayLengthOffset() + Integer.BYTES, size,
+                        initializedBytes(instr, len, base, scale));
+            } else {
+                // Unsigned comparison rejects negative length as well
+                gen.emitCmp(length, MAX_INLINE_ARRAY_LENGTH, Cond.UGT);
+                gen.emitBranch(Cond.UGT, stub);
+                XRegister size = new XRegister(JavaKind.Long);
+                gen.emitJavaCast(size, length, Bytecode.I2L);
+                if (scale > 1) {
+                    gen.emitShl(size, size, new ConstValue(JavaConstant.forInt(Integer.numberOfTrailingZeros(scale))));
+                }
+                gen.emitAdd(size, size, new ConstValue(JavaConstant.forLong(base + Long.BYTES - 1)));
+                gen.emitAnd(size, size, new ConstValue(JavaConstant.forLong(~(Long.BYTES - 1))));
+                emitTlabAllocate(object, size, stub);
+                emitInitializeArrayHeader(object, klassReg, klassPointer, length);
+                emitZeroFields(object, access.getArrayLengthOffset() + Integer.BYTES, alignedBase);
+                if (!access.zeroTlab) {
+                    XRegister address = new XRegister(AMD64.rdi);
+                    XRegister count = new XRegister(AMD64.rcx);
+                    XRegister zero = new XRegister(AMD64.rax);
+                    gen.emitMov(address, object);
+                    gen.emitAdd(address, address, new ConstValue(JavaConstant.forLong(alignedBase)));
+                    gen.emitMov(count, size);
+                    gen.emitSub(count, count, new ConstValue(JavaConstant.forLong(alignedBase)));
+                    gen.emitUshr(count, count, new ConstValue(JavaConstant.forInt(3)));
+                    gen.emitMov(zero, new ConstValue(JavaConstant.LONG_0));
+                    gen.emitZeroMemory(address, count, zero);
+                }
+            }
+            gen.emitMov(retReg, object);
+        }
+        gen.emitLabel(stub.getContinuation());
         AllocatableValue result = new XRegister(instr.type());
         gen.emitMov(result, retReg);
         instr.storeOperand(result);
     }
 
+    private void emitInitializeArrayHeader(XRegister array, XRegister klassReg, long klassPointer, AllocatableValue length) {
+        emitInitializeHeader(array, klassReg, klassPointer);
+        gen.emitMov(new Address(array, YarrowConfigAccess.access().getArrayLengthOffset(), JavaKind.Int), length);
+    }
+
+    /**
+     * Elements of a new primitive array that are stored right after allocation, before anything
+     * else could observe the array, need not be zeroed
+     *
+     * @return byte offsets of these elements
+     */
+    private static BitSet initializedBytes(HirInstr array, int length, int base, int scale) {
+        BitSet bytes = new BitSet();
+        if (!(array instanceof NewTypeArrayInstr)) {
+            // Garbage in object array would be visited by GC
+            return bytes;
+        }
+        for (HirInstr instr = array.getNext(); instr != null && !(instr instanceof BlockEndInstr); instr = instr.getNext()) {
+            if (instr instanceof ConstantInstr) {
+                continue;
+            }
+            if (!(instr instanceof StoreIndexInstr) || ((StoreIndexInstr) instr).getArray() != array ||
+                    !(((StoreIndexInstr) instr).getIndex() instanceof ConstantInstr)) {
+                break;
+            }
+            int index = ((ConstantInstr) ((StoreIndexInstr) instr).getIndex()).getConstant().asInt();
+            if (index < 0 || index >= length) {
+                break;
+            }
+            bytes.set(base + index * scale, base + (index + 1) * scale);
+        }
+        return bytes;
+    }
+
+    private Address arrayAddress(AllocatableValue array, HirInstr index, JavaKind elementType) {
+        ArrayIndex folded = decomposeIndex(index, elementType, foldedIndices::contains, null);
+        if (folded.value == null) {
+            return new Address(array, (int) folded.displacement, elementType);
+        }
+        var indexReg = folded.value.loadOperandToReg(this, gen);
+        if (folded.signExtend) {
+            // Address arithmetic is 64 bits wide, the upper half of an int register is not its sign
+            XRegister wideIndex = new XRegister(JavaKind.Long);
+            gen.emitJavaCast(wideIndex, indexReg, Bytecode.I2L);
+            indexReg = wideIndex;
+        }
+        return new Address(array, indexReg, folded.scale, (int) folded.displacement, elementType);
+    }
+
+    /**
+     * Element address is array + offset + index * scale, x86 addressing computes constant part
+     * of index and scaling by 1/2/4/8 for free:
+     * <pre>
+     *     a[(i & 0xff) + 2]    ==>  [array + t*4 + offset+8]    t = i & 0xff
+     *     a[i + 2]             ==>  [array + s*4 + offset+8]    s = (long) i
+     *     a[(i & 0xff) << 1]   ==>  [array + t*8 + offset]      t = i & 0xff
+     * </pre>
+     */
+    private static class ArrayIndex {
+        // Null if the whole index is constant
+        HirInstr value;
+        int scale;
+        long displacement;
+        // Value may be negative while the whole index is not
+        boolean signExtend;
+
+        ArrayIndex(HirInstr value, int scale, long displacement) {
+            this.value = value;
+            this.scale = scale;
+            this.displacement = displacement;
+            this.signExtend = false;
+        }
+    }
+
+    private static Integer intConstantOf(HirInstr instr) {
+        if (instr instanceof ConstantInstr && instr.isType(JavaKind.Int)) {
+            return ((ConstantInstr) instr).getConstant().asInt();
+        }
+        return null;
+    }
+
+    /**
+     * @return true if value is known to be in [0, 2^31)
+     */
+    private static boolean isNonNegative(HirInstr value) {
+        Integer constant = intConstantOf(value);
+        if (constant != null) {
+            return constant >= 0;
+        }
+        if (value instanceof ArrayLenInstr) {
+            return true;
+        }
+        JavaKind kind = value instanceof LoadIndexInstr ? ((LoadIndexInstr) value).getElementType() :
+                value instanceof LoadFieldInstr ? ((LoadFieldInstr) value).getField().getJavaKind() : null;
+        if (kind == JavaKind.Boolean || kind == JavaKind.Char) {
+            return true;
+        }
+        if (value instanceof LogicInstr && ((LogicInstr) value).getOpcode() == Bytecode.IAND) {
+            var and = (LogicInstr) value;
+            Integer mask = intConstantOf(and.getRight()) != null ? intConstantOf(and.getRight()) : intConstantOf(and.getLeft());
+            return mask != null && mask >= 0;
+        }
+        if (value instanceof ShiftInstr && ((ShiftInstr) value).getOpcode() == Bytecode.IUSHR) {
+            Integer count = intConstantOf(((ShiftInstr) value).getRight());
+            return count != null && (count & 31) != 0;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if value is known to be in [-2^bits, 2^bits)
+     */
+    private static boolean isBoundedBy(HirInstr value, int bits) {
+        Integer constant = intConstantOf(value);
+        if (constant != null) {
+            return constant >= -(1L << bits) && constant < (1L << bits);
+        }
+        if (value instanceof ArrayLenInstr) {
+            return bits >= 31;
+        }
+        JavaKind kind = value instanceof LoadIndexInstr ? ((LoadIndexInstr) value).getElementType() :
+                value instanceof LoadFieldInstr ? ((LoadFieldInstr) value).getField().getJavaKind() : null;
+        if (kind == JavaKind.Boolean || kind == JavaKind.Byte || kind == JavaKind.Short || kind == JavaKind.Char) {
+            return bits >= 16;
+        }
+        if (value instanceof LogicInstr && ((LogicInstr) value).getOpcode() == Bytecode.IAND) {
+            var and = (LogicInstr) value;
+            Integer mask = intConstantOf(and.getRight()) != null ? intConstantOf(and.getRight()) : intConstantOf(and.getLeft());
+            return mask != null && mask >= 0 && 32 - Integer.numberOfLeadingZeros(mask) <= bits;
+        }
+        if (value instanceof ShiftInstr && ((ShiftInstr) value).getOpcode() == Bytecode.IUSHR) {
+            Integer count = intConstantOf(((ShiftInstr) value).getRight());
+            return count != null && (count & 31) != 0 && 32 - (count & 31) <= bits;
+        }
+        return false;
+    }
+
+    /**
+     * Peel constant addends and power of two scaling off index as long as foldable allows.
+     * Only non-negative addends are folded, index that overflows with them is negative and
+     * never valid. Value left after folding an addend may still be negative, it must then be
+     * sign extended. Index is scaled only if it can not overflow int before scaling, negative
+     * value scaled alone gives a negative index, which is invalid with or without folding.
+     *
+     * @param folded collects instructions folded into address if not null
+     */
+    private static ArrayIndex decomposeIndex(HirInstr index, JavaKind elementType, Predicate<HirInstr> foldable,
+                                             Set<HirInstr> folded) {
+        var result = new ArrayIndex(index, Address.scaleFor(elementType), YarrowRuntime.metaAccess.getArrayBaseOffset(elementType));
+        while (result.value != null) {
+            HirInstr value = result.value;
+            Integer constant = intConstantOf(value);
+            if (constant != null) {
+                long displacement = result.displacement + (long) constant * result.scale;
+                if (displacement == (int) displacement) {
+                    result.value = null;
+                    result.displacement = displacement;
+                }
+                break;
+            }
+            if (!(value instanceof Op2HirInstr) || !foldable.test(value)) {
+                break;
+            }
+            var op = (Op2HirInstr) value;
+            HirInstr rest = null;
+            if (op instanceof ArithmeticInstr && (op.getOpcode() == Bytecode.IADD || op.getOpcode() == Bytecode.ISUB)) {
+                Integer addend = intConstantOf(op.getRight());
+                rest = op.getLeft();
+                if (addend != null && op.getOpcode() == Bytecode.ISUB) {
+                    addend = addend == Integer.MIN_VALUE ? null : -addend;
+                } else if (addend == null && op.getOpcode() == Bytecode.IADD) {
+                    addend = intConstantOf(op.getLeft());
+                    rest = op.getRight();
+                }
+                long displacement = addend == null ? 0 : result.displacement + (long) addend * result.scale;
+                if (addend == null || addend < 0 || displacement != (int) displacement) {
+                    break;
+                }
+                result.displacement = displacement;
+                result.signExtend |= !isNonNegative(rest);
+            } else {
+                int shift = -1;
+                if (op instanceof ShiftInstr && op.getOpcode() == Bytecode.ISHL && intConstantOf(op.getRight()) != null) {
+                    shift = intConstantOf(op.getRight()) & 31;
+                    rest = op.getLeft();
+                } else if (op instanceof ArithmeticInstr && op.getOpcode() == Bytecode.IMUL) {
+                    Integer factor = intConstantOf(op.getRight());
+                    rest = op.getLeft();
+                    if (factor == null) {
+                        factor = intConstantOf(op.getLeft());
+                        rest = op.getRight();
+                    }
+                    if (factor != null && factor > 0 && Integer.bitCount(factor) == 1) {
+                        shift = Integer.numberOfTrailingZeros(factor);
+                    }
+                }
+                if (shift < 0 || (result.scale << shift) > 8 || !isBoundedBy(rest, 31 - shift)) {
+                    break;
+                }
+                result.scale <<= shift;
+            }
+            if (folded != null) {
+                folded.add(value);
+            }
+            result.value = rest;
+        }
+        return result;
+    }
+
+    /**
+     * Index arithmetic used by nothing but one array access of the same block is folded into
+     * address of that access, so it's never generated on its own
+     */
+    private void findFoldedIndices() {
+        var useCount = new IdentityHashMap<HirInstr, Integer>();
+        var blockOf = new IdentityHashMap<HirInstr, BlockStartInstr>();
+        for (BlockStartInstr block : hir.getBlocks()) {
+            for (HirInstr instr = block; instr != null; instr = instr == block.getBlockEnd() ? null : instr.getNext()) {
+                blockOf.put(instr, block);
+                List<HirInstr> inputs = new ArrayList<>(DeadCodeElimination.inputsOf(instr));
+                if (instr instanceof StateInstr && ((StateInstr) instr).getVmState() != null) {
+                    // Any state may be described by debug info or read by phi moves
+                    VmState state = ((StateInstr) instr).getVmState();
+                    inputs.addAll(Arrays.asList(state.getLocal()));
+                    inputs.addAll(state.getStack());
+                    inputs.addAll(state.getLock());
+                }
+                for (HirInstr input : inputs) {
+                    if (input != null) {
+                        useCount.merge(input, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (BlockStartInstr block : hir.getBlocks()) {
+            for (HirInstr instr = block; instr != null; instr = instr == block.getBlockEnd() ? null : instr.getNext()) {
+                HirInstr index = null;
+                JavaKind elementType = null;
+                if (instr instanceof LoadIndexInstr) {
+                    index = ((LoadIndexInstr) instr).getIndex();
+                    elementType = ((LoadIndexInstr) instr).getElementType();
+                } else if (instr instanceof StoreIndexInstr) {
+                    index = ((StoreIndexInstr) instr).getIndex();
+                    elementType = ((StoreIndexInstr) instr).getElementType();
+                } else if (instr instanceof VectorLoadInstr) {
+                    index = ((VectorLoadInstr) instr).getIndex();
+                    elementType = instr.type();
+                } else if (instr instanceof VectorStoreInstr) {
+                    index = ((VectorStoreInstr) instr).getIndex();
+                    elementType = instr.type();
+                }
+                if (index != null) {
+                    decomposeIndex(index, elementType,
+                            value -> useCount.getOrDefault(value, 0) == 1 && blockOf.get(value) == block, foldedIndices);
+                }
+            }
+        }
+    }
+
+    private static boolean isNonNegativeConst(HirInstr instr) {
+        return instr instanceof ConstantInstr && ((ConstantInstr) instr).getConstant().asInt() >= 0;
+    }
+
+    private static boolean isInRange(HirInstr array, HirInstr pos, HirInstr length) {
+        if (!(array instanceof NewTypeArrayInstr) || !isNonNegativeConst(pos) || !isNonNegativeConst(length)) {
+            return false;
+        }
+        HirInstr arrayLength = ((NewTypeArrayInstr) array).arrayLength();
+        if (!(arrayLength instanceof ConstantInstr)) {
+            return false;
+        }
+        long end = (long) ((ConstantInstr) pos).getConstant().asInt() + ((ConstantInstr) length).getConstant().asInt();
+        return end <= ((ConstantInstr) arrayLength).getConstant().asInt();
+    }
 }
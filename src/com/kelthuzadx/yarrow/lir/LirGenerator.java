@@ -5,16 +5,22 @@ import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
 import com.kelthuzadx.yarrow.lir.instr.*;
 import com.kelthuzadx.yarrow.lir.operand.Address;
 import com.kelthuzadx.yarrow.lir.operand.ConstValue;
+import com.kelthuzadx.yarrow.lir.operand.LirValueKind;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.stub.ArrayCopyStub;
 import com.kelthuzadx.yarrow.lir.stub.ClassCastExStub;
 import com.kelthuzadx.yarrow.lir.stub.NewArrayStub;
 import com.kelthuzadx.yarrow.lir.stub.RuntimeStub;
 import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.code.DebugInfo;
 import jdk.vm.ci.hotspot.HotSpotResolvedJavaType;
 import jdk.vm.ci.meta.AllocatableValue;
 import jdk.vm.ci.meta.JavaConstant;
 import jdk.vm.ci.meta.JavaKind;
 import jdk.vm.ci.meta.JavaMethod;
 
+import java.util.List;
+
 import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.TraceLIRGeneration;
 
 
@@ -27,6 +33,7 @@ public class LirGenerator {
     private final Lir lir;
     private BlockStartInstr currentBlock;
     private int currentBlockId;
+    private LirInstr lastInstr;
 
     public LirGenerator(Lir lir) {
         this.lir = lir;
@@ -67,6 +74,10 @@ public class LirGenerator {
         appendToList(new AllocateArrayInstr(stub, klassReg, dest, len, temp1, temp2, temp3, temp4, elementType));
     }
 
+    public void emitArrayCopy(ArrayCopyStub stub, AllocatableValue src, AllocatableValue srcPos, AllocatableValue dest, AllocatableValue destPos, AllocatableValue length, AllocatableValue temp1, AllocatableValue temp2, AllocatableValue temp3, JavaKind elementType, int flags) {
+        appendToList(new JavaArrayCopyInstr(stub, src, srcPos, dest, destPos, length, temp1, temp2, temp3, elementType, flags));
+    }
+
     public void emitLabel(LabelInstr labelInstr) {
         appendToList(labelInstr);
     }
@@ -75,6 +86,49 @@ public class LirGenerator {
         appendToList(new Op2Instr(Mnemonic.NEG, to, from, AllocatableValue.ILLEGAL));
     }
 
+    public void emitAbs(AllocatableValue result, AllocatableValue value) {
+        appendToList(new Op2Instr(Mnemonic.ABS, result, value, AllocatableValue.ILLEGAL));
+    }
+
+    public void emitSqrt(AllocatableValue result, AllocatableValue value) {
+        appendToList(new Op2Instr(Mnemonic.SQRT, result, value, AllocatableValue.ILLEGAL));
+    }
+
+    /**
+     * Conditional move, result = cond ? trueValue : falseValue. Flags must be set by
+     * preceding comparison
+     */
+    public void emitCmove(Cond cond, AllocatableValue result, AllocatableValue trueValue, AllocatableValue falseValue) {
+        appendToList(new Op2Instr(Mnemonic.CMOVE, cond, result, trueValue, falseValue));
+    }
+
+    public void emitVectorMov(AllocatableValue dest, AllocatableValue src) {
+        appendToList(new Op1Instr(Mnemonic.VMOV, dest, src));
+    }
+
+    public void emitVectorBroadcast(AllocatableValue result, AllocatableValue value) {
+        appendToList(new Op1Instr(Mnemonic.VBROADCAST, result, value));
+    }
+
+    public void emitVectorOp(Mnemonic mnemonic, AllocatableValue result, AllocatableValue left, AllocatableValue right) {
+        appendToList(new Op2Instr(mnemonic, result, left, right));
+    }
+
+    public void emitVectorReduce(Mnemonic mnemonic, AllocatableValue result, AllocatableValue vector) {
+        appendToList(new Op2Instr(mnemonic, result, vector, AllocatableValue.ILLEGAL));
+    }
+
+    public void emitVectorExtract(AllocatableValue result, AllocatableValue vector, int lane) {
+        appendToList(new Op2Instr(Mnemonic.VEXTRACT, result, vector, new ConstValue(JavaConstant.forInt(lane))));
+    }
+
+    /**
+     * Materialize condition, result = cond ? 1 : 0. Flags must be set by preceding comparison
+     */
+    public void emitSetcc(Cond cond, AllocatableValue result) {
+        appendToList(new Op2Instr(Mnemonic.SETCC, cond, result, AllocatableValue.ILLEGAL, AllocatableValue.ILLEGAL));
+    }
+
     public void emitAnd(AllocatableValue dest, AllocatableValue left, AllocatableValue right) {
         appendToList(new Op2Instr(Mnemonic.AND, dest, left, right));
     }
@@ -127,6 +181,17 @@ public class LirGenerator {
         appendToList(new Op1Instr(Mnemonic.MOV, dest, src));
     }
 
+    /**
+     * Sequence moves that happen at the same time, cycles are broken by fresh virtual registers
+     */
+    public void emitParallelMove(ParallelMove moves) {
+        var sequence = moves.sequence(value -> {
+            var reg = (XRegister) value;
+            return new XRegister(reg.getJavaKind(), (LirValueKind) reg.getValueKind());
+        }, false);
+        sequence.forEach(this::appendToList);
+    }
+
     public void emitCallRt(AllocatableValue result, Address rountine, AllocatableValue[] argument) {
         appendToList(new CallRtInstr(result, rountine, argument));
     }
@@ -135,6 +200,10 @@ public class LirGenerator {
         appendToList(new JavaCallInstr(mnemonic, result, method, receiver, arguments));
     }
 
+    public void emitIndirectJavaCall(AllocatableValue result, JavaMethod method, AllocatableValue receiver, AllocatableValue[] arguments, AllocatableValue methodPointer) {
+        appendToList(new JavaCallInstr(Mnemonic.CALL_INDIRECT, result, method, receiver, arguments, methodPointer));
+    }
+
     public void emitMembar(Mnemonic mnemonic) {
         appendToList(new Op0Instr(mnemonic, AllocatableValue.ILLEGAL));
     }
@@ -151,8 +220,47 @@ public class LirGenerator {
         appendToList(new BranchInstr(condition, type, block));
     }
 
-    public void emitReturn(AllocatableValue ret) {
-        appendToList(new Op1Instr(Mnemonic.RETURN, AllocatableValue.ILLEGAL, ret));
+    public void emitBranch(Cond condition, RuntimeStub stub) {
+        appendToList(new BranchInstr(condition, stub));
+    }
+
+    public void emitBranch(Cond condition, LabelInstr label) {
+        appendToList(new BranchInstr(condition, label));
+    }
+
+    public void emitTableJump(AllocatableValue index, List<BlockStartInstr> targets) {
+        appendToList(new TableJumpInstr(index, targets));
+    }
+
+    /**
+     * Test bit index of bits, carry flag is set if the bit is 1, which branch_ult observes
+     */
+    public void emitBitTest(AllocatableValue bits, AllocatableValue index) {
+        appendToList(new Op2Instr(Mnemonic.BIT_TEST, AllocatableValue.ILLEGAL, bits, index));
+    }
+
+    public void emitLea(AllocatableValue result, AllocatableValue address) {
+        appendToList(new Op1Instr(Mnemonic.LEA, result, address));
+    }
+
+    public void emitCas(AllocatableValue address, AllocatableValue expected, AllocatableValue newValue) {
+        appendToList(new CompareAndSwapInstr(address, expected, newValue));
+    }
+
+    public void emitZeroMemory(AllocatableValue address, AllocatableValue count, AllocatableValue zero) {
+        appendToList(new ZeroMemoryInstr(address, count, zero));
+    }
+
+    /**
+     * Return polls for safepoint after frame is popped, the polling page is loaded into a
+     * scratch register beforehand
+     */
+    public void emitReturn(AllocatableValue ret, AllocatableValue pollingPage) {
+        appendToList(new Op2Instr(Mnemonic.RETURN, AllocatableValue.ILLEGAL, ret, pollingPage));
+    }
+
+    public void emitSafepointPoll(AllocatableValue pollingPage) {
+        appendToList(new Op1Instr(Mnemonic.SAFEPOINT_POLL, AllocatableValue.ILLEGAL, pollingPage));
     }
 
 
@@ -164,10 +272,18 @@ public class LirGenerator {
         appendToList(new Op0Instr(Mnemonic.OSR_ENTRY, AllocatableValue.ILLEGAL));
     }
 
+    /**
+     * Attach debug info to the last emitted instruction
+     */
+    public void setDebugInfo(DebugInfo debugInfo) {
+        lastInstr.setDebugInfo(debugInfo);
+    }
+
     private void appendToList(LirInstr instr) {
         if (TraceLIRGeneration) {
             Logger.logf("{}", instr.toString());
         }
         lir.appendLirInstr(currentBlockId, instr);
+        lastInstr = instr;
     }
 }
@@ -21,13 +21,24 @@ public enum Mnemonic {
     CALL_OPTVIRTUAL,
     CALL_ICVIRTUAL,
     CALL_DYNAMIC,
+    CALL_INDIRECT,
+    ARRAY_COPY,
+    TABLE_JUMP,
+    ZERO_MEMORY,
+    CAS,
 
     // 1 operand opcode
     MOV,
+    // Swap two physical registers, it only appears after register allocation
+    XCHG,
     BRANCH,
-    RETURN,
+    VMOV,
+    VBROADCAST,
+    LEA,
+    SAFEPOINT_POLL,
 
     // 2 operands opcode
+    RETURN,
     ADD,
     SUB,
     MUL,
@@ -43,5 +54,22 @@ public enum Mnemonic {
     FCMP,
     FCMPU,
     LCMP,
-    CMP
+    CMP,
+    CMOVE,
+    SETCC,
+    BIT_TEST,
+    ABS,
+    SQRT,
+    VADD,
+    VSUB,
+    VMUL,
+    VDIV,
+    VAND,
+    VOR,
+    VXOR,
+    VREDUCE_ADD,
+    VREDUCE_AND,
+    VREDUCE_OR,
+    VREDUCE_XOR,
+    VEXTRACT
 }
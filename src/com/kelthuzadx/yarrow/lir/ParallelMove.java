@@ -0,0 +1,238 @@
+package com.kelthuzadx.yarrow.lir;
+
+import com.kelthuzadx.yarrow.lir.instr.LirInstr;
+import com.kelthuzadx.yarrow.lir.instr.Op1Instr;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64Kind;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.code.RegisterValue;
+import jdk.vm.ci.code.StackSlot;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.ValueKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * A set of moves that logically happen at the same time, e.g. phi moves at the end of a
+ * block or data flow moves on a control flow edge. Each destination is written at most
+ * once. Sequencing emits a move as soon as no pending move reads its destination, which
+ * needs no temporary at all. What remains are disjoint cycles:
+ * <pre>
+ *     a = b, b = c, c = a
+ * </pre>
+ * Cycle of general purpose registers is rotated by n-1 xchg, otherwise one value of cycle
+ * is saved into a temporary.
+ *
+ * @author kelthuzadx
+ */
+public class ParallelMove {
+    private static final long NO_LOCATION = Long.MIN_VALUE;
+
+    private final List<AllocatableValue> sources;
+    private final List<AllocatableValue> destinations;
+
+    public ParallelMove() {
+        this.sources = new ArrayList<>();
+        this.destinations = new ArrayList<>();
+    }
+
+    private static Register registerOf(AllocatableValue value) {
+        if (value instanceof XRegister) {
+            return ((XRegister) value).getRegister();
+        } else if (value instanceof RegisterValue) {
+            return ((RegisterValue) value).getRegister();
+        }
+        return null;
+    }
+
+    /**
+     * Virtual and physical registers never share numbers, stack slots are keyed by offset
+     */
+    private static long locationOf(AllocatableValue value) {
+        if (registerOf(value) != null) {
+            return registerOf(value).number;
+        } else if (value instanceof StackSlot) {
+            return 1L << 32 | (((StackSlot) value).getRawOffset() & 0xffffffffL);
+        }
+        return NO_LOCATION;
+    }
+
+    public static boolean isSameLocation(AllocatableValue a, AllocatableValue b) {
+        return locationOf(a) != NO_LOCATION && locationOf(a) == locationOf(b);
+    }
+
+    /**
+     * A move whose source and destination are the same location of the same kind does nothing
+     */
+    public static boolean isSelfMove(LirInstr instr) {
+        if (!(instr instanceof Op1Instr) || instr.getDebugInfo() != null ||
+                (instr.getMnemonic() != Mnemonic.MOV && instr.getMnemonic() != Mnemonic.VMOV)) {
+            return false;
+        }
+        AllocatableValue result = instr.operandResult();
+        AllocatableValue operand = ((Op1Instr) instr).operand1();
+        boolean sameKind = result.getValueKind() == null || operand.getValueKind() == null ||
+                result.getPlatformKind() == operand.getPlatformKind();
+        return isSameLocation(result, operand) && sameKind;
+    }
+
+    private static boolean isCpuRegister(AllocatableValue value) {
+        Register reg = registerOf(value);
+        return reg != null && reg.getRegisterCategory().equals(AMD64.CPU);
+    }
+
+    public static LirInstr createMove(AllocatableValue dest, AllocatableValue src) {
+        ValueKind<?> kind = src.getValueKind() != null ? src.getValueKind() : dest.getValueKind();
+        boolean isVector = kind != null && kind.getPlatformKind() instanceof AMD64Kind &&
+                ((AMD64Kind) kind.getPlatformKind()).getVectorLength() > 1;
+        return new Op1Instr(isVector ? Mnemonic.VMOV : Mnemonic.MOV, dest, src);
+    }
+
+    public void addMove(AllocatableValue src, AllocatableValue dest) {
+        if (isSameLocation(src, dest)) {
+            return;
+        }
+        sources.add(src);
+        destinations.add(dest);
+    }
+
+    public boolean isEmpty() {
+        return sources.isEmpty();
+    }
+
+    public int size() {
+        return sources.size();
+    }
+
+    /**
+     * @param temp         create a temporary that can hold given value, it's asked for at most
+     *                     once per cycle and once per stack to stack move
+     * @param allowExchange whether register cycles can be rotated by xchg, which only works
+     *                     for physical registers
+     * @return moves in an order that preserves parallel semantic
+     */
+    public List<LirInstr> sequence(UnaryOperator<AllocatableValue> temp, boolean allowExchange) {
+        int count = sources.size();
+        var moves = new ArrayList<LirInstr>();
+        var src = new ArrayList<>(sources);
+        var done = new boolean[count];
+        var readCount = new HashMap<Long, Integer>();
+        var writer = new HashMap<Long, Integer>();
+        for (int i = 0; i < count; i++) {
+            long location = locationOf(src.get(i));
+            if (location != NO_LOCATION) {
+                readCount.merge(location, 1, Integer::sum);
+            }
+            writer.put(locationOf(destinations.get(i)), i);
+        }
+        var ready = new ArrayDeque<Integer>();
+        for (int i = 0; i < count; i++) {
+            if (!readCount.containsKey(locationOf(destinations.get(i)))) {
+                ready.add(i);
+            }
+        }
+
+        int remaining = count;
+        while (remaining > 0) {
+            while (!ready.isEmpty()) {
+                int i = ready.poll();
+                AllocatableValue dest = destinations.get(i);
+                if (src.get(i) instanceof StackSlot && dest instanceof StackSlot) {
+                    AllocatableValue scratch = temp.apply(dest);
+                    moves.add(createMove(scratch, src.get(i)));
+                    moves.add(createMove(dest, scratch));
+                } else {
+                    moves.add(createMove(dest, src.get(i)));
+                }
+                done[i] = true;
+                remaining--;
+                // Source of this move can be overwritten once nobody reads it
+                long location = locationOf(src.get(i));
+                if (location != NO_LOCATION && readCount.merge(location, -1, Integer::sum) == 0) {
+                    Integer next = writer.get(location);
+                    if (next != null && !done[next]) {
+                        ready.add(next);
+                    }
+                }
+            }
+            if (remaining == 0) {
+                break;
+            }
+            // Every pending destination is still read by another pending move, they form cycles
+            int start = 0;
+            while (done[start]) {
+                start++;
+            }
+            if (allowExchange && isCpuCycle(src, start)) {
+                remaining -= rotate(moves, src, done, start);
+            } else {
+                AllocatableValue value = src.get(start);
+                AllocatableValue saved = temp.apply(value);
+                moves.add(createMove(saved, value));
+                src.set(start, saved);
+                readCount.merge(locationOf(value), -1, Integer::sum);
+                ready.add(writer.get(locationOf(value)));
+            }
+        }
+        sources.clear();
+        destinations.clear();
+        return moves;
+    }
+
+    private boolean isCpuCycle(List<AllocatableValue> src, int start) {
+        int i = start;
+        do {
+            if (!isCpuRegister(src.get(i)) || !isCpuRegister(destinations.get(i))) {
+                return false;
+            }
+            i = indexOfWriter(src.get(i));
+        } while (i != start);
+        return true;
+    }
+
+    private int indexOfWriter(AllocatableValue location) {
+        for (int i = 0; i < destinations.size(); i++) {
+            if (isSameLocation(destinations.get(i), location)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Exchange destination with source of each move in the cycle, after that destination holds
+     * its final value and source holds the old destination that is read by the next move
+     *
+     * @return number of moves in the cycle
+     */
+    private int rotate(List<LirInstr> moves, List<AllocatableValue> src, boolean[] done, int start) {
+        int resolved = 0;
+        int i = start;
+        while (!done[i]) {
+            AllocatableValue dest = destinations.get(i);
+            done[i] = true;
+            resolved++;
+            if (isSameLocation(src.get(i), dest)) {
+                break;
+            }
+            moves.add(new Op1Instr(Mnemonic.XCHG, dest, src.get(i)));
+            int reader = -1;
+            for (int k = 0; k < src.size(); k++) {
+                if (!done[k] && isSameLocation(src.get(k), dest)) {
+                    reader = k;
+                }
+            }
+            if (reader == -1) {
+                break;
+            }
+            src.set(reader, src.get(i));
+            i = reader;
+        }
+        return resolved;
+    }
+}
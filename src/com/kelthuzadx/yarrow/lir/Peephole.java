@@ -0,0 +1,348 @@
+package com.kelthuzadx.yarrow.lir;
+
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.hir.Cond;
+import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
+import com.kelthuzadx.yarrow.lir.instr.BranchInstr;
+import com.kelthuzadx.yarrow.lir.instr.LirInstr;
+import com.kelthuzadx.yarrow.lir.instr.Op0Instr;
+import com.kelthuzadx.yarrow.lir.instr.Op1Instr;
+import com.kelthuzadx.yarrow.lir.instr.Op2Instr;
+import com.kelthuzadx.yarrow.lir.operand.ConstValue;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.regalloc.InstrStateVisitor;
+import com.kelthuzadx.yarrow.optimize.Phase;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaConstant;
+
+import java.util.*;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+
+/**
+ * Local rewrites of allocated LIR, each of them only looks at neighbouring operations:
+ * <pre>
+ *     mov rax, rax                     ==>  (removed)
+ *     mov rcx, 0x10; add rax,rax,rcx   ==>  add rax,rax,0x10     if rcx is dead after add
+ *     membar StoreLoad; membar full    ==>  membar full
+ *     jmp B2, B2: jmp B3               ==>  jmp B3
+ *     B1: ...; jmp B2, B2: ...         ==>  B1 falls through into B2
+ * </pre>
+ * Register liveness is computed again over physical registers, allocator's liveness is of
+ * virtual registers and is stale after moves are inserted.
+ *
+ * @author kelthuzadx
+ */
+public class Peephole implements Phase {
+    // Operations that accept a 32 bits sign extended immediate as right operand
+    private static final EnumSet<Mnemonic> IMMEDIATE_OPERATIONS = EnumSet.of(Mnemonic.ADD, Mnemonic.SUB,
+            Mnemonic.MUL, Mnemonic.AND, Mnemonic.OR, Mnemonic.XOR, Mnemonic.CMP);
+    private static final EnumSet<Mnemonic> BARRIERS = EnumSet.of(Mnemonic.MEMBAR, Mnemonic.MEMBAR_LOAD_LOAD,
+            Mnemonic.MEMBAR_LOAD_STORE, Mnemonic.MEMBAR_STORE_LOAD, Mnemonic.MEMBAR_STORE_STORE,
+            Mnemonic.MEMBAR_ACQUIRE, Mnemonic.MEMBAR_RELEASE);
+
+    private final Lir lir;
+    private final List<BlockStartInstr> blocks;
+    private final IdentityHashMap<BlockStartInstr, Integer> blockIndex;
+    private final InstrStateVisitor visitor;
+    // Live physical registers at block entry, indexed by block index then register number
+    private BitSet[] liveIn;
+    private int selfMoveCount;
+    private int foldedConstantCount;
+    private int mergedBarrierCount;
+    private int jumpChainCount;
+    private int fallThroughCount;
+
+    public Peephole(Lir lir) {
+        this.lir = lir;
+        this.blocks = lir.getBlocks();
+        this.blockIndex = new IdentityHashMap<>();
+        this.visitor = new InstrStateVisitor();
+        for (int i = 0; i < blocks.size(); i++) {
+            blockIndex.put(blocks.get(i), i);
+        }
+    }
+
+    public Lir getLir() {
+        return lir;
+    }
+
+    @Override
+    public Peephole build() {
+        if (!YarrowProperties.Optimize.Peephole) {
+            return this;
+        }
+        removeSelfMoves();
+        mergeBarriers();
+        computeLiveness();
+        foldConstants();
+        collapseJumpChains();
+        removeFallThroughJumps();
+        lir.rebuildIndex();
+        return this;
+    }
+
+    private void removeSelfMoves() {
+        for (BlockStartInstr block : blocks) {
+            block.getLirInstrList().removeIf(instr -> {
+                if (ParallelMove.isSelfMove(instr)) {
+                    selfMoveCount++;
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private static boolean isBarrier(LirInstr instr) {
+        return instr instanceof Op0Instr && BARRIERS.contains(instr.getMnemonic());
+    }
+
+    /**
+     * Full barrier orders everything, it absorbs any barrier next to it. Otherwise only
+     * identical barriers are merged since their union may not be expressible
+     */
+    private void mergeBarriers() {
+        for (BlockStartInstr block : blocks) {
+            var instrList = block.getLirInstrList();
+            for (int i = instrList.size() - 1; i > 0; i--) {
+                LirInstr cur = instrList.get(i);
+                LirInstr prev = instrList.get(i - 1);
+                if (!isBarrier(cur) || !isBarrier(prev)) {
+                    continue;
+                }
+                if (prev.getMnemonic() == cur.getMnemonic() || cur.getMnemonic() == Mnemonic.MEMBAR) {
+                    instrList.remove(i - 1);
+                    mergedBarrierCount++;
+                } else if (prev.getMnemonic() == Mnemonic.MEMBAR) {
+                    instrList.remove(i);
+                    mergedBarrierCount++;
+                }
+            }
+        }
+    }
+
+    private static int registerNumber(AllocatableValue value) {
+        if (value instanceof XRegister && !((XRegister) value).isVirtualRegister()) {
+            return ((XRegister) value).getRegister().number;
+        }
+        return -1;
+    }
+
+    /**
+     * Update live registers from after instr to before it
+     */
+    private void transfer(BitSet live, LirInstr instr) {
+        visitor.reset();
+        visitor.collect(instr);
+        for (XRegister reg : visitor.getOutput()) {
+            if (registerNumber(reg) != -1) {
+                live.clear(registerNumber(reg));
+            }
+        }
+        for (XRegister reg : visitor.getTemp()) {
+            if (registerNumber(reg) != -1) {
+                live.clear(registerNumber(reg));
+            }
+        }
+        for (XRegister reg : visitor.getInput()) {
+            if (registerNumber(reg) != -1) {
+                live.set(registerNumber(reg));
+            }
+        }
+        for (XRegister reg : visitor.getState()) {
+            if (registerNumber(reg) != -1) {
+                live.set(registerNumber(reg));
+            }
+        }
+    }
+
+    /**
+     * How many times instr reads reg, including reads by its debug info and slow path
+     */
+    private int readCount(LirInstr instr, int reg) {
+        visitor.reset();
+        visitor.collect(instr);
+        int count = 0;
+        for (XRegister r : visitor.getInput()) {
+            count += registerNumber(r) == reg ? 1 : 0;
+        }
+        for (XRegister r : visitor.getTemp()) {
+            count += registerNumber(r) == reg ? 1 : 0;
+        }
+        for (XRegister r : visitor.getState()) {
+            count += registerNumber(r) == reg ? 1 : 0;
+        }
+        return count;
+    }
+
+    private BitSet liveOutOf(int index) {
+        BitSet live = new BitSet();
+        for (BlockStartInstr succ : blocks.get(index).getBlockEnd().getSuccessor()) {
+            Integer succIndex = blockIndex.get(succ);
+            if (succIndex != null) {
+                live.or(liveIn[succIndex]);
+            }
+        }
+        return live;
+    }
+
+    private void computeLiveness() {
+        liveIn = new BitSet[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            liveIn[i] = new BitSet();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                BitSet live = liveOutOf(i);
+                var instrList = blocks.get(i).getLirInstrList();
+                for (int k = instrList.size() - 1; k >= 0; k--) {
+                    transfer(live, instrList.get(k));
+                }
+                if (!live.equals(liveIn[i])) {
+                    liveIn[i] = live;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isImmediate(AllocatableValue value) {
+        if (!(value instanceof ConstValue)) {
+            return false;
+        }
+        JavaConstant constant = ((ConstValue) value).getConstant();
+        return constant.getJavaKind().isNumericInteger() && constant.asLong() == (int) constant.asLong();
+    }
+
+    /**
+     * Constants are loaded into registers when operations are generated, walk each block
+     * backwards so that whether the register is still needed is known at its only reader
+     */
+    private void foldConstants() {
+        for (int i = 0; i < blocks.size(); i++) {
+            BitSet live = liveOutOf(i);
+            var instrList = blocks.get(i).getLirInstrList();
+            for (int k = instrList.size() - 1; k >= 0; k--) {
+                LirInstr instr = instrList.get(k);
+                if (k > 0) {
+                    LirInstr folded = foldConstant(instrList.get(k - 1), instr, live);
+                    if (folded != null) {
+                        folded.resetId(instr.getId());
+                        folded.setDebugInfo(instr.getDebugInfo());
+                        instrList.remove(k - 1);
+                        k--;
+                        instrList.set(k, folded);
+                        instr = folded;
+                        foldedConstantCount++;
+                    }
+                }
+                transfer(live, instr);
+            }
+        }
+    }
+
+    private LirInstr foldConstant(LirInstr prev, LirInstr instr, BitSet liveAfter) {
+        if (!(prev instanceof Op1Instr) || prev.getMnemonic() != Mnemonic.MOV || prev.getDebugInfo() != null) {
+            return null;
+        }
+        AllocatableValue constant = ((Op1Instr) prev).operand1();
+        int reg = registerNumber(prev.operandResult());
+        if (!isImmediate(constant) || reg == -1 || liveAfter.get(reg) || readCount(instr, reg) != 1) {
+            return null;
+        }
+        if (instr instanceof Op2Instr && IMMEDIATE_OPERATIONS.contains(instr.getMnemonic())) {
+            var op = (Op2Instr) instr;
+            if (registerNumber(op.operand2()) == reg) {
+                return new Op2Instr(op.getMnemonic(), op.getCond(), op.operandResult(), op.operand1(), constant);
+            }
+        } else if (instr.getClass() == Op1Instr.class && instr.getMnemonic() == Mnemonic.MOV) {
+            if (registerNumber(((Op1Instr) instr).operand1()) == reg) {
+                return new Op1Instr(Mnemonic.MOV, instr.operandResult(), constant);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isJump(LirInstr instr) {
+        if (!(instr instanceof BranchInstr) || instr.getMnemonic() != Mnemonic.BRANCH) {
+            return false;
+        }
+        var branch = (BranchInstr) instr;
+        return branch.getCondition() == Cond.Always && branch.getBlock() != null && branch.getStub() == null;
+    }
+
+    /**
+     * Follow blocks that do nothing but jump, a cycle of such blocks stops at where it's closed
+     */
+    private static BlockStartInstr finalTarget(BlockStartInstr target) {
+        Set<BlockStartInstr> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (visited.add(target)) {
+            var instrList = target.getLirInstrList();
+            if (instrList.size() != 1 || !isJump(instrList.get(0))) {
+                break;
+            }
+            target = ((BranchInstr) instrList.get(0)).getBlock();
+        }
+        return target;
+    }
+
+    private void collapseJumpChains() {
+        for (BlockStartInstr block : blocks) {
+            var instrList = block.getLirInstrList();
+            for (int k = 0; k < instrList.size(); k++) {
+                if (!(instrList.get(k) instanceof BranchInstr) || instrList.get(k).getMnemonic() != Mnemonic.BRANCH) {
+                    continue;
+                }
+                var branch = (BranchInstr) instrList.get(k);
+                if (branch.getBlock() == null || branch.getStub() != null) {
+                    continue;
+                }
+                BlockStartInstr target = finalTarget(branch.getBlock());
+                if (target != branch.getBlock()) {
+                    var jump = new BranchInstr(branch.getCondition(), branch.getType(), target);
+                    jump.resetId(branch.getId());
+                    jump.setDebugInfo(branch.getDebugInfo());
+                    instrList.set(k, jump);
+                    jumpChainCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks are emitted in LIR order, jump to the next block is not needed
+     */
+    private void removeFallThroughJumps() {
+        for (int i = 0; i < blocks.size() - 1; i++) {
+            var instrList = blocks.get(i).getLirInstrList();
+            if (instrList.isEmpty()) {
+                continue;
+            }
+            LirInstr last = instrList.get(instrList.size() - 1);
+            if (isJump(last) && ((BranchInstr) last).getBlock() == blocks.get(i + 1)) {
+                instrList.remove(instrList.size() - 1);
+                fallThroughCount++;
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "Peephole";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Removed {} self moves, folded {} constants, merged {} barriers, " +
+                            "shortened {} jump chains, removed {} fall through jumps",
+                    selfMoveCount, foldedConstantCount, mergedBarrierCount, jumpChainCount, fallThroughCount);
+            lir.printLir();
+        }
+    }
+}
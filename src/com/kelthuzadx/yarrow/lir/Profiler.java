@@ -0,0 +1,213 @@
+package com.kelthuzadx.yarrow.lir;
+
+import com.kelthuzadx.yarrow.core.YarrowConfigAccess;
+import com.kelthuzadx.yarrow.core.YarrowRuntime;
+import com.kelthuzadx.yarrow.hir.Cond;
+import com.kelthuzadx.yarrow.hir.instr.BlockEndInstr;
+import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
+import com.kelthuzadx.yarrow.hir.instr.IfInstr;
+import com.kelthuzadx.yarrow.lir.instr.LabelInstr;
+import com.kelthuzadx.yarrow.lir.operand.Address;
+import com.kelthuzadx.yarrow.lir.operand.ConstValue;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.stub.CounterOverflowStub;
+import jdk.vm.ci.code.DebugInfo;
+import jdk.vm.ci.hotspot.HotSpotResolvedJavaMethod;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaKind;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Tier.ProfileCompiledCode;
+
+/**
+ * Emit code that feeds profiles as interpreter does, so that yarrow can serve as a profiling
+ * tier for a later optimizing compiler:
+ * <ul>
+ *     <li>invocation and backedge counters in MethodCounters, runtime is notified when they
+ *     overflow notification mask</li>
+ *     <li>taken and not taken counts of branches in MethodData</li>
+ *     <li>call counts and receiver types of virtual calls in MethodData</li>
+ * </ul>
+ * Profiles of a bytecode are skipped if method has no MethodData or the bytecode has no
+ * profile data in it.
+ *
+ * @author kelthuzadx
+ */
+public class Profiler {
+    // Cells of ProfileData, CounterData::count is shared by ReceiverTypeData
+    private static final int COUNT_CELL = 0;
+    private static final int TAKEN_CELL = 0;
+    private static final int NOT_TAKEN_CELL = 2;
+    // ReceiverTypeData rows of (receiver klass, count) follow its count
+    private static final int FIRST_RECEIVER_CELL = 1;
+    private static final int RECEIVER_ROW_CELLS = 2;
+    private static final int COUNTER_INCREMENT = 1;
+
+    private final HotSpotResolvedJavaMethod method;
+    private final LirGenerator gen;
+    private final long methodCounters;
+    private final long methodData;
+
+    public Profiler(HotSpotResolvedJavaMethod method, LirGenerator gen) {
+        this.method = method;
+        this.gen = gen;
+        this.methodCounters = ProfileCompiledCode ? YarrowRuntime.getMethodCounters(method) : 0L;
+        this.methodData = ProfileCompiledCode ? YarrowRuntime.getMethodData(method) : 0L;
+    }
+
+    public boolean isEnabled() {
+        return methodCounters != 0L;
+    }
+
+    public void emitInvocationCounter(DebugInfo info) {
+        var access = YarrowConfigAccess.access();
+        AllocatableValue counters = loadPointer(methodCounters);
+        var stub = new CounterOverflowStub(counters);
+        stub.setDebugInfo(info);
+        emitCounterIncrement(new Address(counters, access.invocationCounterOffset, JavaKind.Int),
+                new ConstValue(JavaConstant.forInt(access.invocationCounterIncrement)), access.getInvokeNotifyMask(), stub);
+    }
+
+    /**
+     * Count a backward branch, e.g. goto or switch that jumps back, or the edge of a conditional
+     * branch that goes back
+     */
+    public void emitBackedgeCounter(BlockEndInstr instr, DebugInfo info) {
+        var access = YarrowConfigAccess.access();
+        int bci = instr.getVmState().getBci();
+        int targetBci = -1;
+        for (BlockStartInstr succ : instr.getSuccessor()) {
+            if (succ.getStartBci() <= bci) {
+                targetBci = succ.getStartBci();
+                break;
+            }
+        }
+        AllocatableValue counters = loadPointer(methodCounters);
+        var stub = new CounterOverflowStub(counters, bci, targetBci);
+        stub.setDebugInfo(info);
+        emitCounterIncrement(new Address(counters, access.backedgeCounterOffset, JavaKind.Int),
+                new ConstValue(JavaConstant.forInt(access.invocationCounterIncrement)), access.getBackedgeNotifyMask(), stub);
+    }
+
+    /**
+     * Count taken and not taken edges of a branch, and count backedge if the branch goes back.
+     * Counters are selected by cmove right after comparison because incrementing them kills
+     * flags, the other edge branches around backedge counter after comparing again. Caller
+     * needs to compare again before branching as well.
+     */
+    public void emitIfProfile(IfInstr instr, AllocatableValue left, AllocatableValue right, DebugInfo info) {
+        int bci = instr.getVmState().getBci();
+        int dataOffset = getDataOffset(bci);
+        if (dataOffset != -1) {
+            gen.emitCmp(left, right, instr.getCond());
+            XRegister cellOffset = new XRegister(JavaKind.Long);
+            gen.emitCmove(instr.getCond(), cellOffset, constLong(cellOffset(dataOffset, TAKEN_CELL)),
+                    constLong(cellOffset(dataOffset, NOT_TAKEN_CELL)));
+            emitIncrement(new Address(loadPointer(methodData), cellOffset, 1, 0, JavaKind.Long));
+        }
+        if (instr.isBackwardBranch()) {
+            // Only the edge that goes back counts as a backedge
+            boolean backOnTrue = instr.getSuccessor().get(0).getStartBci() <= bci;
+            Cond forward = backOnTrue ? instr.getCond().negate() : instr.getCond();
+            var skip = new LabelInstr();
+            gen.emitCmp(left, right, forward);
+            gen.emitBranch(forward, skip);
+            emitBackedgeCounter(instr, info);
+            gen.emitLabel(skip);
+        }
+    }
+
+    /**
+     * Count a call site, virtual call site also records receiver klass into one of rows of
+     * ReceiverTypeData. Receivers that do not fit in rows bump the polymorphic count instead.
+     *
+     * @param receiverKlass klass of receiver, or null if the call is statically bound
+     */
+    public void emitCallProfile(int bci, AllocatableValue receiverKlass) {
+        int dataOffset = getDataOffset(bci);
+        if (dataOffset == -1) {
+            return;
+        }
+        AllocatableValue mdo = loadPointer(methodData);
+        if (receiverKlass == null) {
+            emitIncrement(new Address(mdo, cellOffset(dataOffset, COUNT_CELL), JavaKind.Long));
+            return;
+        }
+        int width = YarrowConfigAccess.access().typeProfileWidth;
+        var done = new LabelInstr();
+        // Receiver has been seen before
+        for (int i = 0; i < width; i++) {
+            var next = new LabelInstr();
+            var row = new XRegister(JavaKind.Long);
+            gen.emitMov(row, receiverAddress(mdo, dataOffset, i));
+            gen.emitCmp(row, receiverKlass, Cond.NE);
+            gen.emitBranch(Cond.NE, next);
+            emitIncrement(receiverCountAddress(mdo, dataOffset, i));
+            gen.emitBranch(Cond.Always, done);
+            gen.emitLabel(next);
+        }
+        // Take the first empty row
+        for (int i = 0; i < width; i++) {
+            var next = new LabelInstr();
+            var row = new XRegister(JavaKind.Long);
+            gen.emitMov(row, receiverAddress(mdo, dataOffset, i));
+            gen.emitCmp(row, 0, Cond.NE);
+            gen.emitBranch(Cond.NE, next);
+            gen.emitMov(receiverAddress(mdo, dataOffset, i), receiverKlass);
+            gen.emitMov(receiverCountAddress(mdo, dataOffset, i), constLong(COUNTER_INCREMENT));
+            gen.emitBranch(Cond.Always, done);
+            gen.emitLabel(next);
+        }
+        emitIncrement(new Address(mdo, cellOffset(dataOffset, COUNT_CELL), JavaKind.Long));
+        gen.emitLabel(done);
+    }
+
+    private void emitCounterIncrement(Address counter, AllocatableValue step, int mask, CounterOverflowStub stub) {
+        var count = new XRegister(JavaKind.Int);
+        gen.emitMov(count, counter);
+        gen.emitAdd(count, count, step);
+        gen.emitMov(counter, count);
+        var masked = new XRegister(JavaKind.Int);
+        gen.emitAnd(masked, count, new ConstValue(JavaConstant.forInt(mask)));
+        gen.emitCmp(masked, 0, Cond.EQ);
+        gen.emitBranch(Cond.EQ, stub);
+        gen.emitLabel(stub.getContinuation());
+    }
+
+    private void emitIncrement(Address cell) {
+        var value = new XRegister(JavaKind.Long);
+        gen.emitMov(value, cell);
+        gen.emitAdd(value, value, constLong(COUNTER_INCREMENT));
+        gen.emitMov(cell, value);
+    }
+
+    private int getDataOffset(int bci) {
+        if (methodData == 0L || bci < 0) {
+            return -1;
+        }
+        return YarrowRuntime.getProfileDataOffset(method, bci);
+    }
+
+    private static int cellOffset(int dataOffset, int cell) {
+        var access = YarrowConfigAccess.access();
+        return dataOffset + access.dataLayoutCellsOffset + cell * access.dataLayoutCellSize;
+    }
+
+    private static Address receiverAddress(AllocatableValue mdo, int dataOffset, int row) {
+        return new Address(mdo, cellOffset(dataOffset, FIRST_RECEIVER_CELL + row * RECEIVER_ROW_CELLS), JavaKind.Long);
+    }
+
+    private static Address receiverCountAddress(AllocatableValue mdo, int dataOffset, int row) {
+        return new Address(mdo, cellOffset(dataOffset, FIRST_RECEIVER_CELL + row * RECEIVER_ROW_CELLS + 1), JavaKind.Long);
+    }
+
+    private AllocatableValue loadPointer(long pointer) {
+        var reg = new XRegister(JavaKind.Long);
+        gen.emitMov(reg, constLong(pointer));
+        return reg;
+    }
+
+    private static ConstValue constLong(long value) {
+        return new ConstValue(JavaConstant.forLong(value));
+    }
+}
@@ -0,0 +1,138 @@
+package com.kelthuzadx.yarrow.lir;
+
+import com.kelthuzadx.yarrow.hir.Cond;
+import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
+import com.kelthuzadx.yarrow.lir.instr.LabelInstr;
+import com.kelthuzadx.yarrow.lir.operand.ConstValue;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaKind;
+
+import java.util.*;
+
+/**
+ * Lower tableswitch and lookupswitch according to the density and the number of keys:
+ * <ul>
+ *     <li>jump table: keys are dense, rebase index, check bounds once and jump indirectly</li>
+ *     <li>bit test: keys fall in a range of 64 and go to a few targets, test index against
+ *     a bit mask of each target</li>
+ *     <li>binary search: sparse keys, O(log n) comparisons</li>
+ * </ul>
+ *
+ * @author kelthuzadx
+ */
+public class SwitchLowering {
+    // Fewer keys than this are simply compared one by one
+    private static final int LINEAR_SEARCH_SIZE = 4;
+    // A jump table is used if at least 1/MAX_JUMP_TABLE_HOLES of its entries are real keys
+    private static final int MAX_JUMP_TABLE_HOLES = 3;
+    private static final int MAX_BIT_TEST_TARGETS = 3;
+
+    private final LirGenerator gen;
+    private final AllocatableValue index;
+    // Sorted keys and their targets
+    private final int[] keys;
+    private final BlockStartInstr[] targets;
+    private final BlockStartInstr defaultTarget;
+
+    public SwitchLowering(LirGenerator gen, AllocatableValue index, int[] keys, List<BlockStartInstr> targets,
+                          BlockStartInstr defaultTarget) {
+        this.gen = gen;
+        this.index = index;
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> keys[i]));
+        this.keys = new int[keys.length];
+        this.targets = new BlockStartInstr[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            this.keys[i] = keys[order[i]];
+            this.targets[i] = targets.get(order[i]);
+        }
+        this.defaultTarget = defaultTarget;
+    }
+
+    public void lower() {
+        int count = keys.length;
+        if (count == 0) {
+            gen.emitJmp(defaultTarget);
+            return;
+        }
+        long range = (long) keys[count - 1] - keys[0] + 1;
+        if (count >= LINEAR_SEARCH_SIZE && range <= (long) count * MAX_JUMP_TABLE_HOLES) {
+            emitJumpTable((int) range);
+        } else if (count >= LINEAR_SEARCH_SIZE && range <= Long.SIZE && distinctTargets() <= MAX_BIT_TEST_TARGETS) {
+            emitBitTest((int) range);
+        } else {
+            emitBinarySearch(0, count - 1);
+        }
+    }
+
+    private int distinctTargets() {
+        Set<BlockStartInstr> set = new HashSet<>(Arrays.asList(targets));
+        set.remove(defaultTarget);
+        return set.size();
+    }
+
+    /**
+     * Compute index-low into a new register and leave to default target if it is out of
+     * [0, range), a single unsigned comparison covers both bounds
+     */
+    private AllocatableValue emitRebase(int range) {
+        var rebased = new XRegister(JavaKind.Int);
+        gen.emitMov(rebased, index);
+        if (keys[0] != 0) {
+            gen.emitSub(rebased, rebased, new ConstValue(JavaConstant.forInt(keys[0])));
+        }
+        gen.emitCmp(rebased, range - 1, Cond.UGT);
+        gen.emitBranch(Cond.UGT, JavaKind.Int, defaultTarget);
+        return rebased;
+    }
+
+    private void emitJumpTable(int range) {
+        var rebased = emitRebase(range);
+        List<BlockStartInstr> table = new ArrayList<>(Collections.nCopies(range, defaultTarget));
+        for (int i = 0; i < keys.length; i++) {
+            table.set(keys[i] - keys[0], targets[i]);
+        }
+        gen.emitTableJump(rebased, table);
+    }
+
+    private void emitBitTest(int range) {
+        var rebased = emitRebase(range);
+        Map<BlockStartInstr, Long> masks = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (targets[i] != defaultTarget) {
+                masks.merge(targets[i], 1L << (keys[i] - keys[0]), (a, b) -> a | b);
+            }
+        }
+        for (var entry : masks.entrySet()) {
+            var bits = new XRegister(JavaKind.Long);
+            gen.emitMov(bits, new ConstValue(JavaConstant.forLong(entry.getValue())));
+            gen.emitBitTest(bits, rebased);
+            gen.emitBranch(Cond.ULT, JavaKind.Long, entry.getKey());
+        }
+        gen.emitJmp(defaultTarget);
+    }
+
+    private void emitBinarySearch(int low, int high) {
+        if (high - low + 1 < LINEAR_SEARCH_SIZE) {
+            for (int i = low; i <= high; i++) {
+                gen.emitCmp(index, keys[i], Cond.EQ);
+                gen.emitBranch(Cond.EQ, JavaKind.Int, targets[i]);
+            }
+            gen.emitJmp(defaultTarget);
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        var upper = new LabelInstr();
+        gen.emitCmp(index, keys[mid], Cond.GT);
+        gen.emitBranch(Cond.GT, upper);
+        gen.emitBranch(Cond.EQ, JavaKind.Int, targets[mid]);
+        emitBinarySearch(low, mid - 1);
+        gen.emitLabel(upper);
+        emitBinarySearch(mid + 1, high);
+    }
+}
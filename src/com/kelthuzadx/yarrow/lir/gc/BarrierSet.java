@@ -0,0 +1,68 @@
+package com.kelthuzadx.yarrow.lir.gc;
+
+import com.kelthuzadx.yarrow.core.YarrowConfigAccess;
+import com.kelthuzadx.yarrow.lir.LirGenerator;
+import com.kelthuzadx.yarrow.lir.operand.Address;
+import com.kelthuzadx.yarrow.util.CompilerErrors;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * Barrier set decides what GC barriers surround heap accesses, subclasses emit barriers of
+ * their collectors. Base barrier set needs no barrier at all, e.g. Epsilon GC.
+ *
+ * @author kelthuzadx
+ */
+public class BarrierSet {
+    protected final LirGenerator gen;
+
+    protected BarrierSet(LirGenerator gen) {
+        this.gen = gen;
+    }
+
+    /**
+     * Pick barrier set of the collector VM is running with
+     */
+    public static BarrierSet create(LirGenerator gen) {
+        var access = YarrowConfigAccess.access();
+        if (access.useG1GC) {
+            return new G1BarrierSet(gen);
+        } else if (access.useSerialGC || access.useParallelGC) {
+            return new CardTableBarrierSet(gen);
+        } else if (access.useEpsilonGC) {
+            return new BarrierSet(gen);
+        }
+        CompilerErrors.bailOut("GC barriers of current collector are not supported");
+        return null;
+    }
+
+    /**
+     * Store value into heap, reference store is surrounded by pre and post barriers
+     *
+     * @param initializing store into an object that is freshly allocated with no safepoint since
+     * @param nullValue    value is known to be null
+     */
+    public void emitStore(Address address, AllocatableValue value, JavaKind type, boolean initializing, boolean nullValue) {
+        boolean needsBarrier = type == JavaKind.Object && !initializing;
+        if (needsBarrier) {
+            emitPreBarrier(address);
+        }
+        gen.emitMov(address, value);
+        // Storing null never creates a reference that GC needs to track
+        if (needsBarrier && !nullValue) {
+            emitPostBarrier(address, value);
+        }
+    }
+
+    /**
+     * Reference.referent is loaded, GC must learn about it if referent is kept alive this way
+     */
+    public void emitReferentLoadBarrier(AllocatableValue referent) {
+    }
+
+    protected void emitPreBarrier(Address address) {
+    }
+
+    protected void emitPostBarrier(Address address, AllocatableValue newValue) {
+    }
+}
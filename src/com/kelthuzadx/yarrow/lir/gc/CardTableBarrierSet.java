@@ -0,0 +1,44 @@
+package com.kelthuzadx.yarrow.lir.gc;
+
+import com.kelthuzadx.yarrow.core.YarrowConfigAccess;
+import com.kelthuzadx.yarrow.lir.LirGenerator;
+import com.kelthuzadx.yarrow.lir.operand.Address;
+import com.kelthuzadx.yarrow.lir.operand.ConstValue;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * Serial and Parallel GC remember old-to-young references by dirtying the card of updated
+ * address after reference store:
+ * <pre>
+ *     lea  t, address
+ *     shr  t, card_shift
+ *     mov  byte [card_table + t], dirty
+ * </pre>
+ *
+ * @author kelthuzadx
+ */
+public class CardTableBarrierSet extends BarrierSet {
+    public CardTableBarrierSet(LirGenerator gen) {
+        super(gen);
+    }
+
+    @Override
+    protected void emitPostBarrier(Address address, AllocatableValue newValue) {
+        var access = YarrowConfigAccess.access();
+        AllocatableValue card = emitCardAddress(gen, address);
+        gen.emitMov(card, new ConstValue(JavaConstant.forByte(access.dirtyCardValue)));
+    }
+
+    static Address emitCardAddress(LirGenerator gen, Address address) {
+        var access = YarrowConfigAccess.access();
+        var index = new XRegister(JavaKind.Long);
+        gen.emitLea(index, address);
+        gen.emitUshr(index, index, new ConstValue(JavaConstant.forInt(access.cardTableShift)));
+        var cardTable = new XRegister(JavaKind.Long);
+        gen.emitMov(cardTable, new ConstValue(JavaConstant.forLong(access.cardTableAddress)));
+        return new Address(cardTable, index, JavaKind.Byte);
+    }
+}
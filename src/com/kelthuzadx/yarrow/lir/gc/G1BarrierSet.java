@@ -0,0 +1,75 @@
+package com.kelthuzadx.yarrow.lir.gc;
+
+import com.kelthuzadx.yarrow.core.YarrowConfigAccess;
+import com.kelthuzadx.yarrow.hir.Cond;
+import com.kelthuzadx.yarrow.lir.LirGenerator;
+import com.kelthuzadx.yarrow.lir.instr.LabelInstr;
+import com.kelthuzadx.yarrow.lir.operand.Address;
+import com.kelthuzadx.yarrow.lir.operand.ConstValue;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.stub.G1PostBarrierStub;
+import com.kelthuzadx.yarrow.lir.stub.G1PreBarrierStub;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * G1 needs a SATB pre-barrier that records overwritten value while concurrent marking is
+ * active, and a post-barrier that dirties card of a cross-region reference store. Fast paths
+ * are inline, slow paths are stubs:
+ * <pre>
+ *     cmp  byte [thread + satb_active], 0       xor  t, address, new_value
+ *     jne  pre_barrier_stub                     shr  t, region_shift
+ *                                               je   done
+ *                                               cmp  new_value, null
+ *                                               je   done
+ *                                               jmp  post_barrier_stub
+ * </pre>
+ *
+ * @author kelthuzadx
+ */
+public class G1BarrierSet extends BarrierSet {
+    public G1BarrierSet(LirGenerator gen) {
+        super(gen);
+    }
+
+    @Override
+    public void emitReferentLoadBarrier(AllocatableValue referent) {
+        // Referent becomes strongly reachable, marking must see it even if the Reference is cleared later
+        emitMarkingActiveCheck(new G1PreBarrierStub(AllocatableValue.ILLEGAL, referent));
+    }
+
+    @Override
+    protected void emitPreBarrier(Address address) {
+        emitMarkingActiveCheck(new G1PreBarrierStub(address, AllocatableValue.ILLEGAL));
+    }
+
+    @Override
+    protected void emitPostBarrier(Address address, AllocatableValue newValue) {
+        var access = YarrowConfigAccess.access();
+        var done = new LabelInstr();
+        var fieldAddress = new XRegister(JavaKind.Long);
+        gen.emitLea(fieldAddress, address);
+        var xor = new XRegister(JavaKind.Long);
+        gen.emitXor(xor, fieldAddress, newValue);
+        gen.emitUshr(xor, xor, new ConstValue(JavaConstant.forInt(access.logOfHRGrainBytes)));
+        gen.emitCmp(xor, 0, Cond.EQ);
+        gen.emitBranch(Cond.EQ, done);
+        gen.emitCmp(newValue, new ConstValue(JavaConstant.NULL_POINTER), Cond.EQ);
+        gen.emitBranch(Cond.EQ, done);
+        var stub = new G1PostBarrierStub(CardTableBarrierSet.emitCardAddress(gen, address));
+        gen.emitJmp(stub);
+        gen.emitLabel(stub.getContinuation());
+        gen.emitLabel(done);
+    }
+
+    private void emitMarkingActiveCheck(G1PreBarrierStub stub) {
+        var access = YarrowConfigAccess.access();
+        var active = new XRegister(JavaKind.Int);
+        gen.emitMov(active, new Address(new XRegister(AMD64.r15), access.g1SatbQueueActiveOffset, JavaKind.Byte));
+        gen.emitCmp(active, 0, Cond.NE);
+        gen.emitBranch(Cond.NE, stub);
+        gen.emitLabel(stub.getContinuation());
+    }
+}
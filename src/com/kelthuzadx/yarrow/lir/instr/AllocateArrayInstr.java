@@ -6,14 +6,16 @@ import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.meta.AllocatableValue;
 import jdk.vm.ci.meta.JavaKind;
 
+import java.util.function.UnaryOperator;
+
 public class AllocateArrayInstr extends LirInstr {
     private final NewArrayStub stub;
-    private final AllocatableValue klassReg;
-    private final AllocatableValue length;
-    private final AllocatableValue temp1;
-    private final AllocatableValue temp2;
-    private final AllocatableValue temp3;
-    private final AllocatableValue temp4;
+    private AllocatableValue klassReg;
+    private AllocatableValue length;
+    private AllocatableValue temp1;
+    private AllocatableValue temp2;
+    private AllocatableValue temp3;
+    private AllocatableValue temp4;
     private final JavaKind elementType;
 
     public AllocateArrayInstr(NewArrayStub stub, AllocatableValue klassReg, AllocatableValue dest, AllocatableValue length, AllocatableValue temp1, AllocatableValue temp2, AllocatableValue temp3, AllocatableValue temp4, JavaKind elementType) {
@@ -28,6 +30,10 @@ public class AllocateArrayInstr extends LirInstr {
         this.elementType = elementType;
     }
 
+    public NewArrayStub getStub() {
+        return stub;
+    }
+
     public AllocatableValue getKlassReg() {
         return klassReg;
     }
@@ -52,6 +58,18 @@ public class AllocateArrayInstr extends LirInstr {
         return temp4;
     }
 
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        klassReg = proc.apply(klassReg);
+        length = proc.apply(length);
+        temp1 = proc.apply(temp1);
+        temp2 = proc.apply(temp2);
+        temp3 = proc.apply(temp3);
+        temp4 = proc.apply(temp4);
+        stub.forEachOperand(proc);
+    }
+
     @Override
     public String toString() {
         return Logger.format("i{}: alloc_array {}*{}", super.id, elementType.getJavaName(), stringify(length));
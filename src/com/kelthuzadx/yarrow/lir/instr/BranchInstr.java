@@ -8,12 +8,15 @@ import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.meta.AllocatableValue;
 import jdk.vm.ci.meta.JavaKind;
 
+import java.util.function.UnaryOperator;
+
 
 public class BranchInstr extends Op0Instr {
     private final Cond condition;
     private final JavaKind type;
     private final RuntimeStub stub;
     private final BlockStartInstr block;
+    private final LabelInstr label;
 
     public BranchInstr(Mnemonic mnemonic, AllocatableValue result, Cond condition, JavaKind type, RuntimeStub stub, BlockStartInstr block) {
         super(mnemonic, result);
@@ -21,6 +24,16 @@ public class BranchInstr extends Op0Instr {
         this.type = type;
         this.stub = stub;
         this.block = block;
+        this.label = null;
+    }
+
+    public BranchInstr(Cond condition, LabelInstr label) {
+        super(Mnemonic.BRANCH, AllocatableValue.ILLEGAL);
+        this.condition = condition;
+        this.type = null;
+        this.stub = null;
+        this.block = null;
+        this.label = label;
     }
 
     public BranchInstr(Cond condition, JavaKind type, BlockStartInstr block) {
@@ -35,14 +48,37 @@ public class BranchInstr extends Op0Instr {
         this(Mnemonic.BRANCH, AllocatableValue.ILLEGAL, condition, null, stub, null);
     }
 
+    public Cond getCondition() {
+        return condition;
+    }
+
+    public JavaKind getType() {
+        return type;
+    }
+
+    public RuntimeStub getStub() {
+        return stub;
+    }
+
+    public BlockStartInstr getBlock() {
+        return block;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        if (stub != null) {
+            stub.forEachOperand(proc);
+        }
+    }
 
     @Override
     public String toString() {
+        Object target = label != null ? label.getId() : block == null ? stub.toString() : block.id();
         if (condition == Cond.Always) {
-            return Logger.format("i{}: jmp L{}", super.id, block == null ? stub.toString() : block.id());
+            return Logger.format("i{}: jmp L{}", super.id, target);
         } else {
-            return Logger.format("i{}: branch_{} L{}", super.id, condition.name().toLowerCase()
-                    , block == null ? stub.toString() : block.id());
+            return Logger.format("i{}: branch_{} L{}", super.id, condition.name().toLowerCase(), target);
         }
     }
 }
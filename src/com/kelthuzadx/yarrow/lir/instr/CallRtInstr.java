@@ -5,8 +5,10 @@ import com.kelthuzadx.yarrow.lir.operand.Address;
 import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.meta.AllocatableValue;
 
+import java.util.function.UnaryOperator;
+
 public class CallRtInstr extends LirInstr {
-    private final Address routine;
+    private AllocatableValue routine;
     private final AllocatableValue[] argument;
 
     public CallRtInstr(AllocatableValue result, Address routine, AllocatableValue[] argument) {
@@ -19,6 +21,15 @@ public class CallRtInstr extends LirInstr {
         return argument;
     }
 
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        routine = proc.apply(routine);
+        for (int i = 0; i < argument.length; i++) {
+            argument[i] = proc.apply(argument[i]);
+        }
+    }
+
     @Override
     public String toString() {
         return Logger.format("i{}: call_rt {}", super.id, stringify(routine));
@@ -0,0 +1,50 @@
+package com.kelthuzadx.yarrow.lir.instr;
+
+import com.kelthuzadx.yarrow.lir.Mnemonic;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Atomically replace value at address with newValue if it equals to expected, i.e. lock cmpxchg.
+ * Expected value must be in rax, it holds the current value afterwards, zero flag is set
+ * on success.
+ */
+public class CompareAndSwapInstr extends LirInstr {
+    private AllocatableValue address;
+    private AllocatableValue expected;
+    private AllocatableValue newValue;
+
+    public CompareAndSwapInstr(AllocatableValue address, AllocatableValue expected, AllocatableValue newValue) {
+        super(Mnemonic.CAS, AllocatableValue.ILLEGAL);
+        this.address = address;
+        this.expected = expected;
+        this.newValue = newValue;
+    }
+
+    public AllocatableValue getAddress() {
+        return address;
+    }
+
+    public AllocatableValue getExpected() {
+        return expected;
+    }
+
+    public AllocatableValue getNewValue() {
+        return newValue;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        address = proc.apply(address);
+        expected = proc.apply(expected);
+        newValue = proc.apply(newValue);
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: cas {},{},{}", super.id, stringify(address), stringify(expected), stringify(newValue));
+    }
+}
@@ -0,0 +1,118 @@
+package com.kelthuzadx.yarrow.lir.instr;
+
+import com.kelthuzadx.yarrow.lir.Mnemonic;
+import com.kelthuzadx.yarrow.lir.stub.ArrayCopyStub;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaKind;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Inline array copy, it checks its arguments according to flags and copies elements by
+ * rep movs(or vector moves for large length). Any failed check jumps to slow path stub.
+ */
+public class JavaArrayCopyInstr extends LirInstr {
+    public static final int SRC_NULL_CHECK = 1;
+    public static final int DEST_NULL_CHECK = 1 << 1;
+    public static final int SRC_POS_POSITIVE_CHECK = 1 << 2;
+    public static final int DEST_POS_POSITIVE_CHECK = 1 << 3;
+    public static final int LENGTH_POSITIVE_CHECK = 1 << 4;
+    public static final int SRC_RANGE_CHECK = 1 << 5;
+    public static final int DEST_RANGE_CHECK = 1 << 6;
+    // Source and destination may be the same array, copy backward if needed
+    public static final int OVERLAPPING = 1 << 7;
+    public static final int ALL_FLAGS = (1 << 8) - 1;
+
+    private final ArrayCopyStub stub;
+    private AllocatableValue src;
+    private AllocatableValue srcPos;
+    private AllocatableValue dest;
+    private AllocatableValue destPos;
+    private AllocatableValue length;
+    private AllocatableValue temp1;
+    private AllocatableValue temp2;
+    private AllocatableValue temp3;
+    private final JavaKind elementType;
+    private final int flags;
+
+    public JavaArrayCopyInstr(ArrayCopyStub stub, AllocatableValue src, AllocatableValue srcPos, AllocatableValue dest, AllocatableValue destPos, AllocatableValue length, AllocatableValue temp1, AllocatableValue temp2, AllocatableValue temp3, JavaKind elementType, int flags) {
+        super(Mnemonic.ARRAY_COPY, AllocatableValue.ILLEGAL);
+        this.stub = stub;
+        this.src = src;
+        this.srcPos = srcPos;
+        this.dest = dest;
+        this.destPos = destPos;
+        this.length = length;
+        this.temp1 = temp1;
+        this.temp2 = temp2;
+        this.temp3 = temp3;
+        this.elementType = elementType;
+        this.flags = flags;
+    }
+
+    public ArrayCopyStub getStub() {
+        return stub;
+    }
+
+    public AllocatableValue getSrc() {
+        return src;
+    }
+
+    public AllocatableValue getSrcPos() {
+        return srcPos;
+    }
+
+    public AllocatableValue getDest() {
+        return dest;
+    }
+
+    public AllocatableValue getDestPos() {
+        return destPos;
+    }
+
+    public AllocatableValue getLength() {
+        return length;
+    }
+
+    public AllocatableValue getTemp1() {
+        return temp1;
+    }
+
+    public AllocatableValue getTemp2() {
+        return temp2;
+    }
+
+    public AllocatableValue getTemp3() {
+        return temp3;
+    }
+
+    public JavaKind getElementType() {
+        return elementType;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        src = proc.apply(src);
+        srcPos = proc.apply(srcPos);
+        dest = proc.apply(dest);
+        destPos = proc.apply(destPos);
+        length = proc.apply(length);
+        temp1 = proc.apply(temp1);
+        temp2 = proc.apply(temp2);
+        temp3 = proc.apply(temp3);
+        stub.forEachOperand(proc);
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: arraycopy {}[{}] -> {}[{}], {} [{}] flags=0x{}", super.id, stringify(src),
+                stringify(srcPos), stringify(dest), stringify(destPos), stringify(length), elementType.getJavaName(),
+                Integer.toHexString(flags));
+    }
+}
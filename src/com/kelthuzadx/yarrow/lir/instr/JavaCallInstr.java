@@ -5,16 +5,25 @@ import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.meta.AllocatableValue;
 import jdk.vm.ci.meta.JavaMethod;
 
+import java.util.function.UnaryOperator;
+
 public class JavaCallInstr extends LirInstr {
     private final JavaMethod method;
-    private final AllocatableValue receiver;
+    private AllocatableValue receiver;
     private final AllocatableValue[] arguments;
+    // Method* of CALL_INDIRECT, callee is entered through its Method::_from_compiled_entry
+    private AllocatableValue methodPointer;
 
     public JavaCallInstr(Mnemonic mnemonic, AllocatableValue result, JavaMethod method, AllocatableValue receiver, AllocatableValue[] arguments) {
+        this(mnemonic, result, method, receiver, arguments, AllocatableValue.ILLEGAL);
+    }
+
+    public JavaCallInstr(Mnemonic mnemonic, AllocatableValue result, JavaMethod method, AllocatableValue receiver, AllocatableValue[] arguments, AllocatableValue methodPointer) {
         super(mnemonic, result);
         this.method = method;
         this.receiver = receiver;
         this.arguments = arguments;
+        this.methodPointer = methodPointer;
     }
 
     public AllocatableValue getReceiver() {
@@ -26,6 +35,20 @@ public class JavaCallInstr extends LirInstr {
         return arguments;
     }
 
+    public AllocatableValue getMethodPointer() {
+        return methodPointer;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        receiver = proc.apply(receiver);
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = proc.apply(arguments[i]);
+        }
+        methodPointer = proc.apply(methodPointer);
+    }
+
     @Override
     public String toString() {
         return Logger.format("i{}: {} {}", super.id, mnemonic.name().toLowerCase(), method.getName());
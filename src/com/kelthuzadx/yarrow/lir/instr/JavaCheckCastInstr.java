@@ -6,8 +6,10 @@ import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.hotspot.HotSpotResolvedJavaType;
 import jdk.vm.ci.meta.AllocatableValue;
 
+import java.util.function.UnaryOperator;
+
 public class JavaCheckCastInstr extends LirInstr {
-    private final AllocatableValue object;
+    private AllocatableValue object;
     private final HotSpotResolvedJavaType klassType;
     private final ClassCastExStub stub;
 
@@ -22,6 +24,17 @@ public class JavaCheckCastInstr extends LirInstr {
         return object;
     }
 
+    public ClassCastExStub getStub() {
+        return stub;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        object = proc.apply(object);
+        stub.forEachOperand(proc);
+    }
+
     @Override
     public String toString() {
         return Logger.format("i{}: cast_obj {},{}", super.id, stringify(object), klassType.getName());
@@ -5,8 +5,10 @@ import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.hotspot.HotSpotResolvedJavaType;
 import jdk.vm.ci.meta.AllocatableValue;
 
+import java.util.function.UnaryOperator;
+
 public class JavaInstanceOfInstr extends LirInstr {
-    private final AllocatableValue object;
+    private AllocatableValue object;
     private final HotSpotResolvedJavaType klassType;
 
     public JavaInstanceOfInstr(AllocatableValue result, AllocatableValue object, HotSpotResolvedJavaType klassType) {
@@ -15,6 +17,16 @@ public class JavaInstanceOfInstr extends LirInstr {
         this.klassType = klassType;
     }
 
+    public AllocatableValue getObject() {
+        return object;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        object = proc.apply(object);
+    }
+
     @Override
     public String toString() {
         return Logger.format("i{}: type_check {},{}", super.id, stringify(object), klassType.getName());
@@ -3,15 +3,19 @@ package com.kelthuzadx.yarrow.lir.instr;
 import com.kelthuzadx.yarrow.lir.Mnemonic;
 import com.kelthuzadx.yarrow.optimize.Visitable;
 import com.kelthuzadx.yarrow.util.Increment;
+import jdk.vm.ci.code.DebugInfo;
 import jdk.vm.ci.code.StackSlot;
 import jdk.vm.ci.meta.AllocatableValue;
 
 import java.util.Objects;
+import java.util.function.UnaryOperator;
 
 public class LirInstr implements Visitable {
     protected int id;
     protected Mnemonic mnemonic;
     protected AllocatableValue result;
+    // Interpreter state for instruction that may deoptimize or walk the stack, e.g. calls
+    protected DebugInfo debugInfo;
 
     public LirInstr(Mnemonic mnemonic, AllocatableValue result) {
         this.id = Increment.next(LirInstr.class);
@@ -34,6 +38,14 @@ public class LirInstr implements Visitable {
         return result;
     }
 
+    public DebugInfo getDebugInfo() {
+        return debugInfo;
+    }
+
+    public void setDebugInfo(DebugInfo debugInfo) {
+        this.debugInfo = debugInfo;
+    }
+
     public Mnemonic getMnemonic() {
         return mnemonic;
     }
@@ -42,6 +54,14 @@ public class LirInstr implements Visitable {
         this.id = id;
     }
 
+    /**
+     * Apply proc to result and every operand and store back what it returns, e.g. register
+     * allocator replaces virtual registers with their locations this way
+     */
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        result = proc.apply(result);
+    }
+
 
     @Override
     public boolean equals(Object o) {
@@ -4,6 +4,8 @@ import com.kelthuzadx.yarrow.lir.Mnemonic;
 import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.meta.AllocatableValue;
 
+import java.util.function.UnaryOperator;
+
 public class Op1Instr extends LirInstr {
     protected AllocatableValue operand;
 
@@ -16,12 +18,17 @@ public class Op1Instr extends LirInstr {
         return operand;
     }
 
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        operand = proc.apply(operand);
+    }
+
     @Override
     public String toString() {
         switch (mnemonic) {
-            case RETURN:
-                return Logger.format("i{}: return {}", super.id, (operand == null || operand == AllocatableValue.ILLEGAL) ? "" :
-                        stringify(operand));
+            case SAFEPOINT_POLL:
+                return Logger.format("i{}: safepoint_poll [{}]", super.id, stringify(operand));
         }
         return Logger.format("i{}: {} {},{}", super.id, mnemonic.name().toLowerCase(), stringify(result),
                 stringify(operand));
@@ -5,10 +5,12 @@ import com.kelthuzadx.yarrow.lir.Mnemonic;
 import com.kelthuzadx.yarrow.util.Logger;
 import jdk.vm.ci.meta.AllocatableValue;
 
+import java.util.function.UnaryOperator;
+
 public class Op2Instr extends LirInstr {
     private final Cond cond;
-    private final AllocatableValue leftOperand;
-    private final AllocatableValue rightOperand;
+    private AllocatableValue leftOperand;
+    private AllocatableValue rightOperand;
 
     public Op2Instr(Mnemonic mnemonic, AllocatableValue result, AllocatableValue leftOperand, AllocatableValue rightOperand) {
         super(mnemonic, result);
@@ -24,6 +26,10 @@ public class Op2Instr extends LirInstr {
         this.rightOperand = rightOperand;
     }
 
+    public Cond getCond() {
+        return cond;
+    }
+
     public AllocatableValue operand1() {
         return leftOperand;
     }
@@ -32,12 +38,29 @@ public class Op2Instr extends LirInstr {
         return rightOperand;
     }
 
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        leftOperand = proc.apply(leftOperand);
+        rightOperand = proc.apply(rightOperand);
+    }
+
     @Override
     public String toString() {
         switch (mnemonic) {
             case CMP:
                 return Logger.format("i{}: cmp_{} {},{}", super.id, cond.name().toLowerCase(),
                         stringify(leftOperand), stringify(rightOperand));
+            case RETURN:
+                return Logger.format("i{}: return {} poll [{}]", super.id,
+                        leftOperand == AllocatableValue.ILLEGAL ? "" : stringify(leftOperand), stringify(rightOperand));
+            case BIT_TEST:
+                return Logger.format("i{}: bt {},{}", super.id, stringify(leftOperand), stringify(rightOperand));
+            case SETCC:
+                return Logger.format("i{}: set_{} {}", super.id, cond.name().toLowerCase(), stringify(result));
+            case CMOVE:
+                return Logger.format("i{}: cmove_{} {} {},{}", super.id, cond.name().toLowerCase(),
+                        stringify(result), stringify(leftOperand), stringify(rightOperand));
         }
         return Logger.format("i{}: {} {} {},{}", super.id, mnemonic.name().toLowerCase(), stringify(result),
                 stringify(leftOperand), stringify(rightOperand));
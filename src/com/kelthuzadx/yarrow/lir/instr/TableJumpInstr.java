@@ -0,0 +1,45 @@
+package com.kelthuzadx.yarrow.lir.instr;
+
+import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
+import com.kelthuzadx.yarrow.lir.Mnemonic;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.function.UnaryOperator;
+
+/**
+ * Indirect jump through a table of block addresses, the table itself is emitted into
+ * data section of code. Index must be within table bounds.
+ */
+public class TableJumpInstr extends LirInstr {
+    private AllocatableValue index;
+    private final List<BlockStartInstr> targets;
+
+    public TableJumpInstr(AllocatableValue index, List<BlockStartInstr> targets) {
+        super(Mnemonic.TABLE_JUMP, AllocatableValue.ILLEGAL);
+        this.index = index;
+        this.targets = targets;
+    }
+
+    public AllocatableValue getIndex() {
+        return index;
+    }
+
+    public List<BlockStartInstr> getTargets() {
+        return targets;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        index = proc.apply(index);
+    }
+
+    @Override
+    public String toString() {
+        String table = targets.stream().map(b -> "L" + b.id()).collect(Collectors.joining(","));
+        return Logger.format("i{}: table_jump {} [{}]", super.id, stringify(index), table);
+    }
+}
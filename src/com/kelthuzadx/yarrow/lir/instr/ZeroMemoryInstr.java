@@ -0,0 +1,49 @@
+package com.kelthuzadx.yarrow.lir.instr;
+
+import com.kelthuzadx.yarrow.lir.Mnemonic;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Zero count quad words starting at address, i.e. rep stos. Address, count and zero value
+ * are fixed to rdi, rcx and rax, the first two are clobbered.
+ */
+public class ZeroMemoryInstr extends LirInstr {
+    private AllocatableValue address;
+    private AllocatableValue count;
+    private AllocatableValue zero;
+
+    public ZeroMemoryInstr(AllocatableValue address, AllocatableValue count, AllocatableValue zero) {
+        super(Mnemonic.ZERO_MEMORY, AllocatableValue.ILLEGAL);
+        this.address = address;
+        this.count = count;
+        this.zero = zero;
+    }
+
+    public AllocatableValue getAddress() {
+        return address;
+    }
+
+    public AllocatableValue getCount() {
+        return count;
+    }
+
+    public AllocatableValue getZero() {
+        return zero;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        super.forEachOperand(proc);
+        address = proc.apply(address);
+        count = proc.apply(count);
+        zero = proc.apply(zero);
+    }
+
+    @Override
+    public String toString() {
+        return Logger.format("i{}: rep_stos {},{},{}", super.id, stringify(address), stringify(count), stringify(zero));
+    }
+}
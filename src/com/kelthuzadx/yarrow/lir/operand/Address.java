@@ -41,6 +41,26 @@ public class Address extends AllocatableValue {
         this(base, AllocatableValue.ILLEGAL, 1, 0, type);
     }
 
+    public AllocatableValue getBase() {
+        return base;
+    }
+
+    public AllocatableValue getIndex() {
+        return index;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public int getDisplacement() {
+        return displacement;
+    }
+
+    public JavaKind getType() {
+        return type;
+    }
+
     public static int scaleFor(JavaKind type) {
         switch (type) {
             case Boolean:
@@ -12,6 +12,9 @@ public class ConstValue extends AllocatableValue {
         this.constant = constant;
     }
 
+    public JavaConstant getConstant() {
+        return constant;
+    }
 
     @Override
     public String toString() {
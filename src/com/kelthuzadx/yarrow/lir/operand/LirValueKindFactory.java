@@ -1,6 +1,8 @@
 package com.kelthuzadx.yarrow.lir.operand;
 
+import com.kelthuzadx.yarrow.core.YarrowError;
 import com.kelthuzadx.yarrow.core.YarrowRuntime;
+import jdk.vm.ci.amd64.AMD64Kind;
 import jdk.vm.ci.code.ValueKindFactory;
 import jdk.vm.ci.meta.JavaKind;
 
@@ -9,4 +11,23 @@ public class LirValueKindFactory implements ValueKindFactory<LirValueKind> {
     public LirValueKind getValueKind(JavaKind javaKind) {
         return new LirValueKind(YarrowRuntime.target.arch.getPlatformKind(javaKind));
     }
+
+    /**
+     * Value kind of SIMD register that holds lanes elements of given type
+     */
+    public LirValueKind getVectorValueKind(JavaKind elementType, int lanes) {
+        int bytes = elementType.getByteCount() * lanes;
+        switch (elementType) {
+            case Int:
+                return new LirValueKind(bytes == 16 ? AMD64Kind.V128_DWORD : bytes == 32 ? AMD64Kind.V256_DWORD : AMD64Kind.V512_DWORD);
+            case Long:
+                return new LirValueKind(bytes == 16 ? AMD64Kind.V128_QWORD : bytes == 32 ? AMD64Kind.V256_QWORD : AMD64Kind.V512_QWORD);
+            case Float:
+                return new LirValueKind(bytes == 16 ? AMD64Kind.V128_SINGLE : bytes == 32 ? AMD64Kind.V256_SINGLE : AMD64Kind.V512_SINGLE);
+            case Double:
+                return new LirValueKind(bytes == 16 ? AMD64Kind.V128_DOUBLE : bytes == 32 ? AMD64Kind.V256_DOUBLE : AMD64Kind.V512_DOUBLE);
+            default:
+                throw YarrowError.shouldNotReachHere();
+        }
+    }
 }
@@ -5,6 +5,7 @@ import com.kelthuzadx.yarrow.util.Increment;
 import jdk.vm.ci.code.Register;
 import jdk.vm.ci.meta.AllocatableValue;
 import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ValueKind;
 
 public class XRegister extends AllocatableValue {
     private static final int VREGID_BASE = YarrowRuntime.arch.getRegisters().size() + 1;
@@ -21,12 +22,29 @@ public class XRegister extends AllocatableValue {
         this.isVirtual = true;
     }
 
+    public XRegister(JavaKind type, LirValueKind kind) {
+        super(kind);
+        this.type = type;
+        int regId = VREGID_BASE + Increment.next(XRegister.class);
+        this.register = new Register(regId, regId, "vreg" + regId, virtual);
+        this.isVirtual = true;
+    }
+
     public XRegister(Register register) {
         super(null);
         this.register = register;
         this.isVirtual = false;
     }
 
+    /**
+     * Physical register that holds a value of given kind, e.g. location of an allocated virtual register
+     */
+    public XRegister(Register register, ValueKind<?> kind) {
+        super(kind);
+        this.register = register;
+        this.isVirtual = false;
+    }
+
     public boolean isVirtualRegister() {
         return isVirtual;
     }
@@ -35,6 +53,14 @@ public class XRegister extends AllocatableValue {
         return register.number;
     }
 
+    public JavaKind getJavaKind() {
+        return type;
+    }
+
+    public Register getRegister() {
+        return register;
+    }
+
 
     @Override
     public String toString() {
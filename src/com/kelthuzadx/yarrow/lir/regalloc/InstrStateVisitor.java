@@ -2,23 +2,38 @@ package com.kelthuzadx.yarrow.lir.regalloc;
 
 import com.kelthuzadx.yarrow.core.YarrowError;
 import com.kelthuzadx.yarrow.lir.instr.*;
+import com.kelthuzadx.yarrow.lir.operand.Address;
 import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.stub.RuntimeStub;
 import com.kelthuzadx.yarrow.optimize.LirInstrVisitor;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.code.BytecodeFrame;
+import jdk.vm.ci.code.DebugInfo;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.code.RegisterValue;
+import jdk.vm.ci.code.StackLockValue;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaValue;
 
 import java.util.ArrayList;
 
+/**
+ * Collect operands of an instruction by their modes. Inputs are read before outputs are
+ * written, temps are clobbered in between. Base and index of a memory operand are inputs
+ * even if memory is written. Physical registers are reported as fixed XRegisters. State
+ * values are referenced by debug info, they only need to be alive somewhere.
+ */
 public class InstrStateVisitor extends LirInstrVisitor {
     private ArrayList<XRegister> input;
     private ArrayList<XRegister> output;
     private ArrayList<XRegister> temp;
+    private ArrayList<XRegister> state;
 
     private boolean hasCall;
 
 
     public InstrStateVisitor() {
-        input = new ArrayList<>();
-        output = new ArrayList<>();
-        temp = new ArrayList<>();
+        reset();
     }
 
     public boolean hasCall() {
@@ -29,6 +44,16 @@ public class InstrStateVisitor extends LirInstrVisitor {
         input = new ArrayList<>();
         output = new ArrayList<>();
         temp = new ArrayList<>();
+        state = new ArrayList<>();
+        hasCall = false;
+    }
+
+    /**
+     * Collect operands of instruction and values of its debug info
+     */
+    public void collect(LirInstr instr) {
+        instr.visit(this);
+        addState(instr.getDebugInfo());
     }
 
     public ArrayList<XRegister> getInput() {
@@ -43,98 +68,139 @@ public class InstrStateVisitor extends LirInstrVisitor {
         return temp;
     }
 
-    @Override
-    public void visitAllocateArrayInstr(AllocateArrayInstr instr) {
-        if (instr.getKlassReg() instanceof XRegister) {
-            input.add((XRegister) instr.getKlassReg());
+    public ArrayList<XRegister> getState() {
+        return state;
+    }
+
+    private static XRegister asRegister(AllocatableValue value) {
+        if (value instanceof XRegister) {
+            return (XRegister) value;
         }
+        if (value instanceof RegisterValue) {
+            return new XRegister(((RegisterValue) value).getRegister());
+        }
+        return null;
+    }
 
-        if (instr.getLength() instanceof XRegister) {
-            input.add((XRegister) instr.getLength());
+    private void addInput(AllocatableValue value) {
+        if (value instanceof Address) {
+            addInput(((Address) value).getBase());
+            addInput(((Address) value).getIndex());
+        } else if (asRegister(value) != null) {
+            input.add(asRegister(value));
         }
+    }
 
-        if (instr.getTemp1() instanceof XRegister) {
-            temp.add((XRegister) instr.getTemp1());
+    private void addOutput(AllocatableValue value) {
+        if (value instanceof Address) {
+            addInput(value);
+        } else if (asRegister(value) != null) {
+            output.add(asRegister(value));
         }
-        if (instr.getTemp2() instanceof XRegister) {
-            temp.add((XRegister) instr.getTemp2());
+    }
+
+    private void addTemp(AllocatableValue value) {
+        if (value instanceof Address) {
+            addInput(value);
+        } else if (asRegister(value) != null) {
+            temp.add(asRegister(value));
         }
+    }
 
-        if (instr.getTemp3() instanceof XRegister) {
-            temp.add((XRegister) instr.getTemp3());
+    private void addState(DebugInfo info) {
+        if (info == null) {
+            return;
         }
+        for (BytecodeFrame frame = info.frame(); frame != null; frame = frame.caller()) {
+            for (JavaValue value : frame.values) {
+                if (value instanceof StackLockValue) {
+                    value = ((StackLockValue) value).getOwner();
+                }
+                if (value instanceof XRegister) {
+                    state.add((XRegister) value);
+                }
+            }
+        }
+    }
 
-        if (instr.getTemp4() instanceof XRegister) {
-            temp.add((XRegister) instr.getTemp4());
+    /**
+     * Slow path reads operands of stub when it's entered from the instruction
+     */
+    private void addStub(RuntimeStub stub) {
+        if (stub == null) {
+            return;
         }
+        stub.forEachOperand(value -> {
+            addInput(value);
+            return value;
+        });
+        addState(stub.getDebugInfo());
+    }
 
+    @Override
+    public void visitAllocateArrayInstr(AllocateArrayInstr instr) {
+        addInput(instr.getKlassReg());
 
-        if (instr.operandResult() instanceof XRegister) {
-            output.add((XRegister) instr.operandResult());
-        }
+        addInput(instr.getLength());
+        addStub(instr.getStub());
+
+        addTemp(instr.getTemp1());
+        addTemp(instr.getTemp2());
+
+        addTemp(instr.getTemp3());
+
+        addTemp(instr.getTemp4());
+
+
+        addOutput(instr.operandResult());
     }
 
     @Override
     public void visitBranchInstr(BranchInstr instr) {
-
+        addStub(instr.getStub());
     }
 
     @Override
     public void visitCallRtInstr(CallRtInstr instr) {
         for (var value : instr.getArgument()) {
-            if (value instanceof XRegister) {
-                input.add((XRegister) value);
-            }
+            addInput(value);
         }
 
-        if (instr.operandResult() instanceof XRegister) {
-            output.add((XRegister) instr.operandResult());
-        }
+        addOutput(instr.operandResult());
         hasCall = true;
     }
 
     @Override
     public void visitJavaCallInstr(JavaCallInstr instr) {
-        if (instr.getReceiver() instanceof XRegister) {
-            input.add((XRegister) instr.getReceiver());
-        }
+        addInput(instr.getReceiver());
+        addInput(instr.getMethodPointer());
 
         for (var value : instr.getArguments()) {
-            if (value instanceof XRegister) {
-                input.add((XRegister) value);
-            }
+            addInput(value);
         }
 
-        if (instr.operandResult() instanceof XRegister) {
-            output.add((XRegister) instr.operandResult());
-        }
+        addOutput(instr.operandResult());
         hasCall = true;
     }
 
     @Override
     public void visitJavaCheckCastInstr(JavaCheckCastInstr instr) {
-        if (instr.getObject() instanceof XRegister) {
-            input.add((XRegister) instr.getObject());
-        }
+        addInput(instr.getObject());
+        addStub(instr.getStub());
 
-        if (instr.operandResult() instanceof XRegister) {
-            output.add((XRegister) instr.operandResult());
-        }
+        addOutput(instr.operandResult());
     }
 
     @Override
     public void visitJavaInstanceOfInstr(JavaInstanceOfInstr instr) {
-
+        addInput(instr.getObject());
+        addOutput(instr.operandResult());
     }
 
     @Override
     public void visitJavaTypeCastInstr(JavaTypeCastInstr instr) {
-        if (instr.operand1() instanceof XRegister) {
-            input.add((XRegister) instr.operand1());
-        }
-        if (instr.operandResult() instanceof XRegister) {
-            output.add((XRegister) instr.operandResult());
-        }
+        addInput(instr.operand1());
+        addOutput(instr.operandResult());
     }
 
     @Override
@@ -162,9 +228,7 @@ public class InstrStateVisitor extends LirInstrVisitor {
             case MEMBAR_STORE_STORE:
             case MEMBAR_ACQUIRE:
             case MEMBAR_RELEASE:
-                if (instr.operandResult() instanceof XRegister) {
-                    output.add((XRegister) instr.operandResult());
-                }
+                addOutput(instr.operandResult());
                 break;
             default:
                 break;
@@ -175,13 +239,12 @@ public class InstrStateVisitor extends LirInstrVisitor {
     public void visitOp1Instr(Op1Instr instr) {
         switch (instr.getMnemonic()) {
             case MOV:
-            case RETURN:
-                if (instr.operand1() instanceof XRegister) {
-                    input.add((XRegister) instr.operand1());
-                }
-                if (instr.operandResult() instanceof XRegister) {
-                    output.add((XRegister) instr.operandResult());
-                }
+            case VMOV:
+            case VBROADCAST:
+            case LEA:
+            case SAFEPOINT_POLL:
+                addInput(instr.operand1());
+                addOutput(instr.operandResult());
                 break;
             default:
                 break;
@@ -191,11 +254,10 @@ public class InstrStateVisitor extends LirInstrVisitor {
     @Override
     public void visitOp2Instr(Op2Instr instr) {
         switch (instr.getMnemonic()) {
+            case RETURN:
             case ADD:
             case SUB:
             case MUL:
-            case DIV:
-            case REM:
             case SHL:
             case SHR:
             case USHR:
@@ -207,18 +269,80 @@ public class InstrStateVisitor extends LirInstrVisitor {
             case FCMPU:
             case LCMP:
             case CMP:
-                if (instr.operand1() instanceof XRegister) {
-                    input.add((XRegister) instr.operand1());
-                }
-                if (instr.operand2() instanceof XRegister) {
-                    input.add((XRegister) instr.operand2());
-                }
-                if (instr.operandResult() instanceof XRegister) {
-                    output.add((XRegister) instr.operandResult());
+            case CMOVE:
+            case SETCC:
+            case BIT_TEST:
+            case ABS:
+            case SQRT:
+            case VADD:
+            case VSUB:
+            case VMUL:
+            case VDIV:
+            case VAND:
+            case VOR:
+            case VXOR:
+            case VREDUCE_ADD:
+            case VREDUCE_AND:
+            case VREDUCE_OR:
+            case VREDUCE_XOR:
+            case VEXTRACT:
+                addInput(instr.operand1());
+                addInput(instr.operand2());
+                addOutput(instr.operandResult());
+                break;
+            case DIV:
+            case REM:
+                addInput(instr.operand1());
+                addInput(instr.operand2());
+                addOutput(instr.operandResult());
+                // Integer division takes dividend in rax and leaves quotient in rax and remainder
+                // in rdx, the one that is not the result is clobbered
+                XRegister result = asRegister(instr.operandResult());
+                if (result != null && !result.isVirtualRegister()) {
+                    Register clobbered = result.getRegister().equals(AMD64.rax) ? AMD64.rdx : AMD64.rax;
+                    addTemp(new XRegister(clobbered));
                 }
                 break;
             default:
                 break;
         }
     }
+
+    @Override
+    public void visitTableJumpInstr(TableJumpInstr instr) {
+        addInput(instr.getIndex());
+    }
+
+    @Override
+    public void visitCompareAndSwapInstr(CompareAndSwapInstr instr) {
+        addInput(instr.getAddress());
+        addInput(instr.getExpected());
+        // cmpxchg loads current value into rax
+        addOutput(instr.getExpected());
+        addInput(instr.getNewValue());
+    }
+
+    @Override
+    public void visitZeroMemoryInstr(ZeroMemoryInstr instr) {
+        for (var value : new AllocatableValue[]{instr.getAddress(), instr.getCount(), instr.getZero()}) {
+            addInput(value);
+        }
+        // rep stos advances rdi and counts rcx down to zero
+        for (var value : new AllocatableValue[]{instr.getAddress(), instr.getCount()}) {
+            addTemp(value);
+        }
+    }
+
+    @Override
+    public void visitJavaArrayCopyInstr(JavaArrayCopyInstr instr) {
+        for (var value : new AllocatableValue[]{instr.getSrc(), instr.getSrcPos(), instr.getDest(), instr.getDestPos(), instr.getLength()}) {
+            addInput(value);
+        }
+        for (var value : new AllocatableValue[]{instr.getTemp1(), instr.getTemp2(), instr.getTemp3()}) {
+            addTemp(value);
+        }
+        addStub(instr.getStub());
+        // Slow path calls System.arraycopy
+        hasCall = true;
+    }
 }
@@ -1,49 +1,405 @@
 package com.kelthuzadx.yarrow.lir.regalloc;
 
+import com.kelthuzadx.yarrow.core.YarrowError;
+import com.kelthuzadx.yarrow.lir.instr.LirInstr;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.code.StackSlot;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.ValueKind;
+
 import java.util.ArrayList;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Lifetime of a virtual register or a physical register. It's a list of sorted and disjoint
+ * ranges [from, to) where the value is alive, plus positions where it's used. Both are kept
+ * in primitive arrays, queries on them are binary searches. Inputs of an
+ * operation end at its id while outputs start at it, so an input and an output may share
+ * the same register.
+ * <p>
+ * Interval of a virtual register may be split into children when no register is available
+ * for its whole lifetime. Children reside in different locations, they share the spill slot
+ * of split parent so that a spilled value is stored to stack only once.
+ *
+ * @author kelthuzadx
+ */
 public class Interval {
-    private final ArrayList<int[]> ranges;
-    private final ArrayList<Integer> usePositions;
+    private final int operandNumber;
+    private final ValueKind<?> kind;
+    private final boolean fixed;
+    private final Interval splitParent;
+    // Split children sorted by their start, it's only filled for split parent
+    private final ArrayList<Interval> splitChildren;
+    // Intervals are built backwards, so both arrays keep the latest position first and new
+    // ranges and uses are appended at the end. Range i is [ranges[2i], ranges[2i+1]), a use
+    // is packed as position << 1 | kind
+    private int[] ranges;
+    private int rangeCount;
+    private int[] uses;
+    private int useCount;
+    private AllocatableValue location;
+    private StackSlot spillSlot;
+    // Interval connected by a move at hintPosition, sharing its register makes the move redundant
+    private Interval locationHint;
+    private int hintPosition;
+
+    public Interval(int operandNumber, ValueKind<?> kind, boolean fixed) {
+        this(operandNumber, kind, fixed, null);
+    }
+
+    private Interval(int operandNumber, ValueKind<?> kind, boolean fixed, Interval splitParent) {
+        this.operandNumber = operandNumber;
+        this.kind = kind;
+        this.fixed = fixed;
+        this.ranges = new int[4];
+        this.rangeCount = 0;
+        this.uses = new int[4];
+        this.useCount = 0;
+        this.splitParent = splitParent;
+        this.splitChildren = new ArrayList<>();
+    }
+
+    public int getOperandNumber() {
+        return operandNumber;
+    }
+
+    public ValueKind<?> getKind() {
+        return kind;
+    }
+
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    public boolean isEmpty() {
+        return rangeCount == 0;
+    }
 
-    public Interval() {
-        this.ranges = new ArrayList<>();
-        this.usePositions = new ArrayList<>();
+    public int from() {
+        return ranges[(rangeCount - 1) * 2];
     }
 
+    public int to() {
+        return ranges[1];
+    }
+
+    // Start and end of i-th range in ascending order
+    private int rangeFrom(int i) {
+        return ranges[(rangeCount - 1 - i) * 2];
+    }
+
+    private int rangeTo(int i) {
+        return ranges[(rangeCount - 1 - i) * 2 + 1];
+    }
+
+    private static int usePosition(int use) {
+        return use >>> 1;
+    }
+
+    private static int useKind(int use) {
+        return use & 1;
+    }
+
+    /**
+     * Intervals are built backwards, a new range always starts before existing ranges and is
+     * merged with the first one if they overlap or adjoin
+     */
     public void addRange(int from, int to) {
-        int[] range = new int[]{from, to};
-        ranges.add(range);
+        if (rangeCount > 0 && to >= from()) {
+            int top = (rangeCount - 1) * 2;
+            ranges[top] = Math.min(from, ranges[top]);
+            ranges[top + 1] = Math.max(to, ranges[top + 1]);
+            while (rangeCount > 1 && ranges[top + 1] >= ranges[top - 2]) {
+                ranges[top - 2] = ranges[top];
+                ranges[top - 1] = Math.max(ranges[top + 1], ranges[top - 1]);
+                rangeCount--;
+                top -= 2;
+            }
+        } else {
+            if (rangeCount * 2 == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[rangeCount * 2] = from;
+            ranges[rangeCount * 2 + 1] = to;
+            rangeCount++;
+        }
     }
 
-    public void addUsePosition(int usePosition) {
-        usePositions.add(usePosition);
+    /**
+     * Value is defined at position, the first range is shortened to start there. Value that is
+     * never used lives at its definition only
+     */
+    public void setFrom(int from) {
+        if (rangeCount > 0 && from() <= from) {
+            ranges[(rangeCount - 1) * 2] = from;
+        } else {
+            addRange(from, from + 1);
+        }
     }
 
-    public void changeFirstRange(int from) {
-        ranges.get(0)[0] = from;
+    public void addUsePosition(int usePosition, UseKind useKind) {
+        if (useCount == uses.length) {
+            uses = Arrays.copyOf(uses, uses.length * 2);
+        }
+        int i = useCount;
+        while (i > 0 && usePosition(uses[i - 1]) < usePosition) {
+            i--;
+        }
+        System.arraycopy(uses, i, uses, i + 1, useCount - i);
+        uses[i] = usePosition << 1 | useKind.ordinal();
+        useCount++;
     }
 
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * @return index of the first range in ascending order that ends after position, or
+     * rangeCount if there is no such range
+     */
+    private int findRange(int position) {
+        int low = 0;
+        int high = rangeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rangeTo(mid) <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 
-        SortedSet<Integer> pos = new TreeSet<>();
-        for (int[] range : ranges) {
-            pos.add(range[0]);
-            pos.add(range[1]);
+    public boolean covers(int position) {
+        int i = findRange(position);
+        return i < rangeCount && rangeFrom(i) <= position;
+    }
+
+    /**
+     * @return the first position that both intervals cover, or -1 if they never intersect
+     */
+    public int nextIntersection(Interval other) {
+        if (isEmpty() || other.isEmpty()) {
+            return -1;
+        }
+        int i = findRange(other.from());
+        int k = other.findRange(from());
+        while (i < rangeCount && k < other.rangeCount) {
+            int start = Math.max(rangeFrom(i), other.rangeFrom(k));
+            int end = Math.min(rangeTo(i), other.rangeTo(k));
+            if (start < end) {
+                return start;
+            }
+            if (rangeTo(i) <= other.rangeTo(k)) {
+                i++;
+            } else {
+                k++;
+            }
         }
-        sb.append(pos.first());
-        for (int i = pos.first(); i < pos.last(); i++) {
-            if (pos.contains(i)) {
-                sb.append("|");
+        return -1;
+    }
+
+    public boolean intersects(Interval other) {
+        return nextIntersection(other) != -1;
+    }
+
+    /**
+     * @return number of uses at or after position, they are stored at the front
+     */
+    private int findUse(int position) {
+        int low = 0;
+        int high = useCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (usePosition(uses[mid]) >= position) {
+                low = mid + 1;
             } else {
-                sb.append("——");
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first use at or after position that requires at least given kind, or
+     * Integer.MAX_VALUE if there is no such use
+     */
+    public int nextUsage(UseKind minKind, int position) {
+        for (int i = findUse(position) - 1; i >= 0; i--) {
+            if (useKind(uses[i]) >= minKind.ordinal()) {
+                return usePosition(uses[i]);
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the last use before position that requires at least given kind, or -1
+     */
+    public int previousUsage(UseKind minKind, int position) {
+        for (int i = findUse(position); i < useCount; i++) {
+            if (useKind(uses[i]) >= minKind.ordinal()) {
+                return usePosition(uses[i]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Split interval at position, this interval keeps everything before position and the
+     * returned child gets the rest. Position is odd unless the value is split right at an
+     * operation, which still reads it from this interval
+     */
+    public Interval split(int position) {
+        YarrowError.guarantee(!fixed && from() < position && position < to(), "Invalid split position");
+        Interval parent = getSplitParent();
+        var child = new Interval(operandNumber, kind, false, parent);
+        // Reload into the register that value occupied before
+        child.setLocationHint(this, position);
+
+        // Ranges that end after position are stored at the front
+        int first = findRange(position);
+        boolean cut = rangeFrom(first) < position;
+        int childCount = rangeCount - first;
+        child.ranges = Arrays.copyOf(ranges, Math.max(childCount * 2, 4));
+        child.rangeCount = childCount;
+        if (cut) {
+            child.ranges[(childCount - 1) * 2] = position;
+        }
+        int parentCount = cut ? first + 1 : first;
+        System.arraycopy(ranges, (rangeCount - parentCount) * 2, ranges, 0, parentCount * 2);
+        rangeCount = parentCount;
+        if (cut) {
+            ranges[1] = position;
+        }
+
+        int moved = findUse(position % 2 == 0 ? position + 1 : position);
+        child.uses = Arrays.copyOf(uses, Math.max(moved, 4));
+        child.useCount = moved;
+        System.arraycopy(uses, moved, uses, 0, useCount - moved);
+        useCount -= moved;
+
+        int i = 0;
+        while (i < parent.splitChildren.size() && parent.splitChildren.get(i).from() < position) {
+            i++;
+        }
+        parent.splitChildren.add(i, child);
+        return child;
+    }
+
+    public Interval getSplitParent() {
+        return splitParent == null ? this : splitParent;
+    }
+
+    public List<Interval> getSplitChildren() {
+        return splitChildren;
+    }
+
+    public Interval getSplitChildAt(int position) {
+        return getSplitChildAt(position, false);
+    }
+
+    /**
+     * Find the split child that holds value at an operation. An input may end exactly at the
+     * operation that reads it, a child that covers the position takes precedence though,
+     * unless value is split right at the operation and input is looked up
+     */
+    public Interval getSplitChildAt(int position, boolean input) {
+        Interval parent = getSplitParent();
+        if (parent.splitChildren.isEmpty()) {
+            return parent;
+        }
+        Interval covers = null;
+        Interval endsHere = null;
+        for (int i = -1; i < parent.splitChildren.size(); i++) {
+            Interval child = i == -1 ? parent : parent.splitChildren.get(i);
+            if (child.isEmpty()) {
+                continue;
+            }
+            if (child.from() <= position && position < child.to()) {
+                covers = child;
+            }
+            if (child.to() == position) {
+                endsHere = child;
+            }
+        }
+        if (covers != null && (!input || endsHere == null)) {
+            return covers;
+        }
+        if (endsHere == null) {
+            throw YarrowError.shouldNotReachHere();
+        }
+        return endsHere;
+    }
+
+    public void setLocationHint(Interval locationHint, int hintPosition) {
+        this.locationHint = locationHint;
+        this.hintPosition = hintPosition;
+    }
+
+    /**
+     * @return register of hint interval around hint position, or null if hint is not assigned
+     * a register there
+     */
+    public Register getRegisterHint() {
+        if (locationHint == null) {
+            return null;
+        }
+        if (locationHint.isFixed()) {
+            return locationHint.getRegister();
+        }
+        Interval parent = locationHint.getSplitParent();
+        for (int i = -1; i < parent.splitChildren.size(); i++) {
+            Interval child = i == -1 ? parent : parent.splitChildren.get(i);
+            if (!child.isEmpty() && child.from() <= hintPosition && hintPosition <= child.to()) {
+                return child.getRegister();
             }
         }
-        sb.append(pos.last());
+        return null;
+    }
+
+    public AllocatableValue getLocation() {
+        return location;
+    }
+
+    public void setLocation(AllocatableValue location) {
+        this.location = location;
+    }
+
+    /**
+     * @return assigned register, or null if interval is not assigned or is spilled
+     */
+    public Register getRegister() {
+        return location instanceof XRegister ? ((XRegister) location).getRegister() : null;
+    }
+
+    public StackSlot getSpillSlot() {
+        return getSplitParent().spillSlot;
+    }
+
+    public void setSpillSlot(StackSlot spillSlot) {
+        getSplitParent().spillSlot = spillSlot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(fixed ? "fixed" : "v").append(operandNumber);
+        for (int i = 0; i < rangeCount; i++) {
+            sb.append("[").append(rangeFrom(i)).append(",").append(rangeTo(i)).append(")");
+        }
+        if (location != null) {
+            sb.append(" ").append(LirInstr.stringify(location));
+        }
         return sb.toString();
     }
+
+    /**
+     * How badly a use wants its value in register. Operands of moves can be accessed on stack
+     * directly, anything else must be in register.
+     */
+    public enum UseKind {
+        SHOULD_HAVE_REGISTER,
+        MUST_HAVE_REGISTER
+    }
 }
@@ -0,0 +1,286 @@
+package com.kelthuzadx.yarrow.lir.regalloc;
+
+import com.kelthuzadx.yarrow.core.YarrowError;
+import com.kelthuzadx.yarrow.core.YarrowRuntime;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.regalloc.Interval.UseKind;
+import com.kelthuzadx.yarrow.util.CompilerErrors;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.code.Register;
+
+import java.util.*;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.TraceRegisterAllocation;
+
+/**
+ * Walk intervals in order of their start positions and assign registers to them. Intervals
+ * that hold a register and cover current position are active, those that hold a register
+ * but are in a lifetime hole are inactive. Current interval takes a register that is free
+ * for its whole lifetime if possible, otherwise it takes a register that is free for its
+ * first part and is split before the register is needed by others. If every register is
+ * taken, the interval whose next use is farthest away is spilled.
+ *
+ * @author kelthuzadx
+ */
+public class LinearScanWalker {
+    private final RegisterAlloc allocator;
+    private final List<Register> registers;
+    private final PriorityQueue<Interval> unhandled;
+    private List<Interval> active;
+    private List<Interval> inactive;
+
+    public LinearScanWalker(RegisterAlloc allocator, List<Register> registers, Collection<Interval> intervals,
+                            Collection<Interval> fixedIntervals) {
+        this.allocator = allocator;
+        this.registers = registers;
+        this.unhandled = new PriorityQueue<>(Comparator.comparingInt(Interval::from));
+        this.active = new ArrayList<>();
+        this.inactive = new ArrayList<>();
+        for (Interval interval : intervals) {
+            if (!interval.isEmpty()) {
+                unhandled.add(interval);
+            }
+        }
+        for (Interval interval : fixedIntervals) {
+            if (!interval.isEmpty()) {
+                inactive.add(interval);
+            }
+        }
+    }
+
+    public void walk() {
+        while (!unhandled.isEmpty()) {
+            Interval current = unhandled.poll();
+            walkTo(current.from());
+            if (!tryAllocateFreeRegister(current)) {
+                allocateBlockedRegister(current);
+            }
+            if (current.getRegister() != null) {
+                active.add(current);
+            }
+            if (TraceRegisterAllocation) {
+                Logger.logf("Allocate {}", current.toString());
+            }
+        }
+    }
+
+    /**
+     * Retire intervals that end before position, and move intervals between active and
+     * inactive according to whether they cover position
+     */
+    private void walkTo(int position) {
+        List<Interval> newActive = new ArrayList<>();
+        List<Interval> newInactive = new ArrayList<>();
+        for (Interval it : active) {
+            if (it.to() > position) {
+                (it.covers(position) ? newActive : newInactive).add(it);
+            }
+        }
+        for (Interval it : inactive) {
+            if (it.to() > position) {
+                (it.covers(position) ? newActive : newInactive).add(it);
+            }
+        }
+        active = newActive;
+        inactive = newInactive;
+    }
+
+    private List<Register> candidatesOf(Interval current) {
+        List<Register> candidates = new ArrayList<>();
+        for (Register reg : registers) {
+            if (YarrowRuntime.arch.canStoreValue(reg.getRegisterCategory(), current.getKind().getPlatformKind())) {
+                candidates.add(reg);
+            }
+        }
+        if (candidates.isEmpty()) {
+            CompilerErrors.bailOut("no register can hold " + current.getKind());
+        }
+        return candidates;
+    }
+
+    private boolean tryAllocateFreeRegister(Interval current) {
+        int[] freeUntil = new int[YarrowRuntime.arch.getRegisters().size()];
+        Arrays.fill(freeUntil, Integer.MAX_VALUE);
+        for (Interval it : active) {
+            freeUntil[it.getRegister().number] = 0;
+        }
+        for (Interval it : inactive) {
+            int reg = it.getRegister().number;
+            if (freeUntil[reg] != 0) {
+                int intersection = it.nextIntersection(current);
+                if (intersection != -1) {
+                    freeUntil[reg] = Math.min(freeUntil[reg], intersection);
+                }
+            }
+        }
+
+        Register best = null;
+        List<Register> candidates = candidatesOf(current);
+        for (Register reg : candidates) {
+            if (best == null || freeUntil[reg.number] > freeUntil[best.number]) {
+                best = reg;
+            }
+        }
+        // Hinted register is good enough if it's free as long as the best one or until current ends
+        Register hint = current.getRegisterHint();
+        if (hint != null && candidates.contains(hint) &&
+                freeUntil[hint.number] >= Math.min(freeUntil[best.number], current.to())) {
+            best = hint;
+        }
+        int free = freeUntil[best.number];
+        if (free <= current.from()) {
+            return false;
+        }
+        if (free >= current.to()) {
+            current.setLocation(new XRegister(best, current.getKind()));
+            return true;
+        }
+        // Register is available for the first part of current only
+        int splitPos = allocator.findSplitPos(current.from() + 1, free);
+        current.setLocation(new XRegister(best, current.getKind()));
+        if (splitPos > current.from()) {
+            unhandled.add(current.split(splitPos));
+        } else {
+            splitAndSpillAt(current, current.from() + 1);
+        }
+        return true;
+    }
+
+    private void allocateBlockedRegister(Interval current) {
+        int[] usePos = new int[YarrowRuntime.arch.getRegisters().size()];
+        int[] blockPos = new int[YarrowRuntime.arch.getRegisters().size()];
+        Arrays.fill(usePos, Integer.MAX_VALUE);
+        Arrays.fill(blockPos, Integer.MAX_VALUE);
+        for (Interval it : active) {
+            int reg = it.getRegister().number;
+            if (it.isFixed()) {
+                usePos[reg] = 0;
+                blockPos[reg] = 0;
+            } else {
+                usePos[reg] = Math.min(usePos[reg], it.nextUsage(UseKind.SHOULD_HAVE_REGISTER, current.from()));
+            }
+        }
+        for (Interval it : inactive) {
+            int reg = it.getRegister().number;
+            int intersection = it.nextIntersection(current);
+            if (intersection == -1) {
+                continue;
+            }
+            if (it.isFixed()) {
+                blockPos[reg] = Math.min(blockPos[reg], intersection);
+                usePos[reg] = Math.min(usePos[reg], blockPos[reg]);
+            } else {
+                usePos[reg] = Math.min(usePos[reg], it.nextUsage(UseKind.SHOULD_HAVE_REGISTER, current.from()));
+            }
+        }
+
+        Register best = null;
+        for (Register reg : candidatesOf(current)) {
+            if (best == null || usePos[reg.number] > usePos[best.number]) {
+                best = reg;
+            }
+        }
+        int firstUse = current.nextUsage(UseKind.MUST_HAVE_REGISTER, current.from());
+        if (usePos[best.number] < firstUse) {
+            // Every register is needed by others before current needs one, spill current instead
+            if (firstUse <= current.from()) {
+                CompilerErrors.bailOut("no register available for " + current);
+            }
+            current.setLocation(allocator.spillSlotOf(current));
+            if (firstUse != Integer.MAX_VALUE) {
+                splitBeforeUsage(current, firstUse);
+            }
+            return;
+        }
+        if (usePos[best.number] <= current.from() || blockPos[best.number] <= current.from()) {
+            CompilerErrors.bailOut("no register available for " + current);
+        }
+        current.setLocation(new XRegister(best, current.getKind()));
+        if (blockPos[best.number] < current.to()) {
+            // Register is taken by a fixed interval later
+            int splitPos = allocator.findSplitPos(current.from() + 1, blockPos[best.number]);
+            if (splitPos > current.from()) {
+                unhandled.add(current.split(splitPos));
+            } else {
+                splitAndSpillAt(current, current.from() + 1);
+            }
+        }
+        splitAndSpillIntersecting(current, best);
+    }
+
+    /**
+     * Register is free until the operation right after current starts only, e.g. a call
+     * clobbers it. The operation still reads current from register, but the rest of current
+     * is spilled from there until its next use
+     */
+    private void splitAndSpillAt(Interval current, int opId) {
+        YarrowError.guarantee(opId % 2 == 0, "Split position must be at operation");
+        Interval spilled = current.split(opId);
+        spilled.setLocation(allocator.spillSlotOf(spilled));
+        int nextUse = spilled.nextUsage(UseKind.MUST_HAVE_REGISTER, spilled.from());
+        if (nextUse != Integer.MAX_VALUE) {
+            splitBeforeUsage(spilled, nextUse);
+        }
+    }
+
+    /**
+     * Intervals that hold reg and intersect with current are spilled from current position
+     * until their next use
+     */
+    private void splitAndSpillIntersecting(Interval current, Register reg) {
+        int position = current.from();
+        List<Interval> victims = new ArrayList<>();
+        for (Interval it : active) {
+            if (!it.isFixed() && it.getRegister().equals(reg)) {
+                victims.add(it);
+            }
+        }
+        for (Interval it : inactive) {
+            if (!it.isFixed() && it.getRegister().equals(reg) && it.intersects(current)) {
+                victims.add(it);
+            }
+        }
+        active.removeAll(victims);
+        inactive.removeAll(victims);
+        for (Interval it : victims) {
+            splitAndSpill(it, position);
+        }
+    }
+
+    private void splitAndSpill(Interval it, int position) {
+        Interval spilled = it;
+        if (it.from() < position) {
+            // Keep register until the last use before position
+            int minSplitPos = Math.max(it.previousUsage(UseKind.SHOULD_HAVE_REGISTER, position) + 1, it.from() + 1);
+            int splitPos = allocator.findSplitPos(minSplitPos, position);
+            if (splitPos > it.from() && splitPos < it.to()) {
+                spilled = it.split(splitPos);
+            }
+        }
+        if (spilled == it && it.getRegister() != null && it.from() < position) {
+            CompilerErrors.bailOut("can not spill " + it);
+        }
+        spilled.setLocation(allocator.spillSlotOf(spilled));
+        // Moves can access stack directly, reload is needed only if value must be in register
+        int nextUse = spilled.nextUsage(UseKind.MUST_HAVE_REGISTER, spilled.from());
+        if (nextUse != Integer.MAX_VALUE) {
+            if (nextUse <= position) {
+                CompilerErrors.bailOut("can not spill " + spilled);
+            }
+            splitBeforeUsage(spilled, nextUse);
+        }
+    }
+
+    /**
+     * Split spilled interval so that it's reloaded before use, the rest goes back to unhandled
+     */
+    private void splitBeforeUsage(Interval interval, int use) {
+        int splitPos = allocator.findSplitPos(interval.from() + 1, use);
+        if (splitPos <= interval.from()) {
+            CompilerErrors.bailOut("can not split " + interval);
+        }
+        if (splitPos < interval.to()) {
+            unhandled.add(interval.split(splitPos));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.kelthuzadx.yarrow.lir.regalloc;
+
+import com.kelthuzadx.yarrow.core.YarrowRuntime;
+import com.kelthuzadx.yarrow.lir.ParallelMove;
+import com.kelthuzadx.yarrow.lir.instr.LirInstr;
+import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.List;
+
+/**
+ * Moves that logically happen at the same time after allocation, e.g. all moves at a split
+ * position or on a control flow edge. Register cycles are broken by xchg, cycles of XMM
+ * registers and stack to stack moves go through scratch register.
+ *
+ * @author kelthuzadx
+ */
+public class MoveResolver {
+    // Never handed out by allocator
+    public static final Register CPU_SCRATCH = AMD64.r10;
+    public static final Register XMM_SCRATCH = AMD64.xmm15;
+
+    private final ParallelMove moves;
+
+    public MoveResolver() {
+        this.moves = new ParallelMove();
+    }
+
+    private static AllocatableValue scratchFor(AllocatableValue value) {
+        boolean isCpu = YarrowRuntime.arch.canStoreValue(AMD64.CPU, value.getPlatformKind());
+        return new XRegister(isCpu ? CPU_SCRATCH : XMM_SCRATCH, value.getValueKind());
+    }
+
+    public void addMove(AllocatableValue src, AllocatableValue dest) {
+        moves.addMove(src, dest);
+    }
+
+    public boolean isEmpty() {
+        return moves.isEmpty();
+    }
+
+    /**
+     * @param id id of generated moves
+     * @return moves in an order that preserves parallel semantic
+     */
+    public List<LirInstr> resolve(int id) {
+        List<LirInstr> result = moves.sequence(MoveResolver::scratchFor, true);
+        for (LirInstr move : result) {
+            move.resetId(id);
+        }
+        return result;
+    }
+}
@@ -1,15 +1,26 @@
 package com.kelthuzadx.yarrow.lir.regalloc;
 
 import com.kelthuzadx.yarrow.core.YarrowError;
+import com.kelthuzadx.yarrow.core.YarrowRuntime;
 import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
 import com.kelthuzadx.yarrow.lir.Lir;
-import com.kelthuzadx.yarrow.lir.instr.LirInstr;
+import com.kelthuzadx.yarrow.lir.Mnemonic;
+import com.kelthuzadx.yarrow.lir.ParallelMove;
+import com.kelthuzadx.yarrow.lir.instr.*;
+import com.kelthuzadx.yarrow.lir.operand.Address;
 import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import com.kelthuzadx.yarrow.lir.regalloc.Interval.UseKind;
+import com.kelthuzadx.yarrow.lir.stub.RuntimeStub;
 import com.kelthuzadx.yarrow.optimize.Phase;
+import com.kelthuzadx.yarrow.util.CompilerErrors;
 import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.code.*;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.JavaValue;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.*;
 
 import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.TraceRegisterAllocation;
 
@@ -22,20 +33,165 @@ import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.TraceRegisterAll
 
 public class RegisterAlloc implements Phase {
     private final Lir lir;
-    private final HashMap<Integer, Interval> intervals;
+    // Blocks in linear scan order, operations are numbered in this order
+    private final List<BlockStartInstr> blocks;
+    // Intervals of virtual registers, indexed by operand number
+    private Interval[] intervals;
+    private int intervalCount;
+    // Intervals of physical registers, indexed by register number
+    private final Interval[] fixedIntervals;
+    private final List<Register> registers;
+    // Whether a physical register is handed out by allocator, indexed by register number
+    private final boolean[] allocatable;
+    private final Set<Register> callerSaved;
+    private int[] blockFrom;
+    private int[] blockTo;
+    // Block index of each position / 2
+    private int[] blockOfSlot;
+    private final IdentityHashMap<BlockStartInstr, Integer> blockIndex;
+    // Operand number of virtual register id, offset by the smallest id seen so far
+    private int[] operandNumbers;
+    private int minVirtualRegisterId;
+    private int[] loopDepth;
+    // Liveness sets indexed by block index then operand number
+    private BitSet[] liveGen;
+    private BitSet[] liveKill;
+    private BitSet[] liveIn;
+    private BitSet[] liveOut;
+    private int moveCount;
+    private int removedMoveCount;
 
     public RegisterAlloc(Lir lir) {
         this.lir = lir;
-        this.intervals = new HashMap<>();
+        this.blocks = lir.getBlocks();
+        this.blockIndex = new IdentityHashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            blockIndex.put(blocks.get(i), i);
+        }
+        this.operandNumbers = new int[0];
+        this.intervals = new Interval[64];
+        this.intervalCount = 0;
+        this.fixedIntervals = new Interval[YarrowRuntime.arch.getRegisters().size()];
+        this.registers = new ArrayList<>();
+        for (Register reg : YarrowRuntime.regConfig.getAllocatableRegisters()) {
+            if (reg.equals(MoveResolver.CPU_SCRATCH) || reg.equals(MoveResolver.XMM_SCRATCH)) {
+                continue;
+            }
+            if (reg.getRegisterCategory().equals(AMD64.CPU) || reg.getRegisterCategory().equals(AMD64.XMM)) {
+                registers.add(reg);
+            }
+        }
+        this.allocatable = new boolean[YarrowRuntime.arch.getRegisters().size()];
+        for (Register reg : registers) {
+            allocatable[reg.number] = true;
+        }
+        this.callerSaved = new HashSet<>();
+        for (Register reg : YarrowRuntime.regConfig.getCallerSaveRegisters()) {
+            if (allocatable[reg.number]) {
+                callerSaved.add(reg);
+            }
+        }
+        this.moveCount = 0;
+    }
+
+    /**
+     * Source of a move can be accessed on stack directly unless the destination is memory
+     */
+    private static UseKind useKindOf(LirInstr instr) {
+        if (instr instanceof Op1Instr &&
+                (instr.getMnemonic() == Mnemonic.MOV || instr.getMnemonic() == Mnemonic.VMOV)) {
+            AllocatableValue operand = ((Op1Instr) instr).operand1();
+            AllocatableValue result = instr.operandResult();
+            if (!isMemory(operand) && !isMemory(result)) {
+                return UseKind.SHOULD_HAVE_REGISTER;
+            }
+        }
+        return UseKind.MUST_HAVE_REGISTER;
+    }
+
+    /**
+     * Source and destination of a move prefer the same register, then the move is removed
+     * after allocation
+     */
+    private void addLocationHint(LirInstr instr) {
+        if (!(instr instanceof Op1Instr) ||
+                (instr.getMnemonic() != Mnemonic.MOV && instr.getMnemonic() != Mnemonic.VMOV)) {
+            return;
+        }
+        Interval dest = moveIntervalOf(instr.operandResult());
+        Interval src = moveIntervalOf(((Op1Instr) instr).operand1());
+        if (dest == null || src == null || dest == src) {
+            return;
+        }
+        if (!dest.isFixed()) {
+            dest.setLocationHint(src, instr.getId());
+        }
+        if (!src.isFixed()) {
+            src.setLocationHint(dest, instr.getId());
+        }
+    }
+
+    private Interval moveIntervalOf(AllocatableValue value) {
+        if (value instanceof XRegister) {
+            return intervalOf((XRegister) value);
+        } else if (value instanceof RegisterValue) {
+            Register reg = ((RegisterValue) value).getRegister();
+            return allocatable[reg.number] ? fixedIntervalOf(reg) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Hinted moves whose source and destination end up in the same location do nothing
+     */
+    private void removeRedundantMoves() {
+        for (BlockStartInstr block : blocks) {
+            block.getLirInstrList().removeIf(instr -> {
+                if (ParallelMove.isSelfMove(instr)) {
+                    removedMoveCount++;
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private static boolean isMemory(AllocatableValue value) {
+        return value instanceof Address || value instanceof StackSlot;
+    }
+
+    private static RuntimeStub stubOf(LirInstr instr) {
+        if (instr instanceof BranchInstr) {
+            return ((BranchInstr) instr).getStub();
+        } else if (instr instanceof JavaCheckCastInstr) {
+            return ((JavaCheckCastInstr) instr).getStub();
+        } else if (instr instanceof AllocateArrayInstr) {
+            return ((AllocateArrayInstr) instr).getStub();
+        } else if (instr instanceof JavaArrayCopyInstr) {
+            return ((JavaArrayCopyInstr) instr).getStub();
+        }
+        return null;
     }
 
     @Override
-    public Phase build() {
+    public RegisterAlloc build() {
         numberingLirInstr();
+        computeLoopDepth();
         computeLocalLiveSet();
         computeGlobalLiveSet();
         buildInterval();
-        return null;
+        new LinearScanWalker(this, registers, Arrays.asList(intervals).subList(0, intervalCount),
+                fixedIntervalList()).walk();
+        var moves = new HashMap<Integer, MoveResolver>();
+        var startMoves = new HashMap<BlockStartInstr, MoveResolver>();
+        var endMoves = new HashMap<BlockStartInstr, MoveResolver>();
+        resolveSplitMoves(moves);
+        resolveDataFlow(startMoves, endMoves);
+        assignLocations();
+        removeRedundantMoves();
+        insertMoves(moves, startMoves, endMoves);
+        lir.rebuildIndex();
+        return this;
     }
 
     private void numberingLirInstr() {
@@ -45,16 +201,127 @@ public class RegisterAlloc implements Phase {
          * where a new operation, e.g. a spill move, can be inserted. Only when more than one operation
          * is inserted at a single position, the inserted operations must be ordered such that no register
          * is overwritten.
+         *
+         * Every block additionally reserves its begin position for no operation, values that are live
+         * into block start there, so even an input of the first operation has a non-empty range.
          */
+        blockFrom = new int[blocks.size()];
+        blockTo = new int[blocks.size()];
         int opId = 0;
-        for (BlockStartInstr block : lir.getBlocks()) {
-            int id = block.id();
-            for (int i = 0; i < lir.getBlock(id).getLirInstrList().size(); i++) {
-                LirInstr instr = lir.getBlock(id).getLirInstrList().get(i);
-                instr.resetId(opId);
+        for (int i = 0; i < blocks.size(); i++) {
+            var instrList = blocks.get(i).getLirInstrList();
+            YarrowError.guarantee(!instrList.isEmpty(), "Block must end with jump");
+            blockFrom[i] = opId;
+            for (LirInstr instr : instrList) {
                 opId += 2;
+                instr.resetId(opId);
             }
+            opId += 2;
+            blockTo[i] = opId;
         }
+        // Every even position belongs to the block that covers it, odd positions belong to the
+        // block of the previous even position
+        blockOfSlot = new int[Math.max(opId / 2, 1)];
+        for (int i = 0; i < blocks.size(); i++) {
+            Arrays.fill(blockOfSlot, blockFrom[i] / 2, blockTo[i] / 2, i);
+        }
+        lir.rebuildIndex();
+    }
+
+    /**
+     * A backward branch in linear order marks a loop, every block between its target and source
+     * is considered inside that loop
+     */
+    private void computeLoopDepth() {
+        loopDepth = new int[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            for (BlockStartInstr succ : blocks.get(i).getBlockEnd().getSuccessor()) {
+                int header = indexOf(succ);
+                if (header != -1 && header <= i) {
+                    for (int k = header; k <= i; k++) {
+                        loopDepth[k]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return index of block in linear order, or -1 if block has no LIR
+     */
+    private int indexOf(BlockStartInstr block) {
+        return blockIndex.getOrDefault(block, -1);
+    }
+
+    private Interval intervalOf(XRegister reg) {
+        if (reg.isVirtualRegister()) {
+            return intervals[operandNumberOf(reg)];
+        }
+        Register physical = reg.getRegister();
+        if (!allocatable[physical.number]) {
+            // Not allocatable, e.g. stack pointer or scratch register
+            return null;
+        }
+        return fixedIntervalOf(physical);
+    }
+
+    private Interval fixedIntervalOf(Register reg) {
+        if (fixedIntervals[reg.number] == null) {
+            fixedIntervals[reg.number] = new Interval(reg.number, null, true);
+            fixedIntervals[reg.number].setLocation(new XRegister(reg));
+        }
+        return fixedIntervals[reg.number];
+    }
+
+    private List<Interval> fixedIntervalList() {
+        var list = new ArrayList<Interval>();
+        for (Interval interval : fixedIntervals) {
+            if (interval != null) {
+                list.add(interval);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Virtual register ids grow across compilations, intervals and liveness sets are indexed by
+     * a dense operand number that is assigned in order of first occurrence
+     */
+    private int operandNumberOf(XRegister reg) {
+        int id = reg.getVirtualRegisterId();
+        if (operandNumbers.length == 0) {
+            minVirtualRegisterId = id;
+        }
+        if (id < minVirtualRegisterId) {
+            int shift = minVirtualRegisterId - id;
+            int[] table = new int[operandNumbers.length + shift];
+            Arrays.fill(table, 0, shift, -1);
+            System.arraycopy(operandNumbers, 0, table, shift, operandNumbers.length);
+            operandNumbers = table;
+            minVirtualRegisterId = id;
+        }
+        int index = id - minVirtualRegisterId;
+        if (index >= operandNumbers.length) {
+            int oldLength = operandNumbers.length;
+            operandNumbers = Arrays.copyOf(operandNumbers, Math.max(oldLength * 2, index + 64));
+            Arrays.fill(operandNumbers, oldLength, operandNumbers.length, -1);
+        }
+        if (operandNumbers[index] == -1) {
+            if (intervalCount == intervals.length) {
+                intervals = Arrays.copyOf(intervals, intervals.length * 2);
+            }
+            intervals[intervalCount] = new Interval(id, reg.getValueKind(), false);
+            operandNumbers[index] = intervalCount++;
+        }
+        return operandNumbers[index];
+    }
+
+    private String stringify(BitSet liveSet) {
+        StringJoiner sj = new StringJoiner(", ", "[", "]");
+        for (int n = liveSet.nextSetBit(0); n >= 0; n = liveSet.nextSetBit(n + 1)) {
+            sj.add("v" + intervals[n].getOperandNumber());
+        }
+        return sj.toString();
     }
 
     private void computeLocalLiveSet() {
@@ -62,39 +329,95 @@ public class RegisterAlloc implements Phase {
          * live_gen contains all operands that used in this block before they are defined, so they must be
          * defined somewhere in a predecessor. The set live_kill contains all operands that are defined in the
          * block, so a possible value of a predecessor is overwritten.
+         *
+         * Physical registers are not tracked, so a value in a physical register must never live past
+         * a block: except for incoming parameters at method entry, it's read only after it's written
+         * in the same block.
          */
+        liveGen = new BitSet[blocks.size()];
+        liveKill = new BitSet[blocks.size()];
         var visitor = new InstrStateVisitor();
-        for (BlockStartInstr block : lir.getBlocks()) {
-            int id = block.id();
-            for (int i = 0; i < lir.getBlock(id).getLirInstrList().size(); i++) {
+        for (int i = 0; i < blocks.size(); i++) {
+            BitSet gen = liveGen[i] = new BitSet();
+            BitSet kill = liveKill[i] = new BitSet();
+            BitSet fixedKill = new BitSet();
+            for (LirInstr instr : blocks.get(i).getLirInstrList()) {
                 visitor.reset();
-                LirInstr instr = lir.getBlock(id).getLirInstrList().get(i);
-                instr.visit(visitor);
+                visitor.collect(instr);
                 for (XRegister value : visitor.getInput()) {
-                    if (value.isVirtualRegister() &&
-                            !block.liveKill().contains(value.getVirtualRegisterId())) {
-                        block.liveGen().add(value.getVirtualRegisterId());
-                    }
+                    useLocal(value, gen, kill, fixedKill, i);
+                }
+                for (XRegister value : visitor.getState()) {
+                    useLocal(value, gen, kill, fixedKill, i);
                 }
                 for (XRegister value : visitor.getTemp()) {
-                    if (value.isVirtualRegister()) {
-                        block.liveKill().add(value.getVirtualRegisterId());
-                    }
+                    defineLocal(value, kill, fixedKill);
                 }
                 for (XRegister value : visitor.getOutput()) {
-                    if (value.isVirtualRegister()) {
-                        block.liveKill().add(value.getVirtualRegisterId());
-
-                    }
+                    defineLocal(value, kill, fixedKill);
                 }
             }
             if (TraceRegisterAllocation) {
                 Logger.logf("=====Block {} live_gen {}, liven_kill {}",
-                        String.valueOf(block.id()),
-                        block.liveGen().toString(),
-                        block.liveKill().toString());
+                        String.valueOf(blocks.get(i).id()), stringify(gen), stringify(kill));
+            }
+        }
+    }
+
+    private void useLocal(XRegister value, BitSet gen, BitSet kill, BitSet fixedKill, int block) {
+        if (intervalOf(value) == null) {
+            return;
+        }
+        if (value.isVirtualRegister()) {
+            if (!kill.get(operandNumberOf(value))) {
+                gen.set(operandNumberOf(value));
+            }
+        } else {
+            YarrowError.guarantee(block == 0 || fixedKill.get(value.getRegister().number),
+                    "Physical register is live into block");
+        }
+    }
+
+    private void defineLocal(XRegister value, BitSet kill, BitSet fixedKill) {
+        if (intervalOf(value) == null) {
+            return;
+        }
+        if (value.isVirtualRegister()) {
+            kill.set(operandNumberOf(value));
+        } else {
+            fixedKill.set(value.getRegister().number);
+        }
+    }
+
+    /**
+     * Successors come before their predecessors in post order, except for back edges
+     */
+    private List<Integer> postOrder() {
+        var order = new ArrayList<Integer>();
+        var visited = new BitSet(blocks.size());
+        for (int root = 0; root < blocks.size(); root++) {
+            if (visited.get(root)) {
+                continue;
+            }
+            // Explicit stack of (block, next successor) pairs
+            var stack = new ArrayDeque<int[]>();
+            stack.push(new int[]{root, 0});
+            visited.set(root);
+            while (!stack.isEmpty()) {
+                int[] top = stack.peek();
+                var successors = blocks.get(top[0]).getBlockEnd().getSuccessor();
+                if (top[1] < successors.size()) {
+                    int succ = indexOf(successors.get(top[1]++));
+                    if (succ != -1 && !visited.get(succ)) {
+                        visited.set(succ);
+                        stack.push(new int[]{succ, 0});
+                    }
+                } else {
+                    order.add(stack.pop()[0]);
+                }
             }
         }
+        return order;
     }
 
     private void computeGlobalLiveSet() {
@@ -103,37 +426,55 @@ public class RegisterAlloc implements Phase {
          * value can be generated at a control flow edge, all operands that live at the beginning of a
          * successors must also be live at the end of the current block. The live_in set is then calculated
          * from the live_out set using live_kill and live_gen.
+         *
+         * Blocks are visited in post order so that most successors are done before their predecessors,
+         * a block is visited again only if live_in of one of its successors grows.
          */
-        boolean changed;
-        int iterCount = 0;
-        do {
-            changed = false;
-            var blocks = lir.getBlocks();
-            for (int i = blocks.size() - 1; i >= 0; i--) {
-                var block = lir.getBlocks().get(i);
-                var oldLiveOut = new HashSet<>(block.liveOut());
-                for (BlockStartInstr succ : block.getBlockEnd().getSuccessor()) {
-                    block.liveOut().addAll(succ.livenIn());
-                }
-                if (!oldLiveOut.equals(block.liveOut())) {
-                    changed = true;
-                }
-                if (iterCount == 0 || changed) {
-                    var temp = new HashSet<>(block.liveOut());
-                    temp.removeAll(block.liveKill());
-                    temp.addAll(block.liveGen());
-                    block.livenIn().clear();
-                    block.livenIn().addAll(temp);
-                    if (TraceRegisterAllocation) {
-                        Logger.logf("=====Block {} live_in {}, liven_out {}",
-                                String.valueOf(block.id()),
-                                block.livenIn().toString(),
-                                block.liveOut().toString());
-                    }
+        liveIn = new BitSet[blocks.size()];
+        liveOut = new BitSet[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            liveIn[i] = new BitSet();
+            liveOut[i] = new BitSet();
+        }
+        var workList = new ArrayDeque<>(postOrder());
+        var inWorkList = new BitSet(blocks.size());
+        inWorkList.set(0, blocks.size());
+        var newLiveIn = new BitSet();
+        while (!workList.isEmpty()) {
+            int i = workList.poll();
+            inWorkList.clear(i);
+            var block = blocks.get(i);
+            for (BlockStartInstr succ : block.getBlockEnd().getSuccessor()) {
+                int k = indexOf(succ);
+                if (k != -1) {
+                    liveOut[i].or(liveIn[k]);
+                }
+            }
+            newLiveIn.clear();
+            newLiveIn.or(liveOut[i]);
+            newLiveIn.andNot(liveKill[i]);
+            newLiveIn.or(liveGen[i]);
+            if (newLiveIn.equals(liveIn[i])) {
+                continue;
+            }
+            liveIn[i].or(newLiveIn);
+            for (BlockStartInstr pred : block.getPredecessor()) {
+                int k = indexOf(pred);
+                if (k != -1 && !inWorkList.get(k)) {
+                    inWorkList.set(k);
+                    workList.add(k);
                 }
             }
-            iterCount++;
-        } while (changed);
+        }
+        if (TraceRegisterAllocation) {
+            for (int i = 0; i < blocks.size(); i++) {
+                Logger.logf("=====Block {} live_in {}, liven_out {}",
+                        String.valueOf(blocks.get(i).id()), stringify(liveIn[i]), stringify(liveOut[i]));
+            }
+        }
+        if (!blocks.isEmpty() && !liveIn[0].isEmpty()) {
+            CompilerErrors.bailOut("Value is used before definition: " + stringify(liveIn[0]));
+        }
     }
 
     private void buildInterval() {
@@ -148,42 +489,284 @@ public class RegisterAlloc implements Phase {
          * block. If the operand is defined in the block, then the range is shortened to the definition
          * position later.
          */
-        for (int i = lir.getBlocks().size() - 1; i >= 0; i--) {
-            var block = lir.getBlocks().get(i);
+        var visitor = new InstrStateVisitor();
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            var block = blocks.get(i);
             var instrList = block.getLirInstrList();
-            int blockFrom = instrList.get(0).getId();
-            int blockTo = instrList.get(instrList.size() - 1).getId() + 2;
-            if (blockFrom > blockTo) {
-                YarrowError.shouldNotReachHere();
-            }
-            // Logger.logf("B{}:",block.getBlockId());
-            for (Integer id : block.liveOut()) {
-                var interval = new Interval();
-                interval.addRange(blockFrom, blockTo);
-                intervals.put(id, interval);
-
-                //System.out.println("\tv" + id + ":" + interval);
+            int from = blockFrom[i];
+            int to = blockTo[i];
+            for (int n = liveOut[i].nextSetBit(0); n >= 0; n = liveOut[i].nextSetBit(n + 1)) {
+                intervals[n].addRange(from, to);
             }
 
             // Reverse order
             for (int k = instrList.size() - 1; k >= 0; k--) {
-                InstrStateVisitor visitor = new InstrStateVisitor();
-                instrList.get(k).visit(visitor);
+                LirInstr instr = instrList.get(k);
+                int opId = instr.getId();
+                visitor.reset();
+                visitor.collect(instr);
+                UseKind useKind = useKindOf(instr);
+                addLocationHint(instr);
 
                 if (visitor.hasCall()) {
-                    //TODO: destroy all physical registers
+                    // Caller saved registers are destroyed by call
+                    for (Register reg : callerSaved) {
+                        fixedIntervalOf(reg).addRange(opId, opId + 1);
+                    }
                 }
-
-                for (XRegister value : visitor.getInput()) {
+                for (XRegister value : visitor.getOutput()) {
+                    Interval interval = intervalOf(value);
+                    if (interval != null) {
+                        interval.setFrom(opId);
+                        interval.addUsePosition(opId, UseKind.MUST_HAVE_REGISTER);
+                    }
                 }
                 for (XRegister value : visitor.getTemp()) {
+                    Interval interval = intervalOf(value);
+                    if (interval != null) {
+                        interval.addRange(opId, opId + 1);
+                        interval.addUsePosition(opId, UseKind.MUST_HAVE_REGISTER);
+                    }
+                }
+                for (XRegister value : visitor.getInput()) {
+                    Interval interval = intervalOf(value);
+                    if (interval != null) {
+                        interval.addRange(from, opId);
+                        interval.addUsePosition(opId, useKind);
+                    }
+                }
+                for (XRegister value : visitor.getState()) {
+                    // Debug info only needs value somewhere, it's alive across the operation
+                    Interval interval = intervalOf(value);
+                    if (interval != null) {
+                        interval.addRange(from, opId + 1);
+                    }
                 }
+            }
+        }
+    }
+
+    private int blockIndexOf(int position) {
+        return blockOfSlot[Math.min(position / 2, blockOfSlot.length - 1)];
+    }
+
+    private boolean isBlockBegin(int position) {
+        return Arrays.binarySearch(blockFrom, position) >= 0;
+    }
+
+    /**
+     * Find a position in [min, max] to split an interval. Splitting at block boundary of an
+     * outer loop avoids moves inside loops. An odd position means moves are inserted before
+     * the next operation, a block begin position means moves are left to data flow resolution.
+     */
+    int findSplitPos(int min, int max) {
+        int optimal = max;
+        if (min < max) {
+            int minBlock = blockIndexOf(min - 1);
+            int maxBlock = blockIndexOf(max - 1);
+            if (minBlock != maxBlock) {
+                optimal = blockTo[maxBlock] <= max ? blockTo[maxBlock] : blockFrom[maxBlock];
+                int minDepth = loopDepth[maxBlock];
+                for (int i = maxBlock - 1; i >= minBlock; i--) {
+                    if (loopDepth[i] < minDepth) {
+                        minDepth = loopDepth[i];
+                        optimal = blockTo[i];
+                    }
+                }
+            }
+        }
+        if (!isBlockBegin(optimal) && optimal % 2 == 0) {
+            optimal--;
+        }
+        return optimal;
+    }
+
+    /**
+     * All split children of an interval share the same spill slot
+     */
+    StackSlot spillSlotOf(Interval interval) {
+        if (interval.getSpillSlot() == null) {
+            interval.setSpillSlot(lir.getFrameMap().allocateSpillSlot(interval.getKind()));
+        }
+        return interval.getSpillSlot();
+    }
+
+    /**
+     * Adjacent split children reside in different locations, value is moved at split position
+     * unless position is a block begin, which is handled by data flow resolution
+     */
+    private void resolveSplitMoves(Map<Integer, MoveResolver> moves) {
+        for (int n = 0; n < intervalCount; n++) {
+            Interval parent = intervals[n];
+            Interval prev = parent;
+            for (Interval child : parent.getSplitChildren()) {
+                if (!prev.isEmpty() && !child.isEmpty() && prev.to() == child.from() &&
+                        !isBlockBegin(child.from())) {
+                    // Child that starts right at an operation is moved before the operation too
+                    int opId = child.from() % 2 == 1 ? child.from() + 1 : child.from();
+                    moves.computeIfAbsent(opId, k -> new MoveResolver())
+                            .addMove(prev.getLocation(), child.getLocation());
+                }
+                prev = child;
+            }
+        }
+    }
+
+    /**
+     * Value may reside in different locations at the end of predecessor and the begin of
+     * successor, moves are inserted on control flow edge
+     */
+    private void resolveDataFlow(Map<BlockStartInstr, MoveResolver> startMoves,
+                                 Map<BlockStartInstr, MoveResolver> endMoves) {
+        for (int i = 0; i < blocks.size(); i++) {
+            BlockStartInstr block = blocks.get(i);
+            var successors = block.getBlockEnd().getSuccessor();
+            for (BlockStartInstr succ : successors) {
+                int k = indexOf(succ);
+                var resolver = new MoveResolver();
+                for (int n = liveIn[k].nextSetBit(0); n >= 0; n = liveIn[k].nextSetBit(n + 1)) {
+                    Interval parent = intervals[n];
+                    AllocatableValue src = parent.getSplitChildAt(blockTo[i] - 1).getLocation();
+                    AllocatableValue dest = parent.getSplitChildAt(blockFrom[k]).getLocation();
+                    resolver.addMove(src, dest);
+                }
+                if (resolver.isEmpty()) {
+                    continue;
+                }
+                if (successors.size() == 1) {
+                    endMoves.put(block, resolver);
+                } else {
+                    YarrowError.guarantee(succ.getPredecessor().size() == 1, "Critical edge must be split");
+                    startMoves.put(succ, resolver);
+                }
+            }
+        }
+    }
+
+    private AllocatableValue locationOf(AllocatableValue value, int opId) {
+        return locationOf(value, opId, null);
+    }
+
+    /**
+     * @param written operand numbers of outputs and temps at opId, others are looked up as
+     *                inputs, or null if value is not an operand of the operation
+     */
+    private AllocatableValue locationOf(AllocatableValue value, int opId, BitSet written) {
+        if (value instanceof XRegister && ((XRegister) value).isVirtualRegister()) {
+            int operandNumber = operandNumberOf((XRegister) value);
+            boolean input = written != null && !written.get(operandNumber);
+            return intervals[operandNumber].getSplitChildAt(opId, input).getLocation();
+        } else if (value instanceof Address) {
+            var address = (Address) value;
+            return new Address(locationOf(address.getBase(), opId, written), locationOf(address.getIndex(), opId, written),
+                    address.getScale(), address.getDisplacement(), address.getType());
+        }
+        return value;
+    }
+
+    private DebugInfo locationOf(DebugInfo info, int opId) {
+        if (info == null) {
+            return null;
+        }
+        return new DebugInfo(locationOf(info.frame(), opId), info.getVirtualObjectMapping());
+    }
+
+    private BytecodeFrame locationOf(BytecodeFrame frame, int opId) {
+        if (frame == null) {
+            return null;
+        }
+        var values = new JavaValue[frame.values.length];
+        for (int i = 0; i < values.length; i++) {
+            JavaValue value = frame.values[i];
+            if (value instanceof StackLockValue) {
+                var lock = (StackLockValue) value;
+                JavaValue owner = lock.getOwner() instanceof AllocatableValue ?
+                        locationOf((AllocatableValue) lock.getOwner(), opId) : lock.getOwner();
+                value = new StackLockValue(owner, (AllocatableValue) lock.getSlot(), lock.isEliminated());
+            } else if (value instanceof AllocatableValue) {
+                value = locationOf((AllocatableValue) value, opId);
+            }
+            values[i] = value;
+        }
+        var slotKinds = new JavaKind[frame.numLocals + frame.numStack];
+        for (int i = 0; i < frame.numLocals; i++) {
+            slotKinds[i] = frame.getLocalValueKind(i);
+        }
+        for (int i = 0; i < frame.numStack; i++) {
+            slotKinds[frame.numLocals + i] = frame.getStackValueKind(i);
+        }
+        return new BytecodeFrame(locationOf(frame.caller(), opId), frame.getMethod(), frame.getBCI(),
+                frame.rethrowException, frame.duringCall, values, slotKinds,
+                frame.numLocals, frame.numStack, frame.numLocks);
+    }
+
+    /**
+     * Replace virtual registers with their locations at each operation, including values
+     * referenced by debug info
+     */
+    private void assignLocations() {
+        var visitor = new InstrStateVisitor();
+        for (BlockStartInstr block : blocks) {
+            for (LirInstr instr : block.getLirInstrList()) {
+                int opId = instr.getId();
+                // Value that is split right at an operation is read there from the split child
+                // before it, what the operation writes goes to the split child after it
+                visitor.reset();
+                visitor.collect(instr);
+                var written = new BitSet();
                 for (XRegister value : visitor.getOutput()) {
+                    if (value.isVirtualRegister()) {
+                        written.set(operandNumberOf(value));
+                    }
+                }
+                for (XRegister value : visitor.getTemp()) {
+                    if (value.isVirtualRegister()) {
+                        written.set(operandNumberOf(value));
+                    }
+                }
+                instr.forEachOperand(value -> locationOf(value, opId, written));
+                instr.setDebugInfo(locationOf(instr.getDebugInfo(), opId));
+                RuntimeStub stub = stubOf(instr);
+                if (stub != null) {
+                    stub.setDebugInfo(locationOf(stub.getDebugInfo(), opId));
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves on incoming edge happen first, then moves at split positions before each operation,
+     * moves on outgoing edge are placed right before the final jump
+     */
+    private void insertMoves(Map<Integer, MoveResolver> moves, Map<BlockStartInstr, MoveResolver> startMoves,
+                             Map<BlockStartInstr, MoveResolver> endMoves) {
+        for (BlockStartInstr block : blocks) {
+            var instrList = block.getLirInstrList();
+            var newList = new ArrayList<LirInstr>();
+            for (int i = 0; i < instrList.size(); i++) {
+                LirInstr instr = instrList.get(i);
+                int opId = instr.getId();
+                if (i == 0 && startMoves.containsKey(block)) {
+                    newList.addAll(startMoves.get(block).resolve(opId - 1));
                 }
+                if (moves.containsKey(opId)) {
+                    newList.addAll(moves.get(opId).resolve(opId - 1));
+                }
+                if (i == instrList.size() - 1 && endMoves.containsKey(block)) {
+                    newList.addAll(endMoves.get(block).resolve(opId - 1));
+                }
+                newList.add(instr);
             }
+            moveCount += newList.size() - instrList.size();
+            instrList.clear();
+            instrList.addAll(newList);
         }
     }
 
+    public Lir getLir() {
+        return lir;
+    }
+
     @Override
     public String name() {
         return "Register Allocation";
@@ -191,6 +774,18 @@ public class RegisterAlloc implements Phase {
 
     @Override
     public void log() {
-
+        if (TraceRegisterAllocation) {
+            Logger.logf("=====Phase: {}=====", name());
+            for (int n = 0; n < intervalCount; n++) {
+            Interval parent = intervals[n];
+                Logger.logf("{}", parent.toString());
+                for (Interval child : parent.getSplitChildren()) {
+                    Logger.logf("\t{}", child.toString());
+                }
+            }
+            Logger.logf("Inserted {} moves, removed {} redundant moves, frame size {}",
+                    moveCount, removedMoveCount, lir.getFrameMap().getFrameSize());
+            lir.printLir();
+        }
     }
 }
@@ -0,0 +1,41 @@
+package com.kelthuzadx.yarrow.lir.stub;
+
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.JavaMethod;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Slow path of inline array copy, it calls the real System.arraycopy which
+ * throws proper exceptions for illegal arguments.
+ */
+public class ArrayCopyStub extends RuntimeStub {
+    private final JavaMethod method;
+    private final AllocatableValue[] arguments;
+
+    public ArrayCopyStub(JavaMethod method, AllocatableValue[] arguments) {
+        super(null);
+        this.method = method;
+        this.arguments = arguments;
+    }
+
+    public JavaMethod getMethod() {
+        return method;
+    }
+
+    public AllocatableValue[] getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = proc.apply(arguments[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return method.getDeclaringClass().getUnqualifiedName() + "." + method.getName();
+    }
+}
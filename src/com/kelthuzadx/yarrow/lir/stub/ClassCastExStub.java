@@ -2,12 +2,19 @@ package com.kelthuzadx.yarrow.lir.stub;
 
 import jdk.vm.ci.meta.AllocatableValue;
 
+import java.util.function.UnaryOperator;
+
 public class ClassCastExStub extends RuntimeStub {
-    private final AllocatableValue result;
+    private AllocatableValue result;
     private VmStub stub;
 
     public ClassCastExStub(AllocatableValue result) {
         super(VmStub.StubThrowClassCastException);
         this.result = result;
     }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        result = proc.apply(result);
+    }
 }
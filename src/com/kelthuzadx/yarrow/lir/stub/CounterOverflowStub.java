@@ -0,0 +1,40 @@
+package com.kelthuzadx.yarrow.lir.stub;
+
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Notify compilation policy that invocation or backedge counter of a method overflows its
+ * notification mask, runtime may then compile the method at a higher tier or request OSR
+ */
+public class CounterOverflowStub extends RuntimeStub {
+    private AllocatableValue counters;
+    // Bci of backward branch and its target, -1 for invocation event
+    private final int bci;
+    private final int targetBci;
+
+    public CounterOverflowStub(AllocatableValue counters) {
+        super(VmStub.StubInvocationEvent);
+        this.counters = counters;
+        this.bci = -1;
+        this.targetBci = -1;
+    }
+
+    public CounterOverflowStub(AllocatableValue counters, int bci, int targetBci) {
+        super(VmStub.StubBackedgeEvent);
+        this.counters = counters;
+        this.bci = bci;
+        this.targetBci = targetBci;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        counters = proc.apply(counters);
+    }
+
+    @Override
+    public String toString() {
+        return stub.toString();
+    }
+}
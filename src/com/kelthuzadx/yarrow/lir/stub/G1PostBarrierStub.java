@@ -0,0 +1,29 @@
+package com.kelthuzadx.yarrow.lir.stub;
+
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Slow path of G1 post-barrier, it's entered only when a non-null value is stored across
+ * regions. Card of young region is left alone, otherwise card is dirtied and enqueued to
+ * dirty card queue of current thread unless it's already dirty
+ */
+public class G1PostBarrierStub extends RuntimeStub {
+    private AllocatableValue cardAddress;
+
+    public G1PostBarrierStub(AllocatableValue cardAddress) {
+        super(VmStub.StubWriteBarrierPost);
+        this.cardAddress = cardAddress;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        cardAddress = proc.apply(cardAddress);
+    }
+
+    @Override
+    public String toString() {
+        return stub.toString();
+    }
+}
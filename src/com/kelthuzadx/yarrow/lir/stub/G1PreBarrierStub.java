@@ -0,0 +1,34 @@
+package com.kelthuzadx.yarrow.lir.stub;
+
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Slow path of G1 SATB pre-barrier, it's entered only when concurrent marking is active.
+ * Previous value is loaded from the address if it's not known yet, non-null previous value
+ * is enqueued to SATB mark queue of current thread
+ */
+public class G1PreBarrierStub extends RuntimeStub {
+    // Address to load previous value from, or illegal if previous value is already loaded
+    private AllocatableValue address;
+    // Previous value, or illegal if stub loads it from address into a scratch register
+    private AllocatableValue preValue;
+
+    public G1PreBarrierStub(AllocatableValue address, AllocatableValue preValue) {
+        super(VmStub.StubWriteBarrierPre);
+        this.address = address;
+        this.preValue = preValue;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        address = proc.apply(address);
+        preValue = proc.apply(preValue);
+    }
+
+    @Override
+    public String toString() {
+        return stub.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.kelthuzadx.yarrow.lir.stub;
+
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
+
+public class MonitorEnterStub extends RuntimeStub {
+    private AllocatableValue object;
+    private AllocatableValue lock;
+
+    public MonitorEnterStub(AllocatableValue object, AllocatableValue lock) {
+        super(VmStub.StubMonitorenter);
+        this.object = object;
+        this.lock = lock;
+    }
+
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        object = proc.apply(object);
+        lock = proc.apply(lock);
+    }
+
+    @Override
+    public String toString() {
+        return stub.toString();
+    }
+}
@@ -1,10 +1,13 @@
 package com.kelthuzadx.yarrow.lir.stub;
 
 import com.kelthuzadx.yarrow.lir.operand.XRegister;
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
 
 public class NewArrayStub extends RuntimeStub {
-    private final XRegister length;
-    private final XRegister klass;
+    private AllocatableValue length;
+    private AllocatableValue klass;
     private final XRegister ret;
 
     public NewArrayStub(XRegister length, XRegister klass, XRegister ret) {
@@ -14,6 +17,13 @@ public class NewArrayStub extends RuntimeStub {
         this.ret = ret;
     }
 
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        // ret is written by runtime
+        length = proc.apply(length);
+        klass = proc.apply(klass);
+    }
+
     @Override
     public String toString() {
         return stub.toString();
@@ -2,10 +2,13 @@ package com.kelthuzadx.yarrow.lir.stub;
 
 import com.kelthuzadx.yarrow.lir.operand.XRegister;
 import jdk.vm.ci.hotspot.HotSpotResolvedObjectType;
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
 
 public class NewInstanceStub extends RuntimeStub {
     private final HotSpotResolvedObjectType klassType;
-    private final XRegister klass;
+    private AllocatableValue klass;
     private final XRegister ret;
 
     public NewInstanceStub(HotSpotResolvedObjectType klassType, XRegister klass, XRegister ret) {
@@ -15,6 +18,12 @@ public class NewInstanceStub extends RuntimeStub {
         this.ret = ret;
     }
 
+    @Override
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+        // ret is written by runtime
+        klass = proc.apply(klass);
+    }
+
     @Override
     public String toString() {
         return stub.toString();
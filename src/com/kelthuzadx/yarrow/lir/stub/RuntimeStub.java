@@ -1,12 +1,18 @@
 package com.kelthuzadx.yarrow.lir.stub;
 
 import com.kelthuzadx.yarrow.lir.instr.LabelInstr;
+import jdk.vm.ci.code.DebugInfo;
+import jdk.vm.ci.meta.AllocatableValue;
+
+import java.util.function.UnaryOperator;
 
 @SuppressWarnings("unused")
 public class RuntimeStub {
     private final LabelInstr trampoline;
     private final LabelInstr continuation;
     protected VmStub stub;
+    // Interpreter state when runtime is entered, runtime may deoptimize caller or throw
+    private DebugInfo debugInfo;
 
     public RuntimeStub(VmStub stub) {
         this.stub = stub;
@@ -22,4 +28,19 @@ public class RuntimeStub {
     public LabelInstr getContinuation() {
         return continuation;
     }
+
+    public DebugInfo getDebugInfo() {
+        return debugInfo;
+    }
+
+    public void setDebugInfo(DebugInfo debugInfo) {
+        this.debugInfo = debugInfo;
+    }
+
+    /**
+     * Apply proc to values that slow path reads and store back what it returns, they must be
+     * live where the stub is entered
+     */
+    public void forEachOperand(UnaryOperator<AllocatableValue> proc) {
+    }
 }
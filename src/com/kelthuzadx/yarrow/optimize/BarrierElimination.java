@@ -0,0 +1,118 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.core.YarrowConfigAccess;
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.instr.*;
+import com.kelthuzadx.yarrow.util.Logger;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+
+/**
+ * Find stores into objects that are allocated in the same block with no safepoint in between:
+ * <pre>
+ *     p = new Point        // young and not yet seen by concurrent marking
+ *     p.x = a              // no barrier
+ *     foo()                // GC may happen here
+ *     p.y = b              // barrier
+ * </pre>
+ * GC can not run until the next safepoint, so the object stays young and its fields are not
+ * visited by marking. This relies on runtime deferring card marks of objects allocated in
+ * slow path, i.e. ReduceInitialCardMarks.
+ * <p>
+ * G1 SATB pre barrier is dropped as well. That is sound only because the previous value is
+ * always null, i.e. it's the first store into that field or constant index, and no safepoint
+ * intervenes, so concurrent marking can not start in between. multianewarray fills its outer
+ * array with subarrays and may reach a safepoint after allocating it, so it's never fresh.
+ *
+ * @author kelthuzadx
+ */
+public class BarrierElimination implements Phase {
+    private final Hir hir;
+    private int elidedCount;
+
+    public BarrierElimination(Hir hir) {
+        this.hir = hir;
+        this.elidedCount = 0;
+    }
+
+    private static boolean isAllocation(HirInstr instr) {
+        return instr instanceof NewInstr || instr instanceof NewTypeArrayInstr ||
+                instr instanceof NewObjectArrayInstr || instr instanceof NewMultiArrayInstr;
+    }
+
+    /**
+     * @param slot field offset or constant array index
+     * @return true if object is fresh and slot of it still holds null
+     */
+    private static boolean isFirstStore(Map<HirInstr, Set<Integer>> fresh, HirInstr object, int slot) {
+        Set<Integer> stored = fresh.get(object);
+        return stored != null && stored.add(slot);
+    }
+
+    /**
+     * Instructions that call into runtime may block at safepoint
+     */
+    private static boolean maySafepoint(HirInstr instr) {
+        return isAllocation(instr) || instr instanceof CallInstr || instr instanceof MonitorEnterInstr ||
+                instr instanceof MonitorExitInstr || instr instanceof ArrayCopyInstr ||
+                instr instanceof CheckCastInstr || instr instanceof DeoptimizeInstr;
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public BarrierElimination build() {
+        if (!YarrowProperties.Optimize.BarrierElimination || !YarrowConfigAccess.access().reduceInitialCardMarks) {
+            return this;
+        }
+        for (BlockStartInstr block : hir.getBlocks()) {
+            // Fresh objects and slots of them that have been stored into
+            Map<HirInstr, Set<Integer>> fresh = new IdentityHashMap<>();
+            for (HirInstr instr = block.getNext(); instr != null && instr != block.getBlockEnd(); instr = instr.getNext()) {
+                if (instr instanceof StoreFieldInstr) {
+                    var store = (StoreFieldInstr) instr;
+                    if (isFirstStore(fresh, store.getObject(), store.getOffset())) {
+                        store.setInitializingStore(true);
+                        elidedCount++;
+                    }
+                } else if (instr instanceof StoreIndexInstr && ((StoreIndexInstr) instr).getIndex() instanceof ConstantInstr) {
+                    var store = (StoreIndexInstr) instr;
+                    if (isFirstStore(fresh, store.getArray(), ((ConstantInstr) store.getIndex()).getConstant().asInt())) {
+                        store.setInitializingStore(true);
+                        elidedCount++;
+                    }
+                }
+                // Both barriers may be dropped only while marking can not start, see above
+                if (maySafepoint(instr)) {
+                    fresh.clear();
+                }
+                if (isAllocation(instr) && !(instr instanceof NewMultiArrayInstr)) {
+                    fresh.put(instr, new HashSet<>());
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public String name() {
+        return "Barrier elimination";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Found {} initializing stores", elidedCount);
+            hir.printHIR(false);
+        }
+    }
+}
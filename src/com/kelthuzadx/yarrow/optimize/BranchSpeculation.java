@@ -0,0 +1,109 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.VmState;
+import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
+import com.kelthuzadx.yarrow.hir.instr.DeoptimizeInstr;
+import com.kelthuzadx.yarrow.hir.instr.IfInstr;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.DeoptimizationAction;
+import jdk.vm.ci.meta.DeoptimizationReason;
+import jdk.vm.ci.meta.ProfilingInfo;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+
+/**
+ * Speculate that a branch interpreter has never taken stays untaken. Its edge is redirected
+ * to an uncommon trap, blocks that are only reachable through it are removed by dead code
+ * elimination later:
+ * <pre>
+ *     if (cond) {          if (cond) {
+ *         rare();     =>       deoptimize  // interpreter resumes at rare()
+ *     }                    }
+ * </pre>
+ * Trap invalidates compiled code and requests reprofiling, so a wrong guess costs one
+ * recompilation.
+ *
+ * @author kelthuzadx
+ */
+public class BranchSpeculation implements Phase {
+    // Branch must have been executed this many times before its profile is trusted
+    private static final int MIN_EXECUTION_COUNT = 100;
+
+    private final Hir hir;
+    private int speculatedCount;
+
+    public BranchSpeculation(Hir hir) {
+        this.hir = hir;
+        this.speculatedCount = 0;
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public BranchSpeculation build() {
+        // Profiling tier must not speculate on profiles it's still collecting
+        if (!YarrowProperties.Optimize.BranchSpeculation || YarrowProperties.Tier.ProfileCompiledCode) {
+            return this;
+        }
+        ProfilingInfo profile = hir.getMethod().getProfilingInfo();
+        for (BlockStartInstr block : hir.getBlocks()) {
+            if (!(block.getBlockEnd() instanceof IfInstr)) {
+                continue;
+            }
+            IfInstr test = (IfInstr) block.getBlockEnd();
+            int bci = test.getVmState().getBci();
+            if (bci < 0 || profile.getExecutionCount(bci) < MIN_EXECUTION_COUNT ||
+                    test.getSuccessor().get(0) == test.getSuccessor().get(1)) {
+                continue;
+            }
+            // True successor is the jump target of branch bytecode
+            double takenProbability = profile.getBranchTakenProbability(bci);
+            if (takenProbability == 0.0) {
+                speculate(block, test, 0);
+            } else if (takenProbability == 1.0) {
+                speculate(block, test, 1);
+            }
+        }
+        return this;
+    }
+
+    private void speculate(BlockStartInstr block, IfInstr test, int untaken) {
+        BlockStartInstr target = test.getSuccessor().get(untaken);
+        // State after the branch is what flows into the untaken successor, interpreter resumes
+        // at its first bytecode. Phis of the successor can't be used, they are not defined here
+        VmState trapState = test.getVmState().copy();
+        trapState.setBci(target.getStartBci());
+        BlockStartInstr trap = hir.newBlock(target.getStartBci());
+        trap.setVmState(trapState);
+        var deopt = new DeoptimizeInstr(trapState.copy(), DeoptimizationReason.UnreachedCode,
+                DeoptimizationAction.InvalidateReprofile);
+        trap.setNext(deopt);
+        trap.setBlockEnd(deopt);
+
+        // Trap block follows branching block in instruction chain
+        deopt.setNext(test.getNext());
+        test.setNext(trap);
+        test.getSuccessor().set(untaken, trap);
+        target.getPredecessor().remove(block);
+        trap.getPredecessor().add(block);
+        speculatedCount++;
+    }
+
+    @Override
+    public String name() {
+        return "Branch speculation";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Speculated {} branches never taken", speculatedCount);
+            hir.printHIR(false);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.instr.BlockEndInstr;
+import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
+import com.kelthuzadx.yarrow.hir.instr.GotoInstr;
+import com.kelthuzadx.yarrow.util.Logger;
+
+import java.util.List;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+
+/**
+ * An edge is critical if its source has more than one successor and its target has more than
+ * one predecessor. Nothing can be placed on it, code at the end of source runs on other edges
+ * too and code at the beginning of target runs for other predecessors too:
+ * <pre>
+ *     B1: if x goto B3 else B2     B1: if x goto B4 else B2
+ *     B2: goto B3           ==>    B4: goto B3
+ *     B3: v = phi(a, b)            B2: goto B3
+ *                                  B3: v = phi(a, b)
+ * </pre>
+ * Inserted empty block carries phi moves of that edge only, register allocator also puts
+ * data flow moves there.
+ *
+ * @author kelthuzadx
+ */
+public class CriticalEdgeSplitting implements Phase {
+    private final Hir hir;
+    private int splitCount;
+
+    public CriticalEdgeSplitting(Hir hir) {
+        this.hir = hir;
+        this.splitCount = 0;
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public CriticalEdgeSplitting build() {
+        for (BlockStartInstr block : hir.getBlocks()) {
+            List<BlockStartInstr> successors = block.getBlockEnd().getSuccessor();
+            if (successors.size() < 2) {
+                continue;
+            }
+            // A switch may reach the same target by several keys, each of them is split
+            for (int i = 0; i < successors.size(); i++) {
+                if (successors.get(i).getPredecessor().size() > 1) {
+                    split(block, i);
+                }
+            }
+        }
+        return this;
+    }
+
+    private void split(BlockStartInstr block, int index) {
+        BlockEndInstr end = block.getBlockEnd();
+        BlockStartInstr target = end.getSuccessor().get(index);
+        BlockStartInstr edge = hir.newBlock(target.getStartBci());
+        edge.setVmState(end.getVmState().copy());
+        var jump = new GotoInstr(end.getVmState().copy(), target);
+        edge.setNext(jump);
+
+        // Phis read operands by position of predecessor, edge block takes over that position
+        List<BlockStartInstr> predecessors = target.getPredecessor();
+        end.getSuccessor().set(index, edge);
+        edge.setBlockEnd(jump);
+        predecessors.remove(predecessors.size() - 1);
+        predecessors.set(predecessors.indexOf(block), edge);
+        edge.getPredecessor().add(block);
+
+        // Edge block follows branching block in instruction chain
+        jump.setNext(end.getNext());
+        end.setNext(edge);
+        splitCount++;
+    }
+
+    @Override
+    public String name() {
+        return "Critical edge splitting";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Split {} critical edges", splitCount);
+            hir.printHIR(false);
+        }
+    }
+}
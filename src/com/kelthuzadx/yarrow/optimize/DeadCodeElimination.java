@@ -0,0 +1,281 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.bytecode.Bytecode;
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.VmState;
+import com.kelthuzadx.yarrow.hir.instr.*;
+import com.kelthuzadx.yarrow.util.Logger;
+
+import java.util.*;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+
+/**
+ * Mark and sweep dead code elimination. Blocks that are no longer reachable from method
+ * entry, e.g. the other side of a folded branch, are removed from instruction chain and
+ * from predecessor lists. Instructions with side effects are roots, anything they use
+ * directly or through phis is live, and remaining side-effect-free instructions are swept.
+ * Phis that nobody uses are dropped from block entry state so that PhiResolver no longer
+ * generates moves for them.
+ *
+ * @author kelthuzadx
+ */
+public class DeadCodeElimination implements Phase {
+    private final Hir hir;
+    private final Set<HirInstr> live;
+    private int removedBlocks;
+    private int removedInstrs;
+    private int removedPhis;
+
+    public DeadCodeElimination(Hir hir) {
+        this.hir = hir;
+        this.live = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Side-effect-free instruction can be removed if it's unused, instructions that may
+     * trap such as division or array length of a possibly null array must stay
+     */
+    private static boolean isRemovable(HirInstr instr) {
+        if (instr instanceof ArithmeticInstr) {
+            switch (((ArithmeticInstr) instr).getOpcode()) {
+                case Bytecode.IDIV:
+                case Bytecode.IREM:
+                case Bytecode.LDIV:
+                case Bytecode.LREM:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+        if (instr instanceof ArrayLenInstr) {
+            HirInstr array = ((ArrayLenInstr) instr).getArray();
+            return array instanceof NewTypeArrayInstr || array instanceof NewObjectArrayInstr ||
+                    array instanceof NewMultiArrayInstr;
+        }
+        return instr instanceof ConstantInstr || instr instanceof LogicInstr || instr instanceof ShiftInstr ||
+                instr instanceof CompareInstr || instr instanceof NegateInstr || instr instanceof TypeCastInstr ||
+                instr instanceof SelectInstr || instr instanceof InstanceOfInstr || instr instanceof PhiInstr ||
+                instr instanceof VectorBroadcastInstr || instr instanceof VectorArithmeticInstr ||
+                instr instanceof VectorReduceInstr || instr instanceof VectorExtractInstr;
+    }
+
+    /**
+     * Values read by instruction, including those its debug info keeps alive
+     */
+    public static List<HirInstr> inputsOf(HirInstr instr) {
+        List<HirInstr> inputs = new ArrayList<>();
+        if (instr instanceof Op2HirInstr) {
+            inputs.add(((Op2HirInstr) instr).getLeft());
+            inputs.add(((Op2HirInstr) instr).getRight());
+        } else if (instr instanceof NegateInstr) {
+            inputs.add(((NegateInstr) instr).getValue());
+        } else if (instr instanceof TypeCastInstr) {
+            inputs.add(((TypeCastInstr) instr).getFrom());
+        } else if (instr instanceof SelectInstr) {
+            var i = (SelectInstr) instr;
+            inputs.addAll(Arrays.asList(i.getLeft(), i.getRight(), i.getTrueValue(), i.getFalseValue()));
+        } else if (instr instanceof ArrayLenInstr) {
+            inputs.add(((ArrayLenInstr) instr).getArray());
+        } else if (instr instanceof LoadIndexInstr) {
+            var i = (LoadIndexInstr) instr;
+            inputs.addAll(Arrays.asList(i.getArray(), i.getIndex(), i.getLength()));
+        } else if (instr instanceof StoreIndexInstr) {
+            var i = (StoreIndexInstr) instr;
+            inputs.addAll(Arrays.asList(i.getArray(), i.getIndex(), i.getLength(), i.getStoreValue()));
+        } else if (instr instanceof LoadFieldInstr) {
+            inputs.add(((LoadFieldInstr) instr).getObject());
+        } else if (instr instanceof StoreFieldInstr) {
+            inputs.add(((StoreFieldInstr) instr).getObject());
+            inputs.add(((StoreFieldInstr) instr).getStoreValue());
+        } else if (instr instanceof CallInstr) {
+            inputs.add(((CallInstr) instr).getReceiver());
+            inputs.addAll(Arrays.asList(((CallInstr) instr).getArguments()));
+        } else if (instr instanceof IntrinsicInstr) {
+            inputs.addAll(Arrays.asList(((IntrinsicInstr) instr).getArguments()));
+        } else if (instr instanceof ArrayCopyInstr) {
+            var i = (ArrayCopyInstr) instr;
+            inputs.addAll(Arrays.asList(i.getSrc(), i.getSrcPos(), i.getDest(), i.getDestPos(), i.getLength()));
+        } else if (instr instanceof CheckCastInstr) {
+            inputs.add(((CheckCastInstr) instr).getObject());
+        } else if (instr instanceof InstanceOfInstr) {
+            inputs.add(((InstanceOfInstr) instr).getObject());
+        } else if (instr instanceof MonitorEnterInstr) {
+            inputs.add(((MonitorEnterInstr) instr).getLock());
+        } else if (instr instanceof MonitorExitInstr) {
+            inputs.add(((MonitorExitInstr) instr).getLock());
+        } else if (instr instanceof NewTypeArrayInstr) {
+            inputs.add(((NewTypeArrayInstr) instr).arrayLength());
+        } else if (instr instanceof NewObjectArrayInstr) {
+            inputs.add(((NewObjectArrayInstr) instr).arrayLength());
+        } else if (instr instanceof NewMultiArrayInstr) {
+            inputs.addAll(Arrays.asList(((NewMultiArrayInstr) instr).getSizeArray()));
+        } else if (instr instanceof IfInstr) {
+            inputs.add(((IfInstr) instr).getLeft());
+            inputs.add(((IfInstr) instr).getRight());
+        } else if (instr instanceof TableSwitchInstr) {
+            inputs.add(((TableSwitchInstr) instr).getIndex());
+        } else if (instr instanceof LookupSwitchInstr) {
+            inputs.add(((LookupSwitchInstr) instr).getIndex());
+        } else if (instr instanceof ReturnInstr) {
+            inputs.add(((ReturnInstr) instr).getReturnValue());
+        } else if (instr instanceof ThrowInstr) {
+            inputs.add(((ThrowInstr) instr).getException());
+        } else if (instr instanceof VectorLoadInstr) {
+            inputs.add(((VectorLoadInstr) instr).getArray());
+            inputs.add(((VectorLoadInstr) instr).getIndex());
+        } else if (instr instanceof VectorStoreInstr) {
+            var i = (VectorStoreInstr) instr;
+            inputs.addAll(Arrays.asList(i.getArray(), i.getIndex(), i.getStoreValue()));
+        } else if (instr instanceof VectorArithmeticInstr) {
+            inputs.add(((VectorArithmeticInstr) instr).getLeft());
+            inputs.add(((VectorArithmeticInstr) instr).getRight());
+        } else if (instr instanceof VectorBroadcastInstr) {
+            inputs.add(((VectorBroadcastInstr) instr).getValue());
+        } else if (instr instanceof VectorReduceInstr) {
+            inputs.add(((VectorReduceInstr) instr).getVector());
+        } else if (instr instanceof VectorExtractInstr) {
+            inputs.add(((VectorExtractInstr) instr).getVector());
+        } else if (instr instanceof PhiInstr) {
+            var phi = (PhiInstr) instr;
+            for (int i = 0; i < phi.operandCount(); i++) {
+                inputs.add(phi.operand(i));
+            }
+        }
+        if (hasDebugInfo(instr)) {
+            addStateValues(inputs, ((StateInstr) instr).getVmState());
+        }
+        if (instr instanceof BlockEndInstr && ((BlockEndInstr) instr).isBackwardBranch()) {
+            // Back edge may poll for safepoint or notify runtime of counter overflow
+            addStateValues(inputs, ((BlockEndInstr) instr).getBackwardBranchState());
+        }
+        inputs.removeIf(Objects::isNull);
+        return inputs;
+    }
+
+    private static void addStateValues(List<HirInstr> inputs, VmState state) {
+        inputs.addAll(Arrays.asList(state.getLocal()));
+        inputs.addAll(state.getStack());
+        inputs.addAll(state.getLock());
+    }
+
+    /**
+     * Interpreter frame is rebuilt from VmState of these instructions upon deoptimization,
+     * everything in the state must survive
+     */
+    private static boolean hasDebugInfo(HirInstr instr) {
+        return instr instanceof CallInstr || instr instanceof DeoptimizeInstr || instr instanceof CheckCastInstr ||
+                instr instanceof NewInstr || instr instanceof NewTypeArrayInstr || instr instanceof NewObjectArrayInstr ||
+                instr instanceof NewMultiArrayInstr || instr instanceof MonitorEnterInstr ||
+                instr instanceof ArrayCopyInstr;
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public DeadCodeElimination build() {
+        if (!YarrowProperties.Optimize.DeadCodeElimination) {
+            return this;
+        }
+        removeUnreachableBlocks();
+        List<BlockStartInstr> blocks = hir.getBlocks();
+        mark(blocks);
+        sweep(blocks);
+        return this;
+    }
+
+    private void removeUnreachableBlocks() {
+        Set<BlockStartInstr> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<BlockStartInstr> workList = new ArrayDeque<>();
+        workList.add(hir.getEntryBlock());
+        while (!workList.isEmpty()) {
+            BlockStartInstr block = workList.remove();
+            if (reachable.add(block)) {
+                workList.addAll(block.getBlockEnd().getSuccessor());
+            }
+        }
+        for (BlockStartInstr block : hir.getBlocks()) {
+            if (!reachable.contains(block)) {
+                hir.unlinkBlock(block);
+                removedBlocks++;
+            }
+        }
+        // Phi operands are indexed by predecessors, they are shifted together
+        for (BlockStartInstr block : reachable) {
+            block.getPredecessor().removeIf(pred -> !reachable.contains(pred));
+        }
+    }
+
+    private void mark(List<BlockStartInstr> blocks) {
+        Deque<HirInstr> workList = new ArrayDeque<>();
+        for (BlockStartInstr block : blocks) {
+            for (HirInstr instr = block; instr != null; instr = instr.getNext()) {
+                if (!isRemovable(instr)) {
+                    workList.add(instr);
+                }
+                if (instr == block.getBlockEnd()) {
+                    break;
+                }
+            }
+        }
+        while (!workList.isEmpty()) {
+            HirInstr instr = workList.remove();
+            if (live.add(instr)) {
+                workList.addAll(inputsOf(instr));
+            }
+        }
+    }
+
+    private void sweep(List<BlockStartInstr> blocks) {
+        for (BlockStartInstr block : blocks) {
+            HirInstr prev = block;
+            while (prev != block.getBlockEnd()) {
+                HirInstr instr = prev.getNext();
+                if (!live.contains(instr)) {
+                    prev.setNext(instr.getNext());
+                    instr.setNext(null);
+                    removedInstrs++;
+                } else {
+                    prev = instr;
+                }
+            }
+
+            // Dead phi is not used by anyone, neither by a live phi of successor
+            HirInstr[] local = block.getVmState().getLocal();
+            for (int i = 0; i < local.length; i++) {
+                if (isDeadPhi(block, local[i])) {
+                    local[i] = null;
+                    removedPhis++;
+                }
+            }
+            List<HirInstr> stack = block.getVmState().getStack();
+            for (int i = 0; i < stack.size(); i++) {
+                if (isDeadPhi(block, stack.get(i))) {
+                    stack.set(i, null);
+                    removedPhis++;
+                }
+            }
+        }
+    }
+
+    private boolean isDeadPhi(BlockStartInstr block, HirInstr value) {
+        return value instanceof PhiInstr && ((PhiInstr) value).getBlock() == block && !live.contains(value);
+    }
+
+    @Override
+    public String name() {
+        return "Dead code elimination";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Removed {} blocks, {} instructions and {} phis", removedBlocks, removedInstrs, removedPhis);
+            hir.printHIR(false);
+        }
+    }
+}
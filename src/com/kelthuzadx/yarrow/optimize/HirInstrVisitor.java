@@ -14,6 +14,12 @@ public abstract class HirInstrVisitor {
 
     public abstract void visitParamInstr(ParamInstr instr);
 
+    public abstract void visitOsrEntryInstr(OsrEntryInstr instr);
+
+    public abstract void visitOsrLocalInstr(OsrLocalInstr instr);
+
+    public abstract void visitDeoptimizeInstr(DeoptimizeInstr instr);
+
     public abstract void visitLogicInstr(LogicInstr instr);
 
     public abstract void visitNewMultiArrayInstr(NewMultiArrayInstr instr);
@@ -77,4 +83,24 @@ public abstract class HirInstrVisitor {
     public abstract void visitThrowInstr(ThrowInstr instr);
 
     public abstract void visitNewTypeArrayInstr(NewTypeArrayInstr instr);
+
+    public abstract void visitIntrinsicInstr(IntrinsicInstr instr);
+
+    public abstract void visitArrayCopyInstr(ArrayCopyInstr instr);
+
+    public abstract void visitSelectInstr(SelectInstr instr);
+
+    public abstract void visitVectorInstr(VectorInstr instr);
+
+    public abstract void visitVectorLoadInstr(VectorLoadInstr instr);
+
+    public abstract void visitVectorStoreInstr(VectorStoreInstr instr);
+
+    public abstract void visitVectorArithmeticInstr(VectorArithmeticInstr instr);
+
+    public abstract void visitVectorBroadcastInstr(VectorBroadcastInstr instr);
+
+    public abstract void visitVectorReduceInstr(VectorReduceInstr instr);
+
+    public abstract void visitVectorExtractInstr(VectorExtractInstr instr);
 }
@@ -0,0 +1,243 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.bytecode.Bytecode;
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.VmState;
+import com.kelthuzadx.yarrow.hir.instr.*;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaKind;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+
+/**
+ * Replace small diamonds and triangles whose arms only compute values with SelectInstr,
+ * so that unpredictable branches become conditional moves:
+ * <pre>
+ *         A: if x < y                 A: ...arm1...
+ *          /         \                   ...arm2...
+ *     T: ...arm1  F: ...arm2    =>       i3: x < y ? i1 : i2
+ *          \         /                   goto M
+ *         M: phi [i1,i2]              M: phi [i3]
+ * </pre>
+ * Both arms are executed unconditionally afterwards, so they must be free of side effects
+ * and traps, and short enough to be cheaper than a mispredicted branch.
+ * <p>
+ * It runs after branch speculation and type check elimination rather than right after HIR
+ * construction, branches that they turn into traps or fold away are not worth a select.
+ *
+ * @author kelthuzadx
+ */
+public class IfConversion implements Phase {
+    // Maximum number of instructions in each arm
+    private static final int MAX_ARM_SIZE = 4;
+    // Maximum number of phis that one diamond may merge
+    private static final int MAX_SELECTS = 2;
+
+    private final Hir hir;
+    private int convertedCount;
+
+    public IfConversion(Hir hir) {
+        this.hir = hir;
+        this.convertedCount = 0;
+    }
+
+    private static boolean isSpeculatable(HirInstr instr) {
+        if (instr instanceof ArithmeticInstr) {
+            switch (((ArithmeticInstr) instr).getOpcode()) {
+                case Bytecode.IDIV:
+                case Bytecode.IREM:
+                case Bytecode.LDIV:
+                case Bytecode.LREM:
+                    // ArithmeticException on zero divisor
+                    return false;
+                default:
+                    return true;
+            }
+        }
+        return instr instanceof ConstantInstr || instr instanceof LogicInstr || instr instanceof ShiftInstr ||
+                instr instanceof NegateInstr || instr instanceof TypeCastInstr || instr instanceof SelectInstr;
+    }
+
+    private static boolean isSelectable(JavaKind type) {
+        // cmov works on general purpose registers only
+        return type == JavaKind.Int || type == JavaKind.Long || type == JavaKind.Object;
+    }
+
+    /**
+     * Arm is a block that is only reachable from given block, and falls into another one
+     *
+     * @return instructions of arm, or null if block is not a convertible arm
+     */
+    private static List<HirInstr> armOf(BlockStartInstr block, BlockStartInstr from) {
+        if (block == from || block.getPredecessor().size() != 1 || block.getPredecessor().get(0) != from ||
+                !(block.getBlockEnd() instanceof GotoInstr) || block.getFlag() != null || block.isLoopHeader()) {
+            return null;
+        }
+        List<HirInstr> instrs = new ArrayList<>();
+        for (HirInstr instr = block.getNext(); instr != block.getBlockEnd(); instr = instr.getNext()) {
+            if (!isSpeculatable(instr) || instrs.size() == MAX_ARM_SIZE) {
+                return null;
+            }
+            instrs.add(instr);
+        }
+        return instrs;
+    }
+
+    private static BlockStartInstr targetOf(BlockStartInstr arm) {
+        return arm.getBlockEnd().getSuccessor().get(0);
+    }
+
+    private static List<PhiInstr> phisOf(BlockStartInstr block) {
+        List<PhiInstr> phis = new ArrayList<>();
+        VmState state = block.getVmState();
+        for (HirInstr value : state.getLocal()) {
+            if (value instanceof PhiInstr && ((PhiInstr) value).getBlock() == block) {
+                phis.add((PhiInstr) value);
+            }
+        }
+        for (HirInstr value : state.getStack()) {
+            if (value instanceof PhiInstr && ((PhiInstr) value).getBlock() == block) {
+                phis.add((PhiInstr) value);
+            }
+        }
+        return phis;
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public IfConversion build() {
+        if (!YarrowProperties.Optimize.IfConversion) {
+            return this;
+        }
+        Set<BlockStartInstr> removed = new HashSet<>();
+        for (BlockStartInstr block : hir.getBlocks()) {
+            if (!removed.contains(block) && block.getBlockEnd() instanceof IfInstr) {
+                convert(block, removed);
+            }
+        }
+        return this;
+    }
+
+    private void convert(BlockStartInstr block, Set<BlockStartInstr> removed) {
+        IfInstr test = (IfInstr) block.getBlockEnd();
+        BlockStartInstr trueBlock = test.getSuccessor().get(0);
+        BlockStartInstr falseBlock = test.getSuccessor().get(1);
+        if (trueBlock == falseBlock) {
+            return;
+        }
+        List<HirInstr> trueArm = armOf(trueBlock, block);
+        List<HirInstr> falseArm = armOf(falseBlock, block);
+
+        // Find merge block and the predecessors of it which values come from on each side
+        BlockStartInstr merge;
+        BlockStartInstr trueSide;
+        BlockStartInstr falseSide;
+        if (trueArm != null && falseArm != null && targetOf(trueBlock) == targetOf(falseBlock)) {
+            merge = targetOf(trueBlock);
+            trueSide = trueBlock;
+            falseSide = falseBlock;
+        } else if (trueArm != null && targetOf(trueBlock) == falseBlock) {
+            merge = falseBlock;
+            trueSide = trueBlock;
+            falseSide = block;
+            falseArm = null;
+        } else if (falseArm != null && targetOf(falseBlock) == trueBlock) {
+            merge = trueBlock;
+            trueSide = block;
+            falseSide = falseBlock;
+            trueArm = null;
+        } else {
+            return;
+        }
+        if (merge == block || merge.isLoopHeader() || merge.getFlag() != null || merge.getPredecessor().size() != 2) {
+            return;
+        }
+        List<PhiInstr> phis = phisOf(merge);
+        if (phis.isEmpty() || phis.size() > MAX_SELECTS) {
+            return;
+        }
+        int trueIndex = merge.getPredecessor().indexOf(trueSide);
+        int falseIndex = merge.getPredecessor().indexOf(falseSide);
+        for (PhiInstr phi : phis) {
+            if (!isSelectable(phi.type()) || phi.operand(trueIndex) == null || phi.operand(falseIndex) == null) {
+                return;
+            }
+        }
+
+        // Detach arms from instruction chain first, one of them may follow this block
+        HirInstr last = block;
+        while (last.getNext() != test) {
+            last = last.getNext();
+        }
+        for (BlockStartInstr arm : new BlockStartInstr[]{trueBlock, falseBlock}) {
+            if (arm != merge) {
+                hir.unlinkBlock(arm);
+                removed.add(arm);
+            }
+        }
+        HirInstr following = test.getNext();
+
+        // Hoist arms into block and select values that flow into merge block
+        List<HirInstr> hoisted = new ArrayList<>();
+        if (trueArm != null) {
+            hoisted.addAll(trueArm);
+        }
+        if (falseArm != null) {
+            hoisted.addAll(falseArm);
+        }
+        for (HirInstr instr : hoisted) {
+            last.setNext(instr);
+            last = instr;
+        }
+        VmState state = merge.getVmState().copy();
+        HirInstr[] local = state.getLocal();
+        for (PhiInstr phi : phis) {
+            var select = new SelectInstr(test.getLeft(), test.getRight(), test.getCond(), phi.operand(trueIndex),
+                    phi.operand(falseIndex));
+            last.setNext(select);
+            last = select;
+            for (int i = 0; i < local.length; i++) {
+                if (local[i] == phi) {
+                    local[i] = select;
+                }
+            }
+            for (int i = 0; i < state.getStack().size(); i++) {
+                if (state.getStack().get(i) == phi) {
+                    state.getStack().set(i, select);
+                }
+            }
+        }
+        GotoInstr jump = new GotoInstr(state, merge);
+        last.setNext(jump);
+        jump.setNext(following);
+
+        // Merge block now has a single predecessor, its phis simply take selected values
+        merge.getPredecessor().remove(trueSide);
+        merge.getPredecessor().remove(falseSide);
+        block.replaceBlockEnd(jump);
+        convertedCount++;
+    }
+
+    @Override
+    public String name() {
+        return "If conversion";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Converted {} branches", convertedCount);
+            hir.printHIR(false);
+        }
+    }
+}
@@ -56,6 +56,14 @@ public class LVN {
                 }
             }
         }
+        // int a = arr[2];
+        // System.arraycopy(src, 0, arr, 0, 3);
+        // int b = arr[2];  prevent from LVN, destination may alias any array
+        else if (instr instanceof ArrayCopyInstr) {
+            var temp = (ArrayCopyInstr) instr;
+            valueSet.removeIf(i -> i instanceof LoadIndexInstr &&
+                    ((LoadIndexInstr) i).getElementType() == temp.getElementType());
+        }
         // long a = obj.field;
         // invokestatic <class.method>
         // long b = obj.field; prevent from LVN, kill the whole memory
@@ -26,4 +26,12 @@ public abstract class LirInstrVisitor {
     public abstract void visitOp1Instr(Op1Instr instr);
 
     public abstract void visitOp2Instr(Op2Instr instr);
+
+    public abstract void visitJavaArrayCopyInstr(JavaArrayCopyInstr instr);
+
+    public abstract void visitTableJumpInstr(TableJumpInstr instr);
+
+    public abstract void visitZeroMemoryInstr(ZeroMemoryInstr instr);
+
+    public abstract void visitCompareAndSwapInstr(CompareAndSwapInstr instr);
 }
@@ -0,0 +1,273 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.bytecode.Bytecode;
+import com.kelthuzadx.yarrow.core.YarrowError;
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.hir.CountedLoop;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.VmState;
+import com.kelthuzadx.yarrow.hir.instr.*;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaConstant;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Optimize.LoopUnrollBudget;
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Optimize.LoopUnrollFactor;
+
+/**
+ * Unroll counted loops. The unrolled loop runs first and executes body for several
+ * iterations per trip, the original loop is kept as post loop to run the remaining
+ * iterations:
+ * <pre>
+ *     preheader -> unrolled header -> unrolled body -> unrolled header
+ *                        |
+ *                        v
+ *                   post entry -> header -> body -> header
+ *                                   |
+ *                                   v
+ *                                  exit
+ * </pre>
+ * Unrolled header checks whether the last unrolled iteration still satisfies loop
+ * condition, so that unrolled body never needs intermediate exits.
+ *
+ * @author kelthuzadx
+ */
+public class LoopUnroll implements Phase {
+    private final Hir hir;
+    private int unrolledCount;
+
+    public LoopUnroll(Hir hir) {
+        this.hir = hir;
+        this.unrolledCount = 0;
+    }
+
+    private static boolean canClone(HirInstr instr) {
+        return instr instanceof ConstantInstr || instr instanceof ArithmeticInstr ||
+                instr instanceof LogicInstr || instr instanceof ShiftInstr ||
+                instr instanceof NegateInstr || instr instanceof TypeCastInstr ||
+                instr instanceof ArrayLenInstr || instr instanceof LoadIndexInstr ||
+                instr instanceof StoreIndexInstr || instr instanceof LoadFieldInstr ||
+                instr instanceof StoreFieldInstr || instr instanceof IntrinsicInstr || instr instanceof SelectInstr;
+    }
+
+    private static HirInstr cloneInstr(HirInstr instr, Map<HirInstr, HirInstr> map) {
+        if (instr instanceof ConstantInstr) {
+            return new ConstantInstr(((ConstantInstr) instr).getConstant());
+        } else if (instr instanceof ArithmeticInstr) {
+            var i = (ArithmeticInstr) instr;
+            return new ArithmeticInstr(i.getOpcode(), lookup(map, i.getLeft()), lookup(map, i.getRight()));
+        } else if (instr instanceof LogicInstr) {
+            var i = (LogicInstr) instr;
+            return new LogicInstr(i.getOpcode(), lookup(map, i.getLeft()), lookup(map, i.getRight()));
+        } else if (instr instanceof ShiftInstr) {
+            var i = (ShiftInstr) instr;
+            return new ShiftInstr(i.getOpcode(), lookup(map, i.getLeft()), lookup(map, i.getRight()));
+        } else if (instr instanceof NegateInstr) {
+            return new NegateInstr(lookup(map, ((NegateInstr) instr).getValue()));
+        } else if (instr instanceof TypeCastInstr) {
+            var i = (TypeCastInstr) instr;
+            return new TypeCastInstr(i.getOpcode(), lookup(map, i.getFrom()), i.type());
+        } else if (instr instanceof ArrayLenInstr) {
+            return new ArrayLenInstr(lookup(map, ((ArrayLenInstr) instr).getArray()));
+        } else if (instr instanceof LoadIndexInstr) {
+            var i = (LoadIndexInstr) instr;
+            return new LoadIndexInstr(lookup(map, i.getArray()), lookup(map, i.getIndex()),
+                    lookup(map, i.getLength()), i.getElementType());
+        } else if (instr instanceof StoreIndexInstr) {
+            var i = (StoreIndexInstr) instr;
+            return new StoreIndexInstr(lookup(map, i.getArray()), lookup(map, i.getIndex()),
+                    lookup(map, i.getLength()), i.getElementType(), lookup(map, i.getStoreValue()));
+        } else if (instr instanceof LoadFieldInstr) {
+            var i = (LoadFieldInstr) instr;
+            return new LoadFieldInstr(lookup(map, i.getObject()), i.getOffset(), i.getField());
+        } else if (instr instanceof StoreFieldInstr) {
+            var i = (StoreFieldInstr) instr;
+            return new StoreFieldInstr(lookup(map, i.getObject()), i.getOffset(), i.getField(),
+                    lookup(map, i.getStoreValue()));
+        } else if (instr instanceof IntrinsicInstr) {
+            var i = (IntrinsicInstr) instr;
+            HirInstr[] args = new HirInstr[i.getArguments().length];
+            for (int k = 0; k < args.length; k++) {
+                args[k] = lookup(map, i.getArguments()[k]);
+            }
+            return new IntrinsicInstr(i.getIntrinsic(), args);
+        } else if (instr instanceof SelectInstr) {
+            var i = (SelectInstr) instr;
+            return new SelectInstr(lookup(map, i.getLeft()), lookup(map, i.getRight()), i.getCond(),
+                    lookup(map, i.getTrueValue()), lookup(map, i.getFalseValue()));
+        }
+        throw YarrowError.shouldNotReachHere();
+    }
+
+    private static HirInstr lookup(Map<HirInstr, HirInstr> map, HirInstr instr) {
+        if (instr == null) {
+            return null;
+        }
+        // Values defined outside the loop are used as they are
+        return map.getOrDefault(instr, instr);
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public LoopUnroll build() {
+        if (!YarrowProperties.Optimize.LoopUnroll) {
+            return this;
+        }
+        for (BlockStartInstr block : hir.getBlocks()) {
+            CountedLoop loop = CountedLoop.match(block);
+            if (loop == null || !loop.getBodyInstrs().stream().allMatch(LoopUnroll::canClone)) {
+                continue;
+            }
+            int bodySize = Math.max(loop.getBodyInstrs().size(), 1);
+            int factor = LoopUnrollFactor;
+            while (factor > 1 && factor * bodySize > LoopUnrollBudget) {
+                factor /= 2;
+            }
+            if (factor > 1) {
+                unroll(loop, factor);
+            }
+        }
+        return this;
+    }
+
+    private void unroll(CountedLoop loop, int factor) {
+        BlockStartInstr header = loop.getHeader();
+        BlockStartInstr body = loop.getBody();
+        BlockStartInstr preheader = loop.getPreheader();
+        Map<HirInstr, HirInstr> map = new IdentityHashMap<>();
+
+        // Unrolled loop header has its own phis for every loop variable
+        BlockStartInstr unrolledHeader = hir.newBlock(header.getStartBci());
+        unrolledHeader.setLoopHeader(true);
+        VmState headerState = header.getVmState().copy();
+        HirInstr[] local = headerState.getLocal();
+        for (int i = 0; i < local.length; i++) {
+            if (local[i] instanceof PhiInstr && ((PhiInstr) local[i]).getBlock() == header) {
+                PhiInstr phi = new PhiInstr(local[i].type(), i, unrolledHeader);
+                map.put(local[i], phi);
+                local[i] = phi;
+            }
+        }
+        unrolledHeader.setVmState(headerState);
+        HirInstr last = unrolledHeader;
+        for (HirInstr instr : loop.getHeaderInstrs()) {
+            HirInstr clone = cloneInstr(instr, map);
+            map.put(instr, clone);
+            last = append(last, clone);
+        }
+
+        // Enter unrolled body only if the last unrolled iteration still satisfies loop condition,
+        // i.e. i + (factor-1)*stride < limit, which is i < limit - (factor-1)*stride
+        HirInstr limit = lookup(map, loop.getLimit());
+        long distance = (long) (factor - 1) * loop.getStride();
+        HirInstr unrolledLimit;
+        if (limit instanceof ConstantInstr) {
+            long value = ((ConstantInstr) limit).getConstant().asInt() - distance;
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                return;
+            }
+            unrolledLimit = append(last, new ConstantInstr(JavaConstant.forInt((int) value)));
+        } else if (loop.getLimit() instanceof ArrayLenInstr && loop.getStride() > 0 && distance <= Integer.MAX_VALUE) {
+            // Array length is never negative, subtracting a small distance never overflows
+            HirInstr d = append(last, new ConstantInstr(JavaConstant.forInt((int) distance)));
+            unrolledLimit = append(d, new ArithmeticInstr(Bytecode.ISUB, limit, d));
+        } else {
+            return;
+        }
+        last = unrolledLimit;
+
+        BlockStartInstr unrolledBody = hir.newBlock(body.getStartBci());
+        BlockStartInstr postEntry = hir.newBlock(header.getStartBci());
+        IfInstr test = new IfInstr(headerState.copy(), unrolledBody, postEntry, map.get(loop.getInductionVar()),
+                unrolledLimit, loop.getCond());
+        append(last, test);
+
+        // Unrolled body repeats loop body, each copy takes loop variables produced by previous one
+        VmState bodyEndState = body.getBlockEnd().getVmState();
+        HirInstr[] bodyEndLocal = bodyEndState.getLocal();
+        unrolledBody.setVmState(headerState.copy());
+        last = unrolledBody;
+        for (int k = 0; k < factor; k++) {
+            for (HirInstr instr : loop.getBodyInstrs()) {
+                HirInstr clone = cloneInstr(instr, map);
+                map.put(instr, clone);
+                last = append(last, clone);
+            }
+            HirInstr[] next = new HirInstr[local.length];
+            for (int i = 0; i < local.length; i++) {
+                next[i] = lookup(map, bodyEndLocal[i]);
+            }
+            for (int i = 0; i < local.length; i++) {
+                HirInstr phi = header.getVmState().getLocal()[i];
+                if (phi instanceof PhiInstr && ((PhiInstr) phi).getBlock() == header) {
+                    map.put(phi, next[i]);
+                }
+            }
+        }
+        VmState unrolledEndState = headerState.copy();
+        for (int i = 0; i < local.length; i++) {
+            unrolledEndState.set(i, lookup(map, bodyEndLocal[i]));
+        }
+        GotoInstr backedge = new GotoInstr(unrolledEndState, unrolledHeader);
+        if (body.getBlockEnd().isBackwardBranch()) {
+            // Unrolled loop goes back once per trip, with values of the last unrolled iteration
+            VmState backState = unrolledEndState.copy();
+            backState.setBci(body.getBlockEnd().getBackwardBranchState().getBci());
+            backedge.setBackwardBranchState(backState);
+            backedge.setSafepoint(body.getBlockEnd().isSafepoint());
+        }
+        append(last, backedge);
+
+        // Post loop entry carries values of loop variables from unrolled loop to original header
+        postEntry.setVmState(headerState.copy());
+        GotoInstr toHeader = new GotoInstr(headerState.copy(), header);
+        append(postEntry, toHeader);
+
+        // Rewire control flow: preheader -> unrolled header, post entry -> header
+        List<BlockStartInstr> preSucc = preheader.getBlockEnd().getSuccessor();
+        preSucc.set(preSucc.indexOf(header), unrolledHeader);
+        header.getPredecessor().remove(preheader);
+        unrolledHeader.getPredecessor().add(preheader);
+        unrolledHeader.setBlockEnd(test);
+        unrolledBody.setBlockEnd(backedge);
+        postEntry.setBlockEnd(toHeader);
+
+        // Link new blocks right before original header
+        HirInstr prev = hir.getEntryBlock();
+        while (prev.getNext() != header) {
+            prev = prev.getNext();
+        }
+        prev.setNext(unrolledHeader);
+        backedge.setNext(postEntry);
+        toHeader.setNext(header);
+        test.setNext(unrolledBody);
+
+        unrolledCount++;
+    }
+
+    private static HirInstr append(HirInstr last, HirInstr instr) {
+        last.setNext(instr);
+        return instr;
+    }
+
+    @Override
+    public String name() {
+        return "Loop unrolling";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Unrolled {} loops", unrolledCount);
+            hir.printHIR(false);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.hir.Cond;
+import com.kelthuzadx.yarrow.hir.CountedLoop;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.instr.BlockStartInstr;
+import com.kelthuzadx.yarrow.hir.instr.ConstantInstr;
+import com.kelthuzadx.yarrow.hir.instr.HirInstr;
+import com.kelthuzadx.yarrow.util.Logger;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Optimize.MaxUnpolledTripCount;
+
+/**
+ * Remove back edge safepoint poll of short counted loops. A loop whose trip count is known
+ * to be small finishes quickly anyway, the poll would only cost a load per iteration:
+ * <pre>
+ *     for (int i = 0; i < 16; i++) { body }    // at most 16 iterations, no poll
+ * </pre>
+ * Trip count is bounded only if both initial value and limit of induction variable are
+ * constants and induction variable can not overflow before loop exits.
+ *
+ * @author kelthuzadx
+ */
+public class SafepointElimination implements Phase {
+    private final Hir hir;
+    private int removedCount;
+
+    public SafepointElimination(Hir hir) {
+        this.hir = hir;
+        this.removedCount = 0;
+    }
+
+    /**
+     * @return maximum number of iterations of given loop, or -1 if it's unknown
+     */
+    private static long tripCount(CountedLoop loop) {
+        BlockStartInstr header = loop.getHeader();
+        int entry = header.getPredecessor().indexOf(loop.getPreheader());
+        HirInstr init = loop.getInductionVar().operand(entry);
+        HirInstr limit = loop.getLimit();
+        if (!(init instanceof ConstantInstr) || !(limit instanceof ConstantInstr)) {
+            return -1;
+        }
+        long start = ((ConstantInstr) init).getConstant().asInt();
+        long stride = loop.getStride();
+        // Turn inclusive limit into exclusive one so that i < bound or i > bound is loop condition
+        long bound = ((ConstantInstr) limit).getConstant().asInt();
+        if (loop.getCond() == Cond.LE) {
+            bound++;
+        } else if (loop.getCond() == Cond.GE) {
+            bound--;
+        }
+        long distance = stride > 0 ? bound - start : start - bound;
+        if (distance <= 0) {
+            return 0;
+        }
+        long trips = (distance + Math.abs(stride) - 1) / Math.abs(stride);
+        // Induction variable wraps around instead of reaching its limit
+        long exitValue = start + trips * stride;
+        if (exitValue < Integer.MIN_VALUE || exitValue > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return trips;
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public SafepointElimination build() {
+        if (!YarrowProperties.Optimize.SafepointElimination) {
+            return this;
+        }
+        for (BlockStartInstr block : hir.getBlocks()) {
+            CountedLoop loop = CountedLoop.match(block);
+            if (loop == null || !loop.getBody().getBlockEnd().isSafepoint()) {
+                continue;
+            }
+            long trips = tripCount(loop);
+            if (trips >= 0 && trips <= MaxUnpolledTripCount) {
+                loop.getBody().getBlockEnd().setSafepoint(false);
+                removedCount++;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public String name() {
+        return "Safepoint elimination";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Removed {} back edge safepoint polls", removedCount);
+            hir.printHIR(false);
+        }
+    }
+}
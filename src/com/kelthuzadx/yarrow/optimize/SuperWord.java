@@ -0,0 +1,657 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.bytecode.Bytecode;
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.core.YarrowRuntime;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.instr.*;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.meta.JavaKind;
+
+import java.util.*;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Optimize.MaxVectorSize;
+
+/**
+ * Superword level parallelism, it packs isomorphic scalar operations on adjacent array
+ * elements in unrolled loop body into vector operations, i.e.
+ * <pre>
+ *     a[i]   = b[i]   + c[i]
+ *     a[i+1] = b[i+1] + c[i+1]      =>     a[i:i+4] = b[i:i+4] + c[i:i+4]
+ *     a[i+2] = b[i+2] + c[i+2]
+ *     a[i+3] = b[i+3] + c[i+3]
+ * </pre>
+ * Packs are seeded from adjacent stores and from int/long reductions into loop variables,
+ * then extended along their operands. A block is vectorized only if all its array accesses
+ * use the same index base and every pack covers the same lanes as other packs it overlaps,
+ * so each lane keeps its own order of memory accesses even if arrays are aliased.
+ *
+ * @author kelthuzadx
+ */
+public class SuperWord implements Phase {
+    private final Hir hir;
+    private int vectorizedCount;
+
+    // Per block state
+    private Map<HirInstr, Integer> position;
+    private Map<HirInstr, Pack> packOf;
+    private List<Pack> packs;
+    private List<Reduction> reductions;
+
+    public SuperWord(Hir hir) {
+        this.hir = hir;
+        this.vectorizedCount = 0;
+    }
+
+    /**
+     * @return widest vector in bytes the host supports for given element type
+     */
+    private static int vectorSize(JavaKind elementType) {
+        if (!(YarrowRuntime.arch instanceof AMD64)) {
+            return 0;
+        }
+        EnumSet<AMD64.CPUFeature> features = ((AMD64) YarrowRuntime.arch).getFeatures();
+        int size = 0;
+        if (features.contains(AMD64.CPUFeature.AVX512F)) {
+            size = 64;
+        } else if (features.contains(AMD64.CPUFeature.AVX2)) {
+            size = 32;
+        } else if (features.contains(AMD64.CPUFeature.AVX)) {
+            // AVX has 256 bits floating point operations only, integer ones come with AVX2
+            size = elementType.isNumericFloat() ? 32 : 16;
+        } else if (features.contains(AMD64.CPUFeature.SSE2)) {
+            size = 16;
+        }
+        return Math.min(size, MaxVectorSize);
+    }
+
+    private static boolean isSupported(int opcode) {
+        EnumSet<AMD64.CPUFeature> features = ((AMD64) YarrowRuntime.arch).getFeatures();
+        switch (opcode) {
+            case Bytecode.IADD:
+            case Bytecode.LADD:
+            case Bytecode.FADD:
+            case Bytecode.DADD:
+            case Bytecode.ISUB:
+            case Bytecode.LSUB:
+            case Bytecode.FSUB:
+            case Bytecode.DSUB:
+            case Bytecode.FMUL:
+            case Bytecode.DMUL:
+            case Bytecode.FDIV:
+            case Bytecode.DDIV:
+            case Bytecode.IAND:
+            case Bytecode.LAND:
+            case Bytecode.IOR:
+            case Bytecode.LOR:
+            case Bytecode.IXOR:
+            case Bytecode.LXOR:
+                return true;
+            case Bytecode.IMUL:
+                // pmulld
+                return features.contains(AMD64.CPUFeature.SSE4_1);
+            case Bytecode.LMUL:
+                // vpmullq
+                return features.contains(AMD64.CPUFeature.AVX512DQ);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isReducible(HirInstr instr) {
+        if (!(instr instanceof Op2HirInstr)) {
+            return false;
+        }
+        // Integer arithmetic is associative even if it overflows, floating point one is not
+        switch (((Op2HirInstr) instr).getOpcode()) {
+            case Bytecode.IADD:
+            case Bytecode.LADD:
+            case Bytecode.IAND:
+            case Bytecode.LAND:
+            case Bytecode.IOR:
+            case Bytecode.LOR:
+            case Bytecode.IXOR:
+            case Bytecode.LXOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isVectorizable(JavaKind type) {
+        return type == JavaKind.Int || type == JavaKind.Long || type == JavaKind.Float || type == JavaKind.Double;
+    }
+
+    /**
+     * Operands of instructions that may appear in loop body, null if instruction is not known
+     */
+    private static HirInstr[] inputs(HirInstr instr) {
+        if (instr instanceof ConstantInstr) {
+            return new HirInstr[]{};
+        } else if (instr instanceof Op2HirInstr) {
+            return new HirInstr[]{((Op2HirInstr) instr).getLeft(), ((Op2HirInstr) instr).getRight()};
+        } else if (instr instanceof NegateInstr) {
+            return new HirInstr[]{((NegateInstr) instr).getValue()};
+        } else if (instr instanceof TypeCastInstr) {
+            return new HirInstr[]{((TypeCastInstr) instr).getFrom()};
+        } else if (instr instanceof ArrayLenInstr) {
+            return new HirInstr[]{((ArrayLenInstr) instr).getArray()};
+        } else if (instr instanceof LoadIndexInstr) {
+            var i = (LoadIndexInstr) instr;
+            return new HirInstr[]{i.getArray(), i.getIndex(), i.getLength()};
+        } else if (instr instanceof StoreIndexInstr) {
+            var i = (StoreIndexInstr) instr;
+            return new HirInstr[]{i.getArray(), i.getIndex(), i.getLength(), i.getStoreValue()};
+        } else if (instr instanceof LoadFieldInstr) {
+            return new HirInstr[]{((LoadFieldInstr) instr).getObject()};
+        } else if (instr instanceof IntrinsicInstr) {
+            return ((IntrinsicInstr) instr).getArguments();
+        } else if (instr instanceof SelectInstr) {
+            var i = (SelectInstr) instr;
+            return new HirInstr[]{i.getLeft(), i.getRight(), i.getTrueValue(), i.getFalseValue()};
+        }
+        return null;
+    }
+
+    /**
+     * Split array index into base + constant offset
+     */
+    private static Index decompose(HirInstr index) {
+        int offset = 0;
+        while (index instanceof ArithmeticInstr) {
+            var arith = (ArithmeticInstr) index;
+            if (arith.getOpcode() == Bytecode.IADD && arith.getRight() instanceof ConstantInstr) {
+                offset += ((ConstantInstr) arith.getRight()).getConstant().asInt();
+                index = arith.getLeft();
+            } else if (arith.getOpcode() == Bytecode.IADD && arith.getLeft() instanceof ConstantInstr) {
+                offset += ((ConstantInstr) arith.getLeft()).getConstant().asInt();
+                index = arith.getRight();
+            } else if (arith.getOpcode() == Bytecode.ISUB && arith.getRight() instanceof ConstantInstr) {
+                offset -= ((ConstantInstr) arith.getRight()).getConstant().asInt();
+                index = arith.getLeft();
+            } else {
+                break;
+            }
+        }
+        return new Index(index, offset);
+    }
+
+    private static HirInstr arrayIndex(HirInstr access) {
+        return access instanceof LoadIndexInstr ? ((LoadIndexInstr) access).getIndex() : ((StoreIndexInstr) access).getIndex();
+    }
+
+    private static int lanesFor(JavaKind type, int count) {
+        int lanes = vectorSize(type) / type.getByteCount();
+        while (lanes > count) {
+            lanes /= 2;
+        }
+        return lanes;
+    }
+
+    private static int indexOf(List<? extends HirInstr> instrs, HirInstr instr) {
+        for (int i = 0; i < instrs.size(); i++) {
+            if (instrs.get(i) == instr) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public SuperWord build() {
+        if (!YarrowProperties.Optimize.SuperWord) {
+            return this;
+        }
+        for (BlockStartInstr block : hir.getBlocks()) {
+            BlockEndInstr end = block.getBlockEnd();
+            // Loop body that jumps back to its header
+            if (end instanceof GotoInstr && end.getSuccessor().get(0).isLoopHeader() &&
+                    end.getVmState().getStackSize() == 0 && vectorize(block)) {
+                vectorizedCount++;
+            }
+        }
+        return this;
+    }
+
+    private boolean vectorize(BlockStartInstr block) {
+        List<HirInstr> instrs = new ArrayList<>();
+        position = new IdentityHashMap<>();
+        packOf = new IdentityHashMap<>();
+        packs = new ArrayList<>();
+        reductions = new ArrayList<>();
+        for (HirInstr instr = block.getNext(); instr != block.getBlockEnd(); instr = instr.getNext()) {
+            if (inputs(instr) == null) {
+                return false;
+            }
+            position.put(instr, instrs.size());
+            instrs.add(instr);
+        }
+
+        seedStores(instrs);
+        seedReductions(block);
+        if (packs.isEmpty() || !isLegal(block, instrs)) {
+            return false;
+        }
+        schedule(block, instrs);
+        return true;
+    }
+
+    private void seedStores(List<HirInstr> instrs) {
+        // Group stores by array and index base, then pack adjacent elements together
+        Map<HirInstr, Map<HirInstr, TreeMap<Integer, StoreIndexInstr>>> groups = new IdentityHashMap<>();
+        for (HirInstr instr : instrs) {
+            if (!(instr instanceof StoreIndexInstr) || !isVectorizable(((StoreIndexInstr) instr).getElementType())) {
+                continue;
+            }
+            var store = (StoreIndexInstr) instr;
+            Index index = decompose(store.getIndex());
+            var group = groups.computeIfAbsent(store.getArray(), k -> new IdentityHashMap<>())
+                    .computeIfAbsent(index.base, k -> new TreeMap<>());
+            if (group.put(index.offset, store) != null) {
+                // Same element is stored twice, give up
+                return;
+            }
+        }
+        for (var byArray : groups.values()) {
+            for (var group : byArray.values()) {
+                List<StoreIndexInstr> run = new ArrayList<>();
+                for (var entry : group.entrySet()) {
+                    if (!run.isEmpty() && decompose(run.get(run.size() - 1).getIndex()).offset + 1 != entry.getKey()) {
+                        packStores(run);
+                        run = new ArrayList<>();
+                    }
+                    run.add(entry.getValue());
+                }
+                packStores(run);
+            }
+        }
+    }
+
+    private void packStores(List<StoreIndexInstr> run) {
+        int start = 0;
+        while (start < run.size()) {
+            JavaKind type = run.get(start).getElementType();
+            int lanes = lanesFor(type, run.size() - start);
+            if (lanes < 2) {
+                return;
+            }
+            List<HirInstr> members = new ArrayList<>(run.subList(start, start + lanes));
+            List<HirInstr> values = new ArrayList<>();
+            members.forEach(m -> values.add(((StoreIndexInstr) m).getStoreValue()));
+            int mark = packs.size();
+            Pack value = buildPack(values, type);
+            if (value == null) {
+                rollback(mark);
+                return;
+            }
+            Pack store = new Pack(members, false);
+            store.operands = new Pack[]{value};
+            register(store);
+            start += lanes;
+        }
+    }
+
+    private void seedReductions(BlockStartInstr block) {
+        HirInstr[] local = block.getBlockEnd().getVmState().getLocal();
+        for (HirInstr value : local) {
+            if (value == null || !position.containsKey(value) || !isReducible(value) || packOf.containsKey(value) ||
+                    !isVectorizable(value.type())) {
+                continue;
+            }
+            int opcode = ((Op2HirInstr) value).getOpcode();
+            // Walk back along accumulator until the loop variable is reached
+            LinkedList<Op2HirInstr> chain = new LinkedList<>();
+            List<HirInstr> elements = new LinkedList<>();
+            HirInstr acc = value;
+            while (position.containsKey(acc)) {
+                if (!(acc instanceof Op2HirInstr) || ((Op2HirInstr) acc).getOpcode() != opcode || indexOf(chain, acc) != -1) {
+                    acc = null;
+                    break;
+                }
+                var op = (Op2HirInstr) acc;
+                boolean leftIsAcc = op.getLeft() instanceof PhiInstr || isChainCandidate(op.getLeft(), opcode);
+                chain.addFirst(op);
+                elements.add(0, leftIsAcc ? op.getRight() : op.getLeft());
+                acc = leftIsAcc ? op.getLeft() : op.getRight();
+            }
+            if (!(acc instanceof PhiInstr) || chain.size() < 2) {
+                continue;
+            }
+            int mark = packs.size();
+            List<Pack> elementPacks = new ArrayList<>();
+            int start = 0;
+            while (start < elements.size()) {
+                int lanes = lanesFor(value.type(), elements.size() - start);
+                Pack pack = lanes < 2 ? null : buildPack(new ArrayList<>(elements.subList(start, start + lanes)), value.type());
+                if (pack == null || pack.broadcast) {
+                    elementPacks = null;
+                    break;
+                }
+                elementPacks.add(pack);
+                start += lanes;
+            }
+            if (elementPacks == null) {
+                rollback(mark);
+                continue;
+            }
+            reductions.add(new Reduction(opcode, acc, chain, elementPacks));
+        }
+    }
+
+    private boolean isChainCandidate(HirInstr instr, int opcode) {
+        return position.containsKey(instr) && instr instanceof Op2HirInstr && ((Op2HirInstr) instr).getOpcode() == opcode;
+    }
+
+    /**
+     * Build a pack whose lane i computes members[i]
+     *
+     * @return pack or null if members are not isomorphic
+     */
+    private Pack buildPack(List<HirInstr> members, JavaKind type) {
+        HirInstr first = members.get(0);
+        if (!first.isType(type)) {
+            return null;
+        }
+        // The same loop invariant value or equal constants in every lane
+        if (members.stream().allMatch(m -> m == first) && !position.containsKey(first)) {
+            return new Pack(members, true);
+        }
+        if (first instanceof ConstantInstr && members.stream().allMatch(m -> m.equals(first))) {
+            return new Pack(members, true);
+        }
+        Pack existing = packOf.get(first);
+        if (existing != null) {
+            for (int i = 0; i < members.size(); i++) {
+                if (existing.members.size() != members.size() || existing.members.get(i) != members.get(i)) {
+                    return null;
+                }
+            }
+            return existing;
+        }
+        Set<HirInstr> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (HirInstr m : members) {
+            if (!position.containsKey(m) || packOf.containsKey(m) || !distinct.add(m) ||
+                    m.getClass() != first.getClass() || !m.isType(type)) {
+                return null;
+            }
+        }
+
+        Pack pack = new Pack(members, false);
+        if (first instanceof LoadIndexInstr) {
+            var load = (LoadIndexInstr) first;
+            Index base = decompose(load.getIndex());
+            for (int i = 0; i < members.size(); i++) {
+                var m = (LoadIndexInstr) members.get(i);
+                Index index = decompose(m.getIndex());
+                if (m.getArray() != load.getArray() || m.getElementType() != load.getElementType() ||
+                        index.base != base.base || index.offset != base.offset + i) {
+                    return null;
+                }
+            }
+            pack.operands = new Pack[]{};
+        } else if (first instanceof ArithmeticInstr || first instanceof LogicInstr) {
+            int opcode = ((Op2HirInstr) first).getOpcode();
+            if (!isSupported(opcode) || members.stream().anyMatch(m -> ((Op2HirInstr) m).getOpcode() != opcode)) {
+                return null;
+            }
+            List<HirInstr> lefts = new ArrayList<>();
+            List<HirInstr> rights = new ArrayList<>();
+            members.forEach(m -> {
+                lefts.add(((Op2HirInstr) m).getLeft());
+                rights.add(((Op2HirInstr) m).getRight());
+            });
+            Pack left = buildPack(lefts, type);
+            Pack right = left == null ? null : buildPack(rights, type);
+            if (right == null) {
+                return null;
+            }
+            pack.operands = new Pack[]{left, right};
+        } else {
+            return null;
+        }
+        register(pack);
+        return pack;
+    }
+
+    /**
+     * Vector instruction replaces the lane which comes last in block
+     */
+    private HirInstr emitPoint(Pack pack) {
+        return pack.members.stream().max(Comparator.comparing(position::get)).get();
+    }
+
+    private void register(Pack pack) {
+        packs.add(pack);
+        pack.members.forEach(m -> packOf.put(m, pack));
+    }
+
+    private void rollback(int mark) {
+        while (packs.size() > mark) {
+            packs.remove(packs.size() - 1).members.forEach(packOf::remove);
+        }
+    }
+
+    private boolean isLegal(BlockStartInstr block, List<HirInstr> instrs) {
+        Set<HirInstr> chained = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<HirInstr> results = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Reduction r : reductions) {
+            chained.addAll(r.chain);
+            results.add(r.chain.getLast());
+        }
+
+        // All array accesses must be packed, share the same index base and cover the same lanes
+        HirInstr base = null;
+        for (HirInstr instr : instrs) {
+            if (instr instanceof LoadIndexInstr || instr instanceof StoreIndexInstr) {
+                Pack pack = packOf.get(instr);
+                if (pack == null || packOf.containsKey(arrayIndex(instr)) || packOf.containsKey(((AccessArrayInstr) instr).getArray())) {
+                    return false;
+                }
+                Index index = decompose(arrayIndex(instr));
+                if (base != null && base != index.base) {
+                    return false;
+                }
+                base = index.base;
+            }
+        }
+        for (Pack p : packs) {
+            for (Pack q : packs) {
+                if (!p.isMemory() || !q.isMemory()) {
+                    continue;
+                }
+                int ps = decompose(arrayIndex(p.members.get(0))).offset;
+                int qs = decompose(arrayIndex(q.members.get(0))).offset;
+                boolean disjoint = ps + p.members.size() <= qs || qs + q.members.size() <= ps;
+                if (!disjoint && (ps != qs || p.members.size() != q.members.size())) {
+                    return false;
+                }
+                // Packs are emitted at their last member, which must keep the order of first lane
+                if (ps == qs && p != q && (position.get(p.members.get(0)) < position.get(q.members.get(0))) !=
+                        (position.get(emitPoint(p)) < position.get(emitPoint(q)))) {
+                    return false;
+                }
+            }
+        }
+
+        // Remaining scalar instructions must not use packed values, and reduction result is
+        // only computed at the end of block
+        for (HirInstr instr : instrs) {
+            if (packOf.containsKey(instr) && chained.contains(instr)) {
+                return false;
+            }
+            for (HirInstr input : inputs(instr)) {
+                if (input == null || chained.contains(instr)) {
+                    continue;
+                }
+                if (chained.contains(input) || (packOf.containsKey(input) && !packOf.containsKey(instr))) {
+                    return false;
+                }
+            }
+        }
+        // Intermediate values of reduction are never visible outside
+        for (Reduction r : reductions) {
+            for (HirInstr instr : instrs) {
+                for (HirInstr input : inputs(instr)) {
+                    int i = indexOf(r.chain, input);
+                    if (i != -1 && i != r.chain.size() - 1 && indexOf(r.chain, instr) != i + 1) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (HirInstr value : block.getBlockEnd().getVmState().getLocal()) {
+            if (value != null && chained.contains(value) && !results.contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void schedule(BlockStartInstr block, List<HirInstr> instrs) {
+        Map<HirInstr, Reduction> reductionAt = new IdentityHashMap<>();
+        Set<HirInstr> chained = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Reduction r : reductions) {
+            reductionAt.put(r.chain.getLast(), r);
+            chained.addAll(r.chain);
+        }
+        HirInstr[] local = block.getBlockEnd().getVmState().getLocal();
+
+        HirInstr last = block;
+        for (HirInstr instr : instrs) {
+            Pack pack = packOf.get(instr);
+            if (pack != null) {
+                if (instr == emitPoint(pack)) {
+                    last = emit(last, pack);
+                    // Loop variables that hold a packed value take it from its lane
+                    for (int i = 0; i < local.length; i++) {
+                        int lane = indexOf(pack.members, local[i]);
+                        if (local[i] != null && lane != -1 && !pack.isStore()) {
+                            var extract = new VectorExtractInstr((VectorInstr) pack.vector, lane);
+                            last = append(last, extract);
+                            local[i] = extract;
+                        }
+                    }
+                }
+            } else if (reductionAt.containsKey(instr)) {
+                Reduction r = reductionAt.get(instr);
+                HirInstr acc = r.start;
+                for (Pack p : r.packs) {
+                    last = emit(last, p);
+                    var reduce = new VectorReduceInstr(r.opcode, (VectorInstr) p.vector);
+                    last = append(last, reduce);
+                    HirInstr op = instr instanceof LogicInstr ? new LogicInstr(r.opcode, acc, reduce) :
+                            new ArithmeticInstr(r.opcode, acc, reduce);
+                    last = append(last, op);
+                    acc = op;
+                }
+                for (int i = 0; i < local.length; i++) {
+                    if (local[i] == instr) {
+                        local[i] = acc;
+                    }
+                }
+            } else if (!chained.contains(instr)) {
+                last = append(last, instr);
+            }
+        }
+        last.setNext(block.getBlockEnd());
+    }
+
+    private HirInstr emit(HirInstr last, Pack pack) {
+        if (pack.vector != null) {
+            return last;
+        }
+        for (Pack operand : pack.operands) {
+            if (operand.broadcast) {
+                operand.vector = new VectorBroadcastInstr(operand.members.get(0), operand.members.size());
+                last = append(last, operand.vector);
+            } else {
+                last = emit(last, operand);
+            }
+        }
+        HirInstr first = pack.members.get(0);
+        int lanes = pack.members.size();
+        if (first instanceof LoadIndexInstr) {
+            var load = (LoadIndexInstr) first;
+            pack.vector = new VectorLoadInstr(load.getArray(), load.getIndex(), load.getElementType(), lanes);
+        } else if (first instanceof StoreIndexInstr) {
+            var store = (StoreIndexInstr) first;
+            pack.vector = new VectorStoreInstr(store.getArray(), store.getIndex(), store.getElementType(), lanes,
+                    pack.operands[0].vector);
+        } else {
+            pack.vector = new VectorArithmeticInstr(((Op2HirInstr) first).getOpcode(), pack.operands[0].vector,
+                    pack.operands[1].vector, lanes);
+        }
+        return append(last, pack.vector);
+    }
+
+    private static HirInstr append(HirInstr last, HirInstr instr) {
+        last.setNext(instr);
+        return instr;
+    }
+
+    @Override
+    public String name() {
+        return "Superword vectorization";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Vectorized {} loops", vectorizedCount);
+            hir.printHIR(false);
+        }
+    }
+
+    private static class Index {
+        final HirInstr base;
+        final int offset;
+
+        Index(HirInstr base, int offset) {
+            this.base = base;
+            this.offset = offset;
+        }
+    }
+
+    private static class Pack {
+        // Scalar instruction of each lane, or the same invariant value for broadcast
+        final List<HirInstr> members;
+        final boolean broadcast;
+        Pack[] operands;
+        HirInstr vector;
+
+        Pack(List<HirInstr> members, boolean broadcast) {
+            this.members = members;
+            this.broadcast = broadcast;
+        }
+
+        boolean isStore() {
+            return members.get(0) instanceof StoreIndexInstr;
+        }
+
+        boolean isMemory() {
+            return !broadcast && (members.get(0) instanceof StoreIndexInstr || members.get(0) instanceof LoadIndexInstr);
+        }
+    }
+
+    private static class Reduction {
+        final int opcode;
+        // Loop variable that reduction starts from
+        final HirInstr start;
+        final LinkedList<Op2HirInstr> chain;
+        final List<Pack> packs;
+
+        Reduction(int opcode, HirInstr start, LinkedList<Op2HirInstr> chain, List<Pack> packs) {
+            this.opcode = opcode;
+            this.start = start;
+            this.chain = chain;
+            this.packs = packs;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.kelthuzadx.yarrow.optimize;
+
+import com.kelthuzadx.yarrow.core.YarrowProperties;
+import com.kelthuzadx.yarrow.core.YarrowRuntime;
+import com.kelthuzadx.yarrow.hir.Cond;
+import com.kelthuzadx.yarrow.hir.Hir;
+import com.kelthuzadx.yarrow.hir.Stamp;
+import com.kelthuzadx.yarrow.hir.instr.*;
+import com.kelthuzadx.yarrow.util.Logger;
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ResolvedJavaType;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static com.kelthuzadx.yarrow.core.YarrowProperties.Debug.PrintIR;
+
+/**
+ * Attach stamps to object values and fold checkcast and instanceof whose result is known
+ * statically. Stamps come from allocations, parameters, field and return types and casts,
+ * they are further refined along control flow:
+ * <pre>
+ *     if (x instanceof T) {        if (x != null) {        (T) x;
+ *         x is non-null T              x is non-null           x is T afterwards
+ *     }                            }
+ * </pre>
+ * Refined stamps hold in a block and in blocks that can only be entered from it.
+ *
+ * @author kelthuzadx
+ */
+public class TypeCheckElimination implements Phase {
+    private final Hir hir;
+    // Flow sensitive stamps at the end of each block
+    private final Map<BlockStartInstr, Map<HirInstr, Stamp>> blockStamps;
+    private int foldedCount;
+
+    public TypeCheckElimination(Hir hir) {
+        this.hir = hir;
+        this.blockStamps = new HashMap<>();
+        this.foldedCount = 0;
+    }
+
+    private static boolean isNull(HirInstr value) {
+        return value instanceof ConstantInstr && ((ConstantInstr) value).getConstant().isNull();
+    }
+
+    private static boolean isIntConst(HirInstr value, int x) {
+        return value instanceof ConstantInstr && value.isType(JavaKind.Int) &&
+                ((ConstantInstr) value).getConstant().asInt() == x;
+    }
+
+    /**
+     * Stamp of a value computed from its definition
+     */
+    private Stamp stampOf(HirInstr instr, Map<HirInstr, Stamp> refined) {
+        if (instr instanceof NewInstr && ((NewInstr) instr).getKlass() instanceof ResolvedJavaType) {
+            return new Stamp((ResolvedJavaType) ((NewInstr) instr).getKlass(), true, true);
+        } else if (instr instanceof NewObjectArrayInstr && ((NewObjectArrayInstr) instr).getKlass() instanceof ResolvedJavaType) {
+            var klass = (ResolvedJavaType) ((NewObjectArrayInstr) instr).getKlass();
+            return new Stamp(klass.getArrayClass(), true, true);
+        } else if (instr instanceof NewTypeArrayInstr) {
+            var elemType = ((NewTypeArrayInstr) instr).getElemementType();
+            return new Stamp(YarrowRuntime.metaAccess.lookupJavaType(elemType.toJavaClass()).getArrayClass(), true, true);
+        } else if (instr instanceof NewMultiArrayInstr && ((NewMultiArrayInstr) instr).getKlass() instanceof ResolvedJavaType) {
+            return new Stamp((ResolvedJavaType) ((NewMultiArrayInstr) instr).getKlass(), true, true);
+        } else if (instr instanceof ConstantInstr && instr.isType(JavaKind.Object) && !isNull(instr)) {
+            var type = YarrowRuntime.metaAccess.lookupJavaType(((ConstantInstr) instr).getConstant());
+            return type == null ? null : new Stamp(type, true, true);
+        } else if (instr instanceof LoadFieldInstr && instr.isType(JavaKind.Object)) {
+            return Stamp.declared(((LoadFieldInstr) instr).getField().getType(), false);
+        } else if (instr instanceof LoadIndexInstr && instr.isType(JavaKind.Object)) {
+            Stamp array = lookup(((LoadIndexInstr) instr).getArray(), refined);
+            if (array != null && array.getType().isArray()) {
+                return Stamp.declared(array.getType().getComponentType(), false);
+            }
+        } else if (instr instanceof CallInstr && instr.isType(JavaKind.Object)) {
+            var call = (CallInstr) instr;
+            return Stamp.declared(call.getSignature().getReturnType(hir.getMethod().getDeclaringClass()), false);
+        } else if (instr instanceof SelectInstr && instr.isType(JavaKind.Object)) {
+            Stamp trueStamp = lookup(((SelectInstr) instr).getTrueValue(), refined);
+            Stamp falseStamp = lookup(((SelectInstr) instr).getFalseValue(), refined);
+            return trueStamp == null || falseStamp == null ? null : trueStamp.meet(falseStamp);
+        }
+        return null;
+    }
+
+    private static Stamp lookup(HirInstr value, Map<HirInstr, Stamp> refined) {
+        Stamp stamp = refined.get(value);
+        return stamp != null ? stamp : value.getStamp();
+    }
+
+    private static void refine(HirInstr value, ResolvedJavaType type, boolean nonNull, Map<HirInstr, Stamp> refined) {
+        Stamp stamp = lookup(value, refined);
+        if (stamp != null) {
+            refined.put(value, type == null ? new Stamp(stamp.getType(), stamp.isExact(), nonNull || stamp.isNonNull()) :
+                    stamp.join(type, nonNull));
+        } else if (type != null) {
+            refined.put(value, new Stamp(type, type.isLeaf() && !type.isInterface(), nonNull));
+        }
+    }
+
+    public Hir getHir() {
+        return hir;
+    }
+
+    @Override
+    public TypeCheckElimination build() {
+        if (!YarrowProperties.Optimize.TypeCheckElimination) {
+            return this;
+        }
+        for (HirInstr value : hir.getEntryBlock().getVmState().getLocal()) {
+            if (value instanceof ParamInstr && value.isType(JavaKind.Object)) {
+                var param = (ParamInstr) value;
+                param.setStamp(Stamp.declared(param.getDeclaredType(), param.isReceiver()));
+            }
+        }
+        for (BlockStartInstr block : hir.getBlocks()) {
+            Map<HirInstr, Stamp> refined = enterBlock(block);
+            for (HirInstr instr = block.getNext(); instr != block.getBlockEnd(); instr = instr.getNext()) {
+                if (instr.isType(JavaKind.Object)) {
+                    instr.setStamp(stampOf(instr, refined));
+                }
+                if (instr instanceof CheckCastInstr) {
+                    foldCheckCast((CheckCastInstr) instr, refined);
+                } else if (instr instanceof InstanceOfInstr) {
+                    foldInstanceOf((InstanceOfInstr) instr, refined);
+                }
+            }
+            blockStamps.put(block, refined);
+            if (block.getBlockEnd() instanceof IfInstr) {
+                foldBranch(block, (IfInstr) block.getBlockEnd());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Block inherits refined stamps from its only predecessor, plus what the branch into it tells
+     */
+    private Map<HirInstr, Stamp> enterBlock(BlockStartInstr block) {
+        Map<HirInstr, Stamp> refined = new IdentityHashMap<>();
+        for (HirInstr value : block.getVmState().getLocal()) {
+            if (value instanceof PhiInstr && ((PhiInstr) value).getBlock() == block && value.isType(JavaKind.Object)) {
+                value.setStamp(stampOfPhi((PhiInstr) value));
+            }
+        }
+        if (block.getPredecessor().size() != 1 || !blockStamps.containsKey(block.getPredecessor().get(0))) {
+            return refined;
+        }
+        BlockStartInstr pred = block.getPredecessor().get(0);
+        refined.putAll(blockStamps.get(pred));
+        if (!(pred.getBlockEnd() instanceof IfInstr)) {
+            return refined;
+        }
+        IfInstr test = (IfInstr) pred.getBlockEnd();
+        BlockStartInstr trueBlock = test.getSuccessor().get(0);
+        BlockStartInstr falseBlock = test.getSuccessor().get(1);
+        if (trueBlock == falseBlock) {
+            return refined;
+        }
+        // Condition holds in this block if it's entered from true branch, otherwise its negation holds
+        Cond cond = block == trueBlock ? test.getCond() : test.getCond().negate();
+        HirInstr left = test.getLeft();
+        HirInstr right = test.getRight();
+        if (left instanceof InstanceOfInstr && isIntConst(right, 0) && cond == Cond.NE) {
+            var instanceOf = (InstanceOfInstr) left;
+            refine(instanceOf.getObject(), instanceOf.getKlass(), true, refined);
+        } else if (isNull(right) && cond == Cond.NE && left.isType(JavaKind.Object)) {
+            refine(left, null, true, refined);
+        }
+        return refined;
+    }
+
+    private Stamp stampOfPhi(PhiInstr phi) {
+        Stamp stamp = null;
+        for (int i = 0; i < phi.operandCount(); i++) {
+            HirInstr operand = phi.operand(i);
+            BlockStartInstr pred = phi.getBlock().getPredecessor().get(i);
+            if (operand == null || !blockStamps.containsKey(pred)) {
+                // Value comes along a back edge that is not visited yet
+                return null;
+            }
+            Stamp operandStamp = lookup(operand, blockStamps.get(pred));
+            if (operandStamp == null) {
+                return null;
+            }
+            stamp = stamp == null ? operandStamp : stamp.meet(operandStamp);
+            if (stamp == null) {
+                return null;
+            }
+        }
+        return stamp;
+    }
+
+    private void foldCheckCast(CheckCastInstr instr, Map<HirInstr, Stamp> refined) {
+        if (!(instr.getKlass() instanceof ResolvedJavaType)) {
+            return;
+        }
+        var klass = (ResolvedJavaType) instr.getKlass();
+        HirInstr object = instr.getObject();
+        Stamp stamp = lookup(object, refined);
+        if (isNull(object) || (stamp != null && stamp.isSubtypeOf(klass))) {
+            // null passes any checkcast
+            instr.setRedundant();
+            instr.setStamp(stamp);
+            foldedCount++;
+            return;
+        }
+        // Unlike a declared type, klass is checked here, even if it's an interface
+        instr.setStamp(stamp == null ? new Stamp(klass, klass.isLeaf() && !klass.isInterface(), false) :
+                stamp.join(klass, false));
+        // Object is an instance of klass or null as long as execution goes past checkcast
+        refine(object, klass, false, refined);
+    }
+
+    private void foldInstanceOf(InstanceOfInstr instr, Map<HirInstr, Stamp> refined) {
+        HirInstr object = instr.getObject();
+        Stamp stamp = lookup(object, refined);
+        if (isNull(object) || (stamp != null && stamp.isDisjointFrom(instr.getKlass()))) {
+            instr.setResult(JavaConstant.INT_0);
+            foldedCount++;
+        } else if (stamp != null && stamp.isNonNull() && stamp.isSubtypeOf(instr.getKlass())) {
+            instr.setResult(JavaConstant.INT_1);
+            foldedCount++;
+        }
+    }
+
+    /**
+     * Branch on a folded instanceof always goes one way, drop the other edge so that dead
+     * code elimination can remove blocks behind it
+     */
+    private void foldBranch(BlockStartInstr block, IfInstr test) {
+        if (!(test.getLeft() instanceof InstanceOfInstr) || !isIntConst(test.getRight(), 0) ||
+                (test.getCond() != Cond.EQ && test.getCond() != Cond.NE)) {
+            return;
+        }
+        JavaConstant result = ((InstanceOfInstr) test.getLeft()).getResult();
+        BlockStartInstr trueBlock = test.getSuccessor().get(0);
+        BlockStartInstr falseBlock = test.getSuccessor().get(1);
+        if (result == null || trueBlock == falseBlock) {
+            return;
+        }
+        boolean taken = (result.asInt() != 0) == (test.getCond() == Cond.NE);
+        BlockStartInstr target = taken ? trueBlock : falseBlock;
+
+        HirInstr last = block;
+        while (last.getNext() != test) {
+            last = last.getNext();
+        }
+        GotoInstr jump = new GotoInstr(test.getVmState(), target);
+        if (test.isBackwardBranch() && target.getStartBci() <= test.getVmState().getBci()) {
+            jump.setBackwardBranchState(test.getBackwardBranchState());
+            jump.setSafepoint(test.isSafepoint());
+        }
+        last.setNext(jump);
+        jump.setNext(test.getNext());
+        block.replaceBlockEnd(jump);
+    }
+
+    @Override
+    public String name() {
+        return "Type check elimination";
+    }
+
+    @Override
+    public void log() {
+        if (PrintIR) {
+            Logger.logf("=====Phase: {}=====", name());
+            Logger.logf("Folded {} type checks", foldedCount);
+            hir.printHIR(false);
+        }
+    }
+}
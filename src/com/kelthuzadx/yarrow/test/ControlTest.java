@@ -73,6 +73,16 @@ public class ControlTest {
         }
     }
 
+    static int yarrow_select(int a, int b) {
+        int max;
+        if (a > b) {
+            max = a;
+        } else {
+            max = b;
+        }
+        return max;
+    }
+
     public static long iincSwitch(int i) {
         long result = 12;
         switch (i) {
@@ -100,6 +110,7 @@ public class ControlTest {
             yarrow_forLoopWithIf(i);
             yarrow_complex(i);
             iincSwitch(i);
+            yarrow_select(i, 50000);
         }
     }
 }
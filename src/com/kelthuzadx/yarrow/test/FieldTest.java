@@ -13,9 +13,17 @@ public class FieldTest {
     public static void main(String[] args) {
         for (int i = 0; i < 999998; i++) {
             new FieldTest().yarrow_field(i);
+            yarrow_storeAfterCall(i);
         }
     }
 
+    public static Object[] yarrow_storeAfterCall(int val) {
+        Object[] pair = new Object[2];
+        pair[0] = pair;                 // Initializing store, no barrier
+        pair[1] = String.valueOf(val);  // GC may happen in the call, both barriers are kept
+        return pair;
+    }
+
     public double yarrow_field(int val) {
         String s = String.valueOf(val);
         s += field2;
@@ -0,0 +1,31 @@
+package com.kelthuzadx.yarrow.test;
+
+public class IntrinsicTest {
+    public static void main(String[] args) {
+        int[] src = new int[16];
+        for (int i = 0; i < 999998; i++) {
+            yarrow_math(i, -i);
+            yarrow_arraycopy(src);
+            yarrow_arraycopyLive(src, new int[16]);
+        }
+    }
+
+    public static double yarrow_math(int a, int b) {
+        int x = Math.abs(b) + Math.min(a, b) + Math.max(a, b);
+        long y = Math.max(Math.abs((long) b), 23L);
+        return Math.sqrt(x + y) + Math.abs(-1.5);
+    }
+
+    public static int[] yarrow_arraycopy(int[] src) {
+        int[] dest = new int[src.length];
+        System.arraycopy(src, 0, dest, 0, src.length);
+        return dest;
+    }
+
+    // Arrays and positions are read by arraycopy and live across its slow path call
+    public static int yarrow_arraycopyLive(int[] src, int[] dest) {
+        int pos = src.length >> 1;
+        System.arraycopy(src, pos, dest, pos, src.length - pos);
+        return src[pos] + dest[pos] + pos;
+    }
+}
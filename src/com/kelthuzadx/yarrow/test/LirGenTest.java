@@ -116,6 +116,11 @@ public class LirGenTest {
         }
     }
 
+    public static int lirGen5(int i) {
+        // Index is folded into address while i itself may be -1
+        return arr[i + 1];
+    }
+
 
     public static void main(String[] args) {
         for (int i = 0; i < 100000; i++) {
@@ -123,6 +128,7 @@ public class LirGenTest {
             lirGen2(i);
             lirGen3(i);
             lirGen4(i);
+            lirGen5(i % 3 - 1);
         }
     }
 }
@@ -0,0 +1,34 @@
+package com.kelthuzadx.yarrow.test;
+
+public class VectorTest {
+    public static void main(String[] args) {
+        int[] a = new int[1024];
+        int[] b = new int[1024];
+        double[] c = new double[1024];
+        for (int i = 0; i < 999998; i++) {
+            yarrow_add(a, b);
+            yarrow_fill(c, 3.14);
+            yarrow_sum(a);
+        }
+    }
+
+    public static void yarrow_add(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] = a[i] + b[i];
+        }
+    }
+
+    public static void yarrow_fill(double[] c, double value) {
+        for (int i = 0; i < c.length; i++) {
+            c[i] = value;
+        }
+    }
+
+    public static int yarrow_sum(int[] a) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+}